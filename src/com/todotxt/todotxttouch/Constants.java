@@ -42,6 +42,9 @@ public class Constants {
 	public final static String EXTRA_PROJECTS_SELECTED = "PROJECTS_SELECTED";
 	public final static String EXTRA_CONTEXTS = "CONTEXTS";
 	public final static String EXTRA_CONTEXTS_SELECTED = "CONTEXTS_SELECTED";
+	public final static String EXTRA_PRIORITIES_COUNTS = "PRIORITIES_COUNTS";
+	public final static String EXTRA_PROJECTS_COUNTS = "PROJECTS_COUNTS";
+	public final static String EXTRA_CONTEXTS_COUNTS = "CONTEXTS_COUNTS";
 	public final static String EXTRA_SEARCH = "SEARCH";
 	public final static String EXTRA_TASK = "TASK";
 	public final static String EXTRA_APPLIED_FILTERS = "APPLIED_FITERS";
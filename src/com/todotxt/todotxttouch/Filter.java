@@ -23,9 +23,11 @@
 package com.todotxt.todotxttouch;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import android.app.Activity;
 import android.app.TabActivity;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -33,6 +35,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
@@ -95,20 +98,20 @@ public class Filter extends TabActivity {
 
 		final ListView priorities = (ListView) findViewById(R.id.prioritieslv);
 		priorities.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
-		priorities.setAdapter(new ArrayAdapter<String>(this,
-				R.layout.simple_list_item_multiple_choice, priosArr));
+		priorities.setAdapter(new CountAdapter(this, priosArr, data
+				.getIntArrayExtra(Constants.EXTRA_PRIORITIES_COUNTS)));
 		setSelected(priorities, priosArrSelected);
 
 		final ListView projects = (ListView) findViewById(R.id.projectslv);
 		projects.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
-		projects.setAdapter(new ArrayAdapter<String>(this,
-				R.layout.simple_list_item_multiple_choice, projectsArr));
+		projects.setAdapter(new CountAdapter(this, projectsArr, data
+				.getIntArrayExtra(Constants.EXTRA_PROJECTS_COUNTS)));
 		setSelected(projects, projectsArrSelected);
 
 		final ListView contexts = (ListView) findViewById(R.id.contextslv);
 		contexts.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
-		contexts.setAdapter(new ArrayAdapter<String>(this,
-				R.layout.simple_list_item_multiple_choice, contextsArr));
+		contexts.setAdapter(new CountAdapter(this, contextsArr, data
+				.getIntArrayExtra(Constants.EXTRA_CONTEXTS_COUNTS)));
 		setSelected(contexts, contextsArrSelected);
 
 		final EditText search = (EditText) findViewById(R.id.searchet);
@@ -194,4 +197,27 @@ public class Filter extends TabActivity {
 		}
 	}
 
+	/**
+	 * Shows each entry with the number of tasks it matches, while the items
+	 * stay the plain entries
+	 */
+	private static class CountAdapter extends ArrayAdapter<String> {
+		private final int[] counts;
+
+		CountAdapter(Context context, List<String> items, int[] counts) {
+			super(context, R.layout.simple_list_item_multiple_choice, items);
+			this.counts = counts;
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			TextView view = (TextView) super.getView(position, convertView,
+					parent);
+			if (counts != null && position < counts.length) {
+				view.setText(getItem(position) + " (" + counts[position] + ")");
+			}
+			return view;
+		}
+	}
+
 }
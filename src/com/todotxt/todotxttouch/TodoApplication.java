@@ -30,6 +30,7 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.os.AsyncTask;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
@@ -41,11 +42,24 @@ import com.todotxt.todotxttouch.util.Util;
 
 public class TodoApplication extends Application {
 	private final static String TAG = TodoApplication.class.getSimpleName();
+	// requests to push within this long are served by one push, the local
+	// repository groups the changes behind them the same way
+	private final static long PUSH_DELAY_MS = 250;
 	public SharedPreferences m_prefs;
 	private RemoteClientManager remoteClientManager;
 	private boolean m_pulling = false;
 	private boolean m_pushing = false;
 	private int pushQueue = 0;
+	private final Handler handler = new Handler();
+	private boolean delayedPushForced = false;
+	private final Runnable delayedPush = new Runnable() {
+		@Override
+		public void run() {
+			boolean force = delayedPushForced;
+			delayedPushForced = false;
+			pushToRemote(force, false);
+		}
+	};
 	private TaskBag taskBag;
 	private BroadcastReceiver m_broadcastReceiver;
 	private static Context appContext;
@@ -106,6 +120,15 @@ public class TodoApplication extends Application {
 		}
 	}
 
+	/**
+	 * Push once no other push has been requested for a moment
+	 */
+	private void delayPushToRemote(boolean force) {
+		delayedPushForced |= force;
+		handler.removeCallbacks(delayedPush);
+		handler.postDelayed(delayedPush, PUSH_DELAY_MS);
+	}
+
 	/**
 	 * Check network status, then push.
 	 */
@@ -317,7 +340,11 @@ public class TodoApplication extends Application {
 				syncWithRemote(force_sync);
 			} else if (intent.getAction().equalsIgnoreCase(
 					Constants.INTENT_START_SYNC_TO_REMOTE)) {
-				pushToRemote(force_sync, overwrite);
+				if (overwrite) {
+					pushToRemote(force_sync, true);
+				} else {
+					delayPushToRemote(force_sync);
+				}
 			} else if (intent.getAction().equalsIgnoreCase(
 					Constants.INTENT_START_SYNC_FROM_REMOTE)) {
 				pullFromRemote(force_sync);
@@ -331,6 +358,42 @@ public class TodoApplication extends Application {
 		}
 	}
 
+	/**
+	 * Called from the writer thread when another app has changed todo.txt,
+	 * e.g. a sync tool. The reload runs in the background, queued behind the
+	 * other task bag changes, and only the UI update runs on the main thread.
+	 */
+	public void onTodoFileChanged() {
+		// AsyncTasks have to be created on the main thread
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				new AsyncTask<Void, Void, Boolean>() {
+					@Override
+					protected Boolean doInBackground(Void... params) {
+						Log.d(TAG, "todo.txt changed by another app, reloading");
+						try {
+							taskBag.reload();
+						} catch (Exception e) {
+							Log.e(TAG, e.getMessage(), e);
+							return false;
+						}
+						return true;
+					}
+
+					@Override
+					protected void onPostExecute(Boolean result) {
+						if (result) {
+							updateSyncUI(true);
+							broadcastWidgetUpdate();
+						}
+						super.onPostExecute(result);
+					}
+				}.execute();
+			}
+		});
+	}
+
 	public void broadcastWidgetUpdate() {
 		Log.d(TAG, "Broadcasting widget update intent");
 		Intent intent = new Intent(Constants.INTENT_WIDGET_UPDATE);
@@ -51,14 +51,17 @@ import android.graphics.Paint;
 import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.MenuItemCompat;
 import android.text.SpannableString;
 import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.GestureDetector;
 import android.view.GestureDetector.SimpleOnGestureListener;
+import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -73,11 +76,14 @@ import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import com.todotxt.todotxttouch.task.FilterFactory;
 import com.todotxt.todotxttouch.task.Priority;
+import com.todotxt.todotxttouch.task.SearchSession;
 import com.todotxt.todotxttouch.task.Sort;
 import com.todotxt.todotxttouch.task.Task;
 import com.todotxt.todotxttouch.task.TaskBag;
+import com.todotxt.todotxttouch.task.TaskPersistException;
+import com.todotxt.todotxttouch.util.Dates;
+import com.todotxt.todotxttouch.util.RelativeDate;
 import com.todotxt.todotxttouch.util.Strings;
 import com.todotxt.todotxttouch.util.Util;
 import com.todotxt.todotxttouch.util.Util.OnMultiChoiceDialogListener;
@@ -101,6 +107,7 @@ public class TodoTxtTouch extends ListActivity implements
 	private Boolean wasOffline = false;
 
 	private TaskAdapter m_adapter;
+	private RelativeDate m_relativeDate;
 	TodoApplication m_app;
 
 	// filter variables
@@ -108,6 +115,7 @@ public class TodoTxtTouch extends ListActivity implements
 	private ArrayList<String> m_contexts = new ArrayList<String>();
 	private ArrayList<String> m_projects = new ArrayList<String>();
 	private String m_search;
+	private final SearchSession m_searchSession = new SearchSession();
 
 	private int m_pos = Constants.INVALID_POSITION;
 	private Sort sort = Sort.PRIORITY_DESC;
@@ -115,6 +123,9 @@ public class TodoTxtTouch extends ListActivity implements
 
 	private ArrayList<String> m_filters = new ArrayList<String>();
 
+	// true while tasks are picked for a bulk action
+	private boolean m_selecting = false;
+
 	private static final int SYNC_CHOICE_DIALOG = 100;
 	private static final int SYNC_CONFLICT_DIALOG = 101;
 
@@ -131,6 +142,7 @@ public class TodoTxtTouch extends ListActivity implements
 		m_app = (TodoApplication) getApplication();
 		m_app.m_prefs.registerOnSharedPreferenceChangeListener(this);
 		this.taskBag = m_app.getTaskBag();
+		m_relativeDate = new RelativeDate(getApplicationContext());
 		m_adapter = new TaskAdapter(this, R.layout.list_item,
 				taskBag.getTasks(), getLayoutInflater());
 
@@ -231,6 +243,16 @@ public class TodoTxtTouch extends ListActivity implements
 		unregisterReceiver(m_broadcastReceiver);
 	}
 
+	@Override
+	protected void onPause() {
+		super.onPause();
+		try {
+			taskBag.flush();
+		} catch (TaskPersistException e) {
+			Log.e(TAG, e.getMessage(), e);
+		}
+	}
+
 	@Override
 	protected void onResume() {
 		super.onResume();
@@ -289,6 +311,22 @@ public class TodoTxtTouch extends ListActivity implements
 		return super.onCreateOptionsMenu(menu);
 	}
 
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		menu.setGroupVisible(R.id.group_main, !m_selecting);
+		menu.setGroupVisible(R.id.group_selection, m_selecting);
+		return super.onPrepareOptionsMenu(menu);
+	}
+
+	@Override
+	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		if (keyCode == KeyEvent.KEYCODE_BACK && m_selecting) {
+			setSelecting(false);
+			return true;
+		}
+		return super.onKeyDown(keyCode, event);
+	}
+
 	@Override
 	public void onCreateContextMenu(ContextMenu menu, View v,
 			ContextMenuInfo menuInfo) {
@@ -608,6 +646,123 @@ public class TodoTxtTouch extends ListActivity implements
 		Util.showDeleteConfirmationDialog(this, listener);
 	}
 
+	@SuppressLint("NewApi")
+	private void setSelecting(boolean selecting) {
+		m_selecting = selecting;
+		ListView lv = getListView();
+		lv.clearChoices();
+		lv.setChoiceMode(selecting ? ListView.CHOICE_MODE_MULTIPLE
+				: ListView.CHOICE_MODE_NONE);
+		m_adapter.notifyDataSetChanged();
+		if (Build.VERSION.SDK_INT >= 11) {
+			// the action bar does not call onPrepareOptionsMenu by itself
+			invalidateOptionsMenu();
+		}
+	}
+
+	private List<Task> getSelectedTasks() {
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		SparseBooleanArray checked = getListView().getCheckedItemPositions();
+		if (checked != null) {
+			for (int i = 0; i < checked.size(); i++) {
+				int pos = checked.keyAt(i);
+				if (checked.valueAt(i) && pos < m_adapter.getCount()) {
+					tasks.add(m_adapter.getItem(pos));
+				}
+			}
+		}
+		return tasks;
+	}
+
+	private void completeSelectedTasks() {
+		final List<Task> tasks = getSelectedTasks();
+		if (tasks.isEmpty()) {
+			Util.showToastLong(this, R.string.no_tasks_selected);
+			return;
+		}
+		setSelecting(false);
+		new AsyncTask<Void, Void, Boolean>() {
+
+			protected void onPreExecute() {
+				m_ProgressDialog = showProgressDialog("Marking Tasks Complete");
+			}
+
+			@Override
+			protected Boolean doInBackground(Void... params) {
+				try {
+					taskBag.completeAll(tasks);
+					if (m_app.m_prefs.getBoolean("todotxtautoarchive", false)) {
+						taskBag.archive();
+					}
+					return true;
+				} catch (Exception e) {
+					Log.e(TAG, e.getMessage(), e);
+					return false;
+				}
+			}
+
+			protected void onPostExecute(Boolean result) {
+				TodoTxtTouch.currentActivityPointer.dismissProgressDialog(true);
+				if (result) {
+					Util.showToastLong(TodoTxtTouch.this, "Completed "
+							+ tasks.size() + " tasks");
+					sendBroadcast(new Intent(
+							Constants.INTENT_START_SYNC_TO_REMOTE));
+				} else {
+					Util.showToastLong(TodoTxtTouch.this,
+							"Could not complete tasks");
+				}
+			}
+		}.execute();
+	}
+
+	private void deleteSelectedTasks() {
+		final List<Task> tasks = getSelectedTasks();
+		if (tasks.isEmpty()) {
+			Util.showToastLong(this, R.string.no_tasks_selected);
+			return;
+		}
+		OnClickListener listener = new OnClickListener() {
+			@Override
+			public void onClick(DialogInterface dialog, int which) {
+				setSelecting(false);
+				new AsyncTask<Void, Void, Boolean>() {
+
+					protected void onPreExecute() {
+						m_ProgressDialog = showProgressDialog("Deleting");
+					}
+
+					@Override
+					protected Boolean doInBackground(Void... params) {
+						try {
+							taskBag.deleteAll(tasks);
+							m_app.broadcastWidgetUpdate();
+							return true;
+						} catch (Exception e) {
+							Log.e(TAG, e.getMessage(), e);
+							return false;
+						}
+					}
+
+					protected void onPostExecute(Boolean result) {
+						TodoTxtTouch.currentActivityPointer
+								.dismissProgressDialog(true);
+						if (result) {
+							Util.showToastLong(TodoTxtTouch.this, "Deleted "
+									+ tasks.size() + " tasks");
+							sendBroadcast(new Intent(
+									Constants.INTENT_START_SYNC_TO_REMOTE));
+						} else {
+							Util.showToastLong(TodoTxtTouch.this,
+									"Could not delete tasks");
+						}
+					}
+				}.execute();
+			}
+		};
+		Util.showDeleteConfirmationDialog(this, listener);
+	}
+
 	private void archiveTasks() {
 		new AsyncTask<Void, Void, Boolean>() {
 
@@ -667,6 +822,18 @@ public class TodoTxtTouch extends ListActivity implements
 		case R.id.share:
 			shareTasks();
 			break;
+		case R.id.select:
+			setSelecting(true);
+			break;
+		case R.id.complete_selected:
+			completeSelectedTasks();
+			break;
+		case R.id.delete_selected:
+			deleteSelectedTasks();
+			break;
+		case R.id.cancel_selection:
+			setSelecting(false);
+			break;
 		default:
 			return super.onMenuItemSelected(featureId, item);
 		}
@@ -954,9 +1121,11 @@ public class TodoTxtTouch extends ListActivity implements
 		Log.v(TAG, "ListView index " + index + " top " + top);
 
 		m_adapter.clear();
-		for (Task task : taskBag.getTasks(FilterFactory.generateAndFilter(
-				m_prios, m_contexts, m_projects, m_search, false), sort
-				.getComparator())) {
+		// checked positions refer to the old list
+		lv.clearChoices();
+		m_searchSession.setQuery(m_prios, m_contexts, m_projects, m_search);
+		for (Task task : taskBag.search(m_searchSession,
+				sort.getComparator())) {
 			m_adapter.add(task);
 		}
 
@@ -1001,6 +1170,11 @@ public class TodoTxtTouch extends ListActivity implements
 
 	@Override
 	protected void onListItemClick(ListView l, View v, int position, long id) {
+		if (m_selecting) {
+			// the list view has already toggled the item
+			m_adapter.notifyDataSetChanged();
+			return;
+		}
 		m_pos = position;
 		openContextMenu(getListView());
 	}
@@ -1100,6 +1274,13 @@ public class TodoTxtTouch extends ListActivity implements
 
 				Resources res = getResources();
 				holder.tasktext.setTextColor(res.getColor(R.color.black));
+				if (m_selecting && getListView().isItemChecked(position)) {
+					convertView.setBackgroundColor(res
+							.getColor(R.color.selected));
+				} else {
+					convertView.setBackgroundColor(res
+							.getColor(android.R.color.transparent));
+				}
 
 				switch (task.getPriority()) {
 				case A:
@@ -1129,8 +1310,9 @@ public class TodoTxtTouch extends ListActivity implements
 				holder.taskage.setVisibility(View.GONE);
 				if (m_app.m_prefs.getBoolean("todotxtprependdate", false)) {
 					if (!task.isCompleted()
-							&& !Strings.isEmptyOrNull(task.getRelativeAge())) {
-						holder.taskage.setText(task.getRelativeAge());
+							&& task.getPrependedDay() != Dates.NONE) {
+						holder.taskage.setText(m_relativeDate
+								.getRelativeDate(task.getPrependedDay()));
 						holder.taskage.setVisibility(View.VISIBLE);
 					} else {
 						holder.tasktext.setPadding(
@@ -1180,12 +1362,19 @@ public class TodoTxtTouch extends ListActivity implements
 	public void startFilterActivity() {
 		Intent i = new Intent(this, Filter.class);
 
+		ArrayList<Priority> priorities = taskBag.getPriorities();
+		ArrayList<String> projects = taskBag.getProjects(true);
+		ArrayList<String> contexts = taskBag.getContexts(true);
 		i.putStringArrayListExtra(Constants.EXTRA_PRIORITIES,
-				Priority.inCode(taskBag.getPriorities()));
-		i.putStringArrayListExtra(Constants.EXTRA_PROJECTS,
-				taskBag.getProjects(true));
-		i.putStringArrayListExtra(Constants.EXTRA_CONTEXTS,
-				taskBag.getContexts(true));
+				Priority.inCode(priorities));
+		i.putStringArrayListExtra(Constants.EXTRA_PROJECTS, projects);
+		i.putStringArrayListExtra(Constants.EXTRA_CONTEXTS, contexts);
+		i.putExtra(Constants.EXTRA_PRIORITIES_COUNTS,
+				taskBag.countPriorities(priorities));
+		i.putExtra(Constants.EXTRA_PROJECTS_COUNTS,
+				taskBag.countProjects(projects));
+		i.putExtra(Constants.EXTRA_CONTEXTS_COUNTS,
+				taskBag.countContexts(contexts));
 
 		i.putStringArrayListExtra(Constants.EXTRA_PRIORITIES_SELECTED,
 				Priority.inCode(m_prios));
@@ -28,7 +28,7 @@ import java.util.ArrayList;
  * A composite filter. All subfilters must be true for this filter to be true.
  * Returns true when there are no subfilters.
  */
-class AndFilter implements Filter<Task> {
+class AndFilter implements Filter<Task>, TableFilter, PostingFilter {
 	private ArrayList<Filter<Task>> filters = new ArrayList<Filter<Task>>();
 
 	public void addFilter(Filter<Task> filter) {
@@ -46,4 +46,46 @@ class AndFilter implements Filter<Task> {
 		}
 		return true;
 	}
+
+	@Override
+	public boolean apply(TaskTable table, int row) {
+		for (Filter<Task> f : filters) {
+			if (!table.matches(f, row)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Intersects the positions of the subfilters that have them, and applies
+	 * the others to those tasks only
+	 */
+	@Override
+	public int[] select(TaskPostings postings) {
+		int[] selected = null;
+		boolean partial = false;
+		for (Filter<Task> f : filters) {
+			int[] positions = f instanceof PostingFilter ? ((PostingFilter) f)
+					.select(postings) : null;
+			if (positions == null) {
+				partial = true;
+			} else {
+				selected = selected == null ? positions : TaskPostings
+						.intersect(selected, positions);
+			}
+		}
+		if (selected == null || !partial) {
+			return selected;
+		}
+		int n = 0;
+		for (int position : selected) {
+			if (apply(postings.get(position))) {
+				selected[n++] = position;
+			}
+		}
+		int[] matching = new int[n];
+		System.arraycopy(selected, 0, matching, 0, n);
+		return matching;
+	}
 }
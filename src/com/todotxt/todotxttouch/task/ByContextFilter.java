@@ -30,35 +30,90 @@ import java.util.List;
  * 
  * @author Tim Barlotta
  */
-class ByContextFilter implements Filter<Task> {
+class ByContextFilter implements Filter<Task>, TableFilter,
+		PostingFilter {
 	private ArrayList<String> contexts = new ArrayList<String>();
+	// ids of the names any task has, unknown names match nothing
+	private int[] ids;
+	private boolean matchNone;
+	private boolean matchAll;
+	// some names were unknown at this dictionary size
+	private boolean unresolved;
+	private int dictionarySize;
 
 	public ByContextFilter(List<String> contexts) {
 		if (contexts != null) {
 			this.contexts.addAll(contexts);
 		}
+		matchNone = this.contexts.contains("-");
+		matchAll = this.contexts.isEmpty();
+		resolve();
 	}
 
 	@Override
 	public boolean apply(Task input) {
-		if (contexts.size() == 0) {
-			return true;
+		return matches(input.getContextIds());
+	}
+
+	@Override
+	public boolean apply(TaskTable table, int row) {
+		return matches(table.getContextIds(row));
+	}
+
+	@Override
+	public int[] select(TaskPostings postings) {
+		if (matchAll) {
+			return null;
 		}
+		resolveAgain();
+		return postings.withContexts(ids, matchNone);
+	}
 
-		for (String c : input.getContexts()) {
-			if (contexts.contains(c)) {
-				return true;
+	private boolean matches(int[] taskIds) {
+		if (matchAll) {
+			return true;
+		}
+		resolveAgain();
+		for (int taskId : taskIds) {
+			for (int id : ids) {
+				if (id == taskId) {
+					return true;
+				}
 			}
 		}
 		/*
 		 * Match tasks without context if filter contains "-"
 		 */
-		if (input.getContexts().size()==0 && contexts.contains("-")) {
+		if (taskIds.length == 0 && matchNone) {
 			return true;
 		}
-
 		return false;
+	}
+
+	/**
+	 * Looks the names up without adding them to the dictionary, so filters
+	 * do not make it grow
+	 */
+	private void resolve() {
+		TagDictionary dictionary = TagDictionary.getInstance();
+		dictionarySize = dictionary.size();
+		ids = dictionary.lookupAll(contexts);
+		unresolved = false;
+		for (String name : contexts) {
+			if (!"-".equals(name) && dictionary.lookup(name) < 0) {
+				unresolved = true;
+			}
+		}
+	}
 
+	/**
+	 * Tasks parsed since may have the names that were unknown
+	 */
+	private void resolveAgain() {
+		if (unresolved
+				&& TagDictionary.getInstance().size() != dictionarySize) {
+			resolve();
+		}
 	}
 
 	/* FOR TESTING ONLY, DO NOT USE IN APPLICATION */
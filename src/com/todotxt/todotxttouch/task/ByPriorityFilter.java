@@ -30,7 +30,8 @@ import java.util.List;
  * 
  * @author Tim Barlotta
  */
-class ByPriorityFilter implements Filter<Task> {
+class ByPriorityFilter implements Filter<Task>, TableFilter,
+		PostingFilter {
 	ArrayList<Priority> priorities = new ArrayList<Priority>();
 
 	public ByPriorityFilter(List<Priority> priorities) {
@@ -41,11 +42,28 @@ class ByPriorityFilter implements Filter<Task> {
 
 	@Override
 	public boolean apply(Task input) {
+		return matches(input.getPriority());
+	}
+
+	@Override
+	public boolean apply(TaskTable table, int row) {
+		return matches(table.getPriority(row));
+	}
+
+	@Override
+	public int[] select(TaskPostings postings) {
+		if (priorities.size() == 0) {
+			return null;
+		}
+		return postings.withPriorities(priorities);
+	}
+
+	private boolean matches(Priority priority) {
 		if (priorities.size() == 0) {
 			return true;
 		}
 
-		if (priorities.contains(input.getPriority())) {
+		if (priorities.contains(priority)) {
 			return true;
 		}
 		return false;
@@ -30,34 +30,92 @@ import java.util.List;
  * 
  * @author Tim Barlotta
  */
-class ByProjectFilter implements Filter<Task> {
+class ByProjectFilter implements Filter<Task>, TableFilter,
+		PostingFilter {
 	private ArrayList<String> projects = new ArrayList<String>();
+	// ids of the names any task has, unknown names match nothing
+	private int[] ids;
+	private boolean matchNone;
+	private boolean matchAll;
+	// some names were unknown at this dictionary size
+	private boolean unresolved;
+	private int dictionarySize;
 
 	public ByProjectFilter(List<String> projects) {
 		if (projects != null) {
 			this.projects.addAll(projects);
 		}
+		matchNone = this.projects.contains("-");
+		matchAll = this.projects.isEmpty();
+		resolve();
 	}
 
 	@Override
 	public boolean apply(Task input) {
-		if (projects.size() == 0) {
+		return matches(input.getProjectIds());
+	}
+
+	@Override
+	public boolean apply(TaskTable table, int row) {
+		return matches(table.getProjectIds(row));
+	}
+
+	@Override
+	public int[] select(TaskPostings postings) {
+		if (matchAll) {
+			return null;
+		}
+		resolveAgain();
+		return postings.withProjects(ids, matchNone);
+	}
+
+	private boolean matches(int[] taskIds) {
+		if (matchAll) {
 			return true;
 		}
-		for (String p : input.getProjects()) {
-			if (projects.contains(p)) {
-				return true;
+		resolveAgain();
+		for (int taskId : taskIds) {
+			for (int id : ids) {
+				if (id == taskId) {
+					return true;
+				}
 			}
 		}
 		/*
 		 * Match tasks without project if filter contains "-"
 		 */
-		if (input.getProjects().size()==0 && projects.contains("-")) {
+		if (taskIds.length == 0 && matchNone) {
 			return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Looks the names up without adding them to the dictionary, so filters
+	 * do not make it grow
+	 */
+	private void resolve() {
+		TagDictionary dictionary = TagDictionary.getInstance();
+		dictionarySize = dictionary.size();
+		ids = dictionary.lookupAll(projects);
+		unresolved = false;
+		for (String name : projects) {
+			if (!"-".equals(name) && dictionary.lookup(name) < 0) {
+				unresolved = true;
+			}
+		}
+	}
+
+	/**
+	 * Tasks parsed since may have the names that were unknown
+	 */
+	private void resolveAgain() {
+		if (unresolved
+				&& TagDictionary.getInstance().size() != dictionarySize) {
+			resolve();
+		}
+	}
+
 	/* FOR TESTING ONLY, DO NOT USE IN APPLICATION */
 	ArrayList<String> getProjects() {
 		return projects;
@@ -27,7 +27,7 @@ package com.todotxt.todotxttouch.task;
  * 
  * @author Tim Barlotta
  */
-class ByTextFilter implements Filter<Task> {
+class ByTextFilter implements Filter<Task>, TableFilter, PostingFilter {
 	private String text;
 	private boolean caseSensitive;
 	private String[] parts;
@@ -44,9 +44,45 @@ class ByTextFilter implements Filter<Task> {
 
 	@Override
 	public boolean apply(Task input) {
-		String taskText = caseSensitive ? input.getText() : input.getText()
-				.toUpperCase();
+		if (caseSensitive) {
+			return matches(input.getText());
+		}
+		return contains(input.getUpperText());
+	}
+
+	@Override
+	public boolean apply(TaskTable table, int row) {
+		return matches(table.getText(row));
+	}
+
+	/**
+	 * Checks only the tasks the trigram index leaves, when case is ignored
+	 */
+	@Override
+	public int[] select(TaskPostings postings) {
+		if (caseSensitive) {
+			return null;
+		}
+		int[] candidates = postings.withText(parts);
+		if (candidates == null) {
+			return null;
+		}
+		int n = 0;
+		for (int position : candidates) {
+			if (contains(postings.get(position).getUpperText())) {
+				candidates[n++] = position;
+			}
+		}
+		int[] matching = new int[n];
+		System.arraycopy(candidates, 0, matching, 0, n);
+		return matching;
+	}
+
+	private boolean matches(String text) {
+		return contains(caseSensitive ? text : text.toUpperCase());
+	}
 
+	private boolean contains(String taskText) {
 		for (int i = 0; i < parts.length; ++i) {
 			String part = this.parts[i];
 
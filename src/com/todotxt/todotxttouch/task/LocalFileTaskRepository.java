@@ -25,13 +25,23 @@ package com.todotxt.todotxttouch.task;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import android.os.Environment;
+import android.os.FileObserver;
 import android.util.Log;
 
 import com.todotxt.todotxttouch.TodoException;
+import com.todotxt.todotxttouch.util.FileVersion;
+import com.todotxt.todotxttouch.util.LineIndex;
 import com.todotxt.todotxttouch.util.TaskIo;
+import com.todotxt.todotxttouch.util.TaskWriter;
 import com.todotxt.todotxttouch.util.Util;
 
 /**
@@ -48,10 +58,76 @@ class LocalFileTaskRepository implements LocalTaskRepository {
 	final static File DONE_TXT_FILE = new File(
 			Environment.getExternalStorageDirectory(),
 			"data/com.todotxt.todotxttouch/done.txt");
+	final static File JOURNAL_FILE = new File(
+			Environment.getExternalStorageDirectory(),
+			"data/com.todotxt.todotxttouch/todo.txt.journal");
+	final static File SNAPSHOT_FILE = new File(
+			Environment.getExternalStorageDirectory(),
+			"data/com.todotxt.todotxttouch/todo.txt.snapshot");
+	// changes made within this long of each other are journaled together
+	private static final long COMMIT_WINDOW_MS = 250;
+	// larger journals are folded into todo.txt right away
+	private static final long COMPACT_THRESHOLD = 64 * 1024;
+	// otherwise once no change has been made for this long
+	private static final long IDLE_DELAY_MS = 5000;
 	private final TaskBagImpl.Preferences preferences;
+	private final TaskJournal journal;
+	private final TaskSnapshot snapshot = new TaskSnapshot(SNAPSHOT_FILE);
+	// starts its thread with the first task scheduled
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "todo.txt writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				flush();
+			} catch (TodoException e) {
+				Log.e(TAG, "Error writing journal", e);
+			}
+		}
+	};
+	// looks at todo.txt after the observer saw it being written
+	private final Runnable checkTask = new Runnable() {
+		@Override
+		public void run() {
+			OnChangeListener listener;
+			synchronized (LocalFileTaskRepository.this) {
+				listener = LocalFileTaskRepository.this.listener;
+			}
+			if (listener != null && todoFileChanged()) {
+				listener.onTodoFileChanged();
+			}
+		}
+	};
+	private ScheduledFuture<?> pendingFlush;
+	private ScheduledFuture<?> pendingCompaction;
+	private ScheduledFuture<?> pendingSnapshot;
+	// todo.txt as this repository last loaded or wrote it, null if unknown
+	private FileVersion version;
+	// watches the data directory, null until init() or after it went away
+	private volatile Observer observer;
+	// set when the observer saw todo.txt being written, or may have missed it
+	private volatile boolean todoStale = true;
+	// modification time of done.txt, kept up to date by the observer
+	private volatile long doneModified;
+	private OnChangeListener listener;
+	// where the task lines of todo.txt end, as of the last load or write
+	private final LineIndex index = new LineIndex();
+	private TaskWriter writer;
+	private boolean writerWindowsLineBreaks;
+	private TaskWriter.Sync writerSync;
 
 	public LocalFileTaskRepository(TaskBagImpl.Preferences preferences) {
 		this.preferences = preferences;
+		this.journal = new TaskJournal(TODO_TXT_FILE, JOURNAL_FILE,
+				preferences.getFileSync());
 	}
 
 	@Override
@@ -64,15 +140,37 @@ class LocalFileTaskRepository implements LocalTaskRepository {
 		} catch (IOException e) {
 			throw new TodoException("Error initializing LocalFile", e);
 		}
+		watch();
+	}
+
+	/**
+	 * Sets the listener told when another app has changed todo.txt
+	 */
+	public synchronized void setOnChangeListener(OnChangeListener listener) {
+		this.listener = listener;
+	}
+
+	private synchronized void watch() {
+		if (observer == null) {
+			// changes made while nobody was watching
+			todoStale = true;
+			doneModified = DONE_TXT_FILE.lastModified();
+			observer = new Observer(TODO_TXT_FILE.getParentFile());
+			observer.startWatching();
+		}
 	}
 
 	@Override
-	public void purge() {
+	public synchronized void purge() {
 		TODO_TXT_FILE.delete();
+		journal.delete();
+		snapshot.delete();
+		index.clear();
+		version = null;
 	}
 
 	@Override
-	public ArrayList<Task> load() {
+	public synchronized ArrayList<Task> load() {
 		init();
 		if (!TODO_TXT_FILE.exists()) {
 			Log.w(TAG, TODO_TXT_FILE.getAbsolutePath() + " does not exist!");
@@ -80,22 +178,255 @@ class LocalFileTaskRepository implements LocalTaskRepository {
 					+ " does not exist!");
 		} else {
 			try {
-				return TaskIo.loadTasksFromFile(TODO_TXT_FILE);
+				flush();
+				recover();
+				ArrayList<Task> tasks = snapshot.read(TODO_TXT_FILE, index);
+				if (tasks != null) {
+					version = snapshot.getVersion();
+				} else {
+					tasks = TaskIo.loadTasksFromFile(TODO_TXT_FILE, index);
+					version = index.version();
+					writeSnapshot(tasks);
+				}
+				TaskJournal journal = journal();
+				if (!journal.replay(tasks, version)) {
+					// merged with changes made elsewhere, write the result
+					store(tasks);
+					scheduleSnapshot();
+				} else if (journal.exists()) {
+					scheduleCompaction(IDLE_DELAY_MS);
+				}
+				return tasks;
 			} catch (IOException e) {
+				version = null;
 				throw new TodoException("Error loading from local file", e);
 			}
 		}
 	}
 
 	@Override
-	public void store(ArrayList<Task> tasks) {
-		TaskIo.writeToFile(tasks, TODO_TXT_FILE,
-				preferences.isUseWindowsLineBreaksEnabled());
+	public synchronized void store(ArrayList<Task> tasks) {
+		try {
+			TaskJournal journal = journal();
+			writer().write(tasks, TODO_TXT_FILE, index, journal);
+			journal.delete();
+			version = index.version();
+		} catch (IOException e) {
+			index.clear();
+			version = null;
+			throw new TodoException("Error storing to local file", e);
+		}
+	}
+
+	@Override
+	public synchronized void storeAdded(Task task) {
+		try {
+			batch().added(task);
+		} catch (IOException e) {
+			throw new TodoException("Error journaling added task", e);
+		}
 	}
 
 	@Override
-	public void archive(ArrayList<Task> tasks) {
-		boolean windowsLineBreaks = preferences.isUseWindowsLineBreaksEnabled();
+	public synchronized void storeUpdated(int index, String line, Task task) {
+		try {
+			batch().updated(index, line, task);
+		} catch (IOException e) {
+			throw new TodoException("Error journaling updated task", e);
+		}
+	}
+
+	@Override
+	public synchronized void storeDeleted(int index, String line) {
+		try {
+			batch().deleted(index, line);
+		} catch (IOException e) {
+			throw new TodoException("Error journaling deleted task", e);
+		}
+	}
+
+	/**
+	 * Changes are collected for {@link #COMMIT_WINDOW_MS} after the first one,
+	 * so a burst of edits costs one journal write.
+	 */
+	private TaskJournal batch() throws IOException {
+		TaskJournal journal = journal();
+		journal.begin();
+		if (pendingFlush == null) {
+			pendingFlush = schedule(flushTask, COMMIT_WINDOW_MS);
+		}
+		return journal;
+	}
+
+	@Override
+	public synchronized void flush() {
+		if (pendingFlush != null) {
+			pendingFlush.cancel(false);
+			pendingFlush = null;
+		}
+		TaskJournal journal = journal();
+		if (!journal.hasPending()) {
+			return;
+		}
+		try {
+			journal.flush();
+		} catch (IOException e) {
+			throw new TodoException("Error writing journal", e);
+		}
+		scheduleCompaction(JOURNAL_FILE.length() >= COMPACT_THRESHOLD ? 0
+				: IDLE_DELAY_MS);
+	}
+
+	/**
+	 * Does not take the lock, so it returns right away even while the writer
+	 * thread is busy
+	 */
+	@Override
+	public void flushInBackground() {
+		scheduler.execute(flushTask);
+	}
+
+	/**
+	 * Folds the journal into todo.txt. While the line index still matches
+	 * the file, only the part from the first changed line on is rewritten,
+	 * or new lines are appended, and the lines in between are not even
+	 * parsed. The file is checked against {@link #version} first, and a
+	 * journal that no longer belongs to it is merged into it.
+	 */
+	@Override
+	public synchronized void compact() {
+		flush();
+		try {
+			recover();
+			TaskJournal journal = journal();
+			if (!journal.exists()) {
+				return;
+			}
+			if (version != null && index.matches(TODO_TXT_FILE)) {
+				Patch patch = new Patch(index.size());
+				if (journal.replay(patch, version)) {
+					FileVersion patched = writer().patch(TODO_TXT_FILE, index,
+							version, patch.lines, patch.origins, journal);
+					if (patched != null) {
+						compacted(journal, patched);
+						return;
+					}
+					Log.w(TAG, TODO_TXT_FILE
+							+ " was changed in place, rewriting it");
+				}
+			}
+			ArrayList<Task> tasks = TaskIo.loadTasksFromFile(TODO_TXT_FILE,
+					index);
+			boolean belongs = journal.replay(tasks, index.version());
+			writer().write(tasks, TODO_TXT_FILE, index, journal);
+			// merged with changes the bag has not seen, it has to reload
+			compacted(journal, belongs ? index.version() : null);
+		} catch (IOException e) {
+			index.clear();
+			version = null;
+			throw new TodoException("Error compacting journal", e);
+		}
+	}
+
+	private void compacted(TaskJournal journal, FileVersion written) {
+		journal.delete();
+		version = written;
+		if (written == null) {
+			todoStale = true;
+		}
+		scheduleSnapshot();
+	}
+
+	/**
+	 * Saves the tasks just parsed from todo.txt, so the next start does not
+	 * have to parse it again. Only done while todo.txt still has the version
+	 * they were read from.
+	 */
+	private void writeSnapshot(ArrayList<Task> tasks) {
+		try {
+			if (version != null && version.check(TODO_TXT_FILE) == version) {
+				snapshot.write(version, tasks, index);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Could not write " + SNAPSHOT_FILE, e);
+			snapshot.delete();
+		}
+	}
+
+	/**
+	 * Brings the snapshot up to date after a compaction, once the user has
+	 * stopped editing. This parses todo.txt on the writer thread rather than
+	 * at the next start.
+	 */
+	private synchronized void refreshSnapshot() {
+		if (journal.exists() || journal.hasPending() || !checkVersion()) {
+			return;
+		}
+		try {
+			FileVersion taken = snapshot.getVersion();
+			if (taken != null && taken.check(TODO_TXT_FILE) != null) {
+				return;
+			}
+			writeSnapshot(TaskIo.loadTasksFromFile(TODO_TXT_FILE, index));
+		} catch (IOException e) {
+			index.clear();
+			Log.w(TAG, "Could not refresh " + SNAPSHOT_FILE, e);
+		}
+	}
+
+	private void scheduleSnapshot() {
+		if (pendingSnapshot != null) {
+			pendingSnapshot.cancel(false);
+		}
+		pendingSnapshot = schedule(new Runnable() {
+			@Override
+			public void run() {
+				refreshSnapshot();
+			}
+		}, IDLE_DELAY_MS);
+	}
+
+	/**
+	 * Finishes a compaction that was cut short while patching todo.txt. The
+	 * journal it came from is already in the file then.
+	 */
+	private void recover() throws IOException {
+		if (writer().recover(TODO_TXT_FILE)) {
+			journal().delete();
+			index.clear();
+			version = null;
+		}
+	}
+
+	private TaskJournal journal() {
+		journal.setSync(preferences.getFileSync());
+		journal.setBase(version);
+		return journal;
+	}
+
+	private void scheduleCompaction(long delay) {
+		if (pendingCompaction != null) {
+			pendingCompaction.cancel(false);
+		}
+		pendingCompaction = schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (TodoException e) {
+					Log.e(TAG, "Error compacting journal", e);
+				}
+			}
+		}, delay);
+	}
+
+	private ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void archive(ArrayList<Task> tasks) {
+		TaskWriter writer = writer();
 
 		ArrayList<Task> completedTasks = new ArrayList<Task>(tasks.size());
 		ArrayList<Task> incompleteTasks = new ArrayList<Task>(tasks.size());
@@ -108,29 +439,132 @@ class LocalFileTaskRepository implements LocalTaskRepository {
 			}
 		}
 
-		// append completed tasks to done.txt
-		TaskIo.writeToFile(completedTasks, DONE_TXT_FILE, true,
-				windowsLineBreaks);
+		try {
+			// append completed tasks to done.txt
+			writer.append(completedTasks, DONE_TXT_FILE);
+			// before the observer gets to it, a push may follow right away
+			doneModified = DONE_TXT_FILE.lastModified();
+
+			// write incomplete tasks back to todo.txt
+			// TODO: remove blank lines (if we ever add support for
+			// PRESERVE_BLANK_LINES)
+			writer.write(incompleteTasks, TODO_TXT_FILE, index);
+			journal().delete();
+			version = index.version();
+		} catch (IOException e) {
+			index.clear();
+			version = null;
+			throw new TodoException("Error archiving to local file", e);
+		}
+	}
+
+	/**
+	 * The writer is kept while the preferences it was made for do not
+	 * change, so its buffer is reused across stores.
+	 */
+	private TaskWriter writer() {
+		boolean windowsLineBreaks = preferences.isUseWindowsLineBreaksEnabled();
+		TaskWriter.Sync sync = preferences.getFileSync();
+		if (writer == null || writerWindowsLineBreaks != windowsLineBreaks
+				|| writerSync != sync) {
+			writer = new TaskWriter(windowsLineBreaks, sync);
+			writerWindowsLineBreaks = windowsLineBreaks;
+			writerSync = sync;
+		}
+		return writer;
+	}
+
+	/**
+	 * The journal replayed against the lines of todo.txt: every line points
+	 * back to its origin in the file, or -1 if it was added, and carries its
+	 * new text if it was changed.
+	 */
+	private static class Patch implements TaskJournal.Target {
+		final ArrayList<String> lines;
+		int[] origins;
+
+		Patch(int size) {
+			lines = new ArrayList<String>(size);
+			origins = new int[Math.max(size, 16)];
+			for (int i = 0; i < size; i++) {
+				lines.add(null);
+				origins[i] = i;
+			}
+		}
+
+		@Override
+		public void add(String line) {
+			int size = lines.size();
+			if (size == origins.length) {
+				origins = Arrays.copyOf(origins, size * 2);
+			}
+			lines.add(line);
+			origins[size] = -1;
+		}
+
+		@Override
+		public void replace(int index, String old, String line) {
+			lines.set(index, line);
+		}
 
-		// write incomplete tasks back to todo.txt
-		// TODO: remove blank lines (if we ever add support for
-		// PRESERVE_BLANK_LINES)
-		TaskIo.writeToFile(incompleteTasks, TODO_TXT_FILE, false,
-				windowsLineBreaks);
+		@Override
+		public void remove(int index, String old) {
+			lines.remove(index);
+			System.arraycopy(origins, index + 1, origins, index, lines.size()
+					- index);
+		}
 	}
 
 	@Override
 	public void loadDoneTasks(File file) {
 		Util.renameFile(file, DONE_TXT_FILE, true);
+		doneModified = DONE_TXT_FILE.lastModified();
 	}
 
+	/**
+	 * Does not even look at todo.txt unless the observer has seen it being
+	 * written. Then it is only read when its size is unchanged, to tell a
+	 * touched file from an edited one. Its own writes, compactions included,
+	 * only put back what the bag already holds.
+	 */
 	@Override
-	public boolean todoFileModifiedSince(Date date) {
-		long date_ms = 0l;
-		if (date != null) {
-			date_ms = date.getTime();
+	public synchronized boolean todoFileChanged() {
+		if (observer != null && !todoStale) {
+			return false;
+		}
+		todoStale = false;
+		if (checkVersion()) {
+			return false;
+		}
+		// until it is loaded again
+		todoStale = true;
+		return true;
+	}
+
+	/**
+	 * @return true if todo.txt still holds {@link #version}
+	 */
+	private boolean checkVersion() {
+		if (version == null) {
+			return false;
+		}
+		try {
+			FileVersion checked = version.check(TODO_TXT_FILE);
+			if (checked == null) {
+				return false;
+			}
+			if (checked != version) {
+				// same content, so the line index is still good
+				if (index.length() == version.length()) {
+					index.stat(TODO_TXT_FILE);
+				}
+				version = checked;
+			}
+			return true;
+		} catch (IOException e) {
+			Log.w(TAG, "Could not check " + TODO_TXT_FILE, e);
+			return false;
 		}
-		return date_ms < TODO_TXT_FILE.lastModified();
 	}
 
 	@Override
@@ -139,6 +573,51 @@ class LocalFileTaskRepository implements LocalTaskRepository {
 		if (date != null) {
 			date_ms = date.getTime();
 		}
-		return date_ms < DONE_TXT_FILE.lastModified();
+		long modified = observer != null ? doneModified : DONE_TXT_FILE
+				.lastModified();
+		return date_ms < modified;
+	}
+
+	/**
+	 * Receives changes to todo.txt made by other apps
+	 */
+	interface OnChangeListener {
+		/**
+		 * Called on the writer thread
+		 */
+		void onTodoFileChanged();
+	}
+
+	/**
+	 * Watches the data directory instead of todo.txt itself, which other
+	 * apps and sync tools often replace rather than write to.
+	 */
+	private class Observer extends FileObserver {
+		private static final int EVENTS = CLOSE_WRITE | MOVED_TO | MOVED_FROM
+				| DELETE | DELETE_SELF | MOVE_SELF;
+
+		Observer(File directory) {
+			super(directory.getAbsolutePath(), EVENTS);
+		}
+
+		/**
+		 * Runs on the thread all observers of the process share, so it never
+		 * waits for the lock; todo.txt is looked at on the writer thread.
+		 */
+		@Override
+		public void onEvent(int event, String path) {
+			if ((event & (DELETE_SELF | MOVE_SELF)) != 0) {
+				// the watch is gone with the directory; only null can be
+				// replaced, so nobody else changes the field in between
+				if (observer == this) {
+					observer = null;
+				}
+			} else if (TODO_TXT_FILE.getName().equals(path)) {
+				todoStale = true;
+				scheduler.execute(checkTask);
+			} else if (DONE_TXT_FILE.getName().equals(path)) {
+				doneModified = DONE_TXT_FILE.lastModified();
+			}
+		}
 	}
 }
@@ -40,11 +40,49 @@ interface LocalTaskRepository {
 
 	void store(ArrayList<Task> tasks);
 
+	/**
+	 * Persists a task appended to the end of the stored tasks
+	 */
+	void storeAdded(Task task);
+
+	/**
+	 * Persists the replacement of the task at index, whose line was the given
+	 * one
+	 */
+	void storeUpdated(int index, String line, Task task);
+
+	/**
+	 * Persists the removal of the task at index, whose line was the given one
+	 */
+	void storeDeleted(int index, String line);
+
+	/**
+	 * Writes the changes from the store methods that may still be held back
+	 * to group them into one write
+	 */
+	void flush();
+
+	/**
+	 * Like {@link #flush()}, but on the thread that writes the changes, so
+	 * the caller does not wait for it
+	 */
+	void flushInBackground();
+
+	/**
+	 * Writes any changes that were persisted incrementally back into the todo
+	 * file, so it can be read by others
+	 */
+	void compact();
+
 	void archive(ArrayList<Task> tasks);
 
 	void loadDoneTasks(File file);
 
-	boolean todoFileModifiedSince(Date date);
+	/**
+	 * @return true if the todo file no longer holds what this repository
+	 *         last loaded or wrote
+	 */
+	boolean todoFileChanged();
 
 	boolean doneFileModifiedSince(Date date);
 
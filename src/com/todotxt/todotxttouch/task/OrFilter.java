@@ -30,7 +30,7 @@ import java.util.ArrayList;
  * 
  * @author Tim Barlotta
  */
-class OrFilter implements Filter<Task> {
+class OrFilter implements Filter<Task>, TableFilter, PostingFilter {
 	private ArrayList<Filter<Task>> filters = new ArrayList<Filter<Task>>();
 
 	public void addFilter(Filter<Task> filter) {
@@ -52,4 +52,39 @@ class OrFilter implements Filter<Task> {
 		}
 		return false;
 	}
+
+	@Override
+	public boolean apply(TaskTable table, int row) {
+		if (filters.size() <= 0) {
+			return true;
+		}
+
+		for (Filter<Task> f : filters) {
+			if (table.matches(f, row)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Unites the positions of the subfilters, if all of them have some
+	 */
+	@Override
+	public int[] select(TaskPostings postings) {
+		if (filters.size() <= 0) {
+			return null;
+		}
+		int[] selected = new int[0];
+		for (Filter<Task> f : filters) {
+			int[] positions = f instanceof PostingFilter ? ((PostingFilter) f)
+					.select(postings) : null;
+			if (positions == null) {
+				return null;
+			}
+			selected = TaskPostings.union(selected, selected.length,
+					positions, positions.length);
+		}
+		return selected;
+	}
 }
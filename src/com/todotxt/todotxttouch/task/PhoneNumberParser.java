@@ -24,8 +24,10 @@ package com.todotxt.todotxttouch.task;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import android.os.Build;
 
@@ -37,6 +39,27 @@ public class PhoneNumberParser {
 	// private static final Pattern NUMBER_PATTERN = android.util.Patterns.
 	private static final PhoneNumberParser INSTANCE = new PhoneNumberParser();
 
+	/**
+	 * Texts with fewer digits never contain a phone number. The shortest
+	 * numbers libphonenumber accepts (Ascension Island) have four digits.
+	 */
+	static final int MIN_DIGITS = 4;
+
+	static final int CACHE_SIZE = 256;
+
+	private final Map<String, List<String>> cache = new LinkedHashMap<String, List<String>>(
+			CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, List<String>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private Locale locale;
+	private String region;
+
 	private PhoneNumberParser() {
 	}
 
@@ -56,9 +79,22 @@ public class PhoneNumberParser {
 			return Collections.emptyList();
 		}
 
+		if (countDigits(inputText) < MIN_DIGITS) {
+			return Collections.emptyList();
+		}
+
+		String region;
+		synchronized (cache) {
+			region = currentRegion();
+			List<String> cached = cache.get(inputText);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
 		PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
 		Iterable<PhoneNumberMatch> numbersMatch = phoneUtil.findNumbers(
-				inputText, Locale.getDefault().getCountry());
+				inputText, region);
 		ArrayList<String> numbers = new ArrayList<String>();
 		for (PhoneNumberMatch number : numbersMatch) {
 			numbers.add(phoneUtil.format(number.number(),
@@ -66,6 +102,36 @@ public class PhoneNumberParser {
 
 		}
 
-		return numbers;
+		List<String> result = Collections.unmodifiableList(numbers);
+		synchronized (cache) {
+			if (region.equals(this.region)) {
+				cache.put(inputText, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the region for the default locale, dropping all cached results
+	 * when the locale changed since the last call. Must hold the cache lock.
+	 */
+	private String currentRegion() {
+		Locale current = Locale.getDefault();
+		if (!current.equals(locale)) {
+			locale = current;
+			region = current.getCountry();
+			cache.clear();
+		}
+		return region;
+	}
+
+	private static int countDigits(String text) {
+		int digits = 0;
+		for (int i = 0; i < text.length() && digits < MIN_DIGITS; i++) {
+			if (Character.isDigit(text.charAt(i))) {
+				digits++;
+			}
+		}
+		return digits;
 	}
 }
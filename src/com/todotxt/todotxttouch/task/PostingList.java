@@ -0,0 +1,113 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+/**
+ * Ascending task positions, see {@link TaskPostings}
+ */
+class PostingList {
+	int[] positions = new int[4];
+	int size;
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return true if the list was empty before
+	 */
+	boolean add(int position) {
+		int at = size == 0 || positions[size - 1] < position ? size
+				: search(position);
+		if (at < 0) {
+			at = -at - 1;
+		} else if (at < size) {
+			// already there
+			return false;
+		}
+		if (size == positions.length) {
+			int[] grown = new int[size * 2];
+			System.arraycopy(positions, 0, grown, 0, size);
+			positions = grown;
+		}
+		System.arraycopy(positions, at, positions, at + 1, size - at);
+		positions[at] = position;
+		size++;
+		return size == 1;
+	}
+
+	/**
+	 * @return true if the list is empty now, and was not before
+	 */
+	boolean remove(int position) {
+		int at = search(position);
+		if (at < 0) {
+			return false;
+		}
+		System.arraycopy(positions, at + 1, positions, at, size - at - 1);
+		size--;
+		return size == 0;
+	}
+
+	/**
+	 * Takes out the removed positions and moves each of the others down by
+	 * the number removed before it, all in one pass.
+	 * 
+	 * @return true if the list is empty now, and was not before
+	 */
+	boolean removeAll(PostingList removed) {
+		if (size == 0) {
+			return false;
+		}
+		int[] gone = removed.positions;
+		int j = 0;
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			int position = positions[i];
+			while (j < removed.size && gone[j] < position) {
+				j++;
+			}
+			if (j == removed.size || gone[j] != position) {
+				positions[n++] = position - j;
+			}
+		}
+		size = n;
+		return n == 0;
+	}
+
+	private int search(int position) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (positions[mid] < position) {
+				low = mid + 1;
+			} else if (positions[mid] > position) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+}
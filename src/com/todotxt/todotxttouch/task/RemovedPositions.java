@@ -0,0 +1,108 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.Arrays;
+
+/**
+ * The positions of tasks removed from a list one at a time, each counted
+ * the way the list was numbered after the removals before it. Recording one
+ * costs nothing more than storing it; they are brought to the numbering
+ * before any of them all at once, see {@link #sorted(int)}.
+ */
+class RemovedPositions {
+	private int[] positions = new int[16];
+	private int size;
+	// each position below all before it, as when deleting from the back
+	private boolean descending = true;
+	private final PostingList sorted = new PostingList();
+
+	void clear() {
+		size = 0;
+		descending = true;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void add(int position) {
+		if (size == positions.length) {
+			int[] grown = new int[size * 2];
+			System.arraycopy(positions, 0, grown, 0, size);
+			positions = grown;
+		}
+		if (size > 0 && position >= positions[size - 1]) {
+			descending = false;
+		}
+		positions[size++] = position;
+	}
+
+	/**
+	 * @param remaining
+	 *            the size of the list after the removals
+	 * @return the removed positions as the list was numbered before any of
+	 *         them, in ascending order; valid until the next call
+	 */
+	PostingList sorted(int remaining) {
+		if (sorted.positions.length < size) {
+			sorted.positions = new int[size];
+		}
+		int[] result = sorted.positions;
+		sorted.size = size;
+		if (descending) {
+			// none of them moved the ones after it
+			for (int i = 0; i < size; i++) {
+				result[i] = positions[size - 1 - i];
+			}
+			return sorted;
+		}
+		// a Fenwick tree counting the positions still there, to find the
+		// one each removal counted to in log time; with all of them there,
+		// every node counts as many as its lowest bit
+		int n = remaining + size;
+		int[] tree = new int[n + 1];
+		for (int i = 1; i <= n; i++) {
+			tree[i] = i & -i;
+		}
+		int top = Integer.highestOneBit(n);
+		for (int i = 0; i < size; i++) {
+			// the node before the one with positions[i] + 1 still there
+			int node = 0;
+			int left = positions[i] + 1;
+			for (int step = top; step > 0; step >>= 1) {
+				int next = node + step;
+				if (next <= n && tree[next] < left) {
+					node = next;
+					left -= tree[next];
+				}
+			}
+			result[i] = node;
+			for (int j = node + 1; j <= n; j += j & -j) {
+				tree[j]--;
+			}
+		}
+		Arrays.sort(result, 0, size);
+		return sorted;
+	}
+}
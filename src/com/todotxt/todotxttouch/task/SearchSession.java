@@ -0,0 +1,154 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The filter the task list is shown with, and the tasks it matched last time.
+ * When the search text is only extended, or gets another term, while the rest
+ * of the filter and the bag stay the same, the new query can only match
+ * tasks the last one did, so only those are checked again. See
+ * {@link TaskBag#search(SearchSession, java.util.Comparator)}.
+ */
+public class SearchSession {
+	private List<Priority> priorities = new ArrayList<Priority>();
+	private List<String> contexts = new ArrayList<String>();
+	private List<String> projects = new ArrayList<String>();
+	private String[] terms = new String[0];
+	private Filter<Task> filter = FilterFactory.generateAndFilter(priorities,
+			contexts, projects, null, false);
+
+	// the positions matched last time, the query and the bag version they
+	// are from
+	private TaskPostings source;
+	private int[] matched;
+	private List<Priority> matchedPriorities;
+	private List<String> matchedContexts;
+	private List<String> matchedProjects;
+	private String[] matchedTerms;
+	private int version;
+
+	/**
+	 * Sets the query for the next
+	 * {@link TaskBag#search(SearchSession, java.util.Comparator)}
+	 */
+	public void setQuery(List<Priority> priorities, List<String> contexts,
+			List<String> projects, String text) {
+		this.priorities = new ArrayList<Priority>(priorities);
+		this.contexts = new ArrayList<String>(contexts);
+		this.projects = new ArrayList<String>(projects);
+		this.terms = text == null ? new String[0] : text.toUpperCase().split(
+				"\\s");
+		filter = FilterFactory.generateAndFilter(priorities, contexts,
+				projects, text, false);
+	}
+
+	public Filter<Task> getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return the positions of the tasks matching the query in ascending
+	 *         order
+	 */
+	int[] select(TaskPostings postings, int version) {
+		int[] result;
+		if (source == postings && this.version == version && narrowsMatched()) {
+			result = retain(postings, matched);
+		} else {
+			result = filter instanceof PostingFilter ? postings
+					.select((PostingFilter) filter) : null;
+			if (result == null) {
+				result = scan(postings);
+			}
+		}
+		source = postings;
+		matched = result;
+		matchedPriorities = priorities;
+		matchedContexts = contexts;
+		matchedProjects = projects;
+		matchedTerms = terms;
+		this.version = version;
+		return result;
+	}
+
+	private boolean narrowsMatched() {
+		return priorities.equals(matchedPriorities)
+				&& contexts.equals(matchedContexts)
+				&& projects.equals(matchedProjects)
+				&& narrows(matchedTerms, terms);
+	}
+
+	private int[] retain(TaskPostings postings, int[] candidates) {
+		int[] result = new int[candidates.length];
+		int n = 0;
+		for (int position : candidates) {
+			if (filter.apply(postings.get(position))) {
+				result[n++] = position;
+			}
+		}
+		return n == result.length ? result : copyOf(result, n);
+	}
+
+	private int[] scan(TaskPostings postings) {
+		int[] result = new int[postings.size()];
+		int n = 0;
+		for (int position = 0; position < result.length; position++) {
+			if (filter.apply(postings.get(position))) {
+				result[n++] = position;
+			}
+		}
+		return n == result.length ? result : copyOf(result, n);
+	}
+
+	/**
+	 * @return true if all text matching the new terms also matches the old
+	 *         ones, that is each old term is part of a new one
+	 */
+	static boolean narrows(String[] oldTerms, String[] newTerms) {
+		for (String oldTerm : oldTerms) {
+			if (oldTerm.length() == 0) {
+				continue;
+			}
+			boolean found = false;
+			for (String newTerm : newTerms) {
+				if (newTerm.contains(oldTerm)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+}
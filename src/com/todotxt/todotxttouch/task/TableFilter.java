@@ -0,0 +1,41 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+/**
+ * A filter that can be evaluated on a row of a {@link TaskTable} without
+ * creating a Task for it.
+ */
+interface TableFilter {
+	/**
+	 * Apply the filter to a row
+	 * 
+	 * @param table
+	 *            the table holding the row
+	 * @param row
+	 *            the row to apply the filter to
+	 * @return <code>true</code> if the row meets the filter criteria,
+	 *         <code>false</code> otherwise
+	 */
+	boolean apply(TaskTable table, int row);
+}
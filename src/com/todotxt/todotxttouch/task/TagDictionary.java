@@ -0,0 +1,281 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Interns context and project names and hands out dense integer ids for them,
+ * so that every distinct tag is held in memory once and tasks can refer to
+ * their tags by id.
+ * 
+ * Ids are only meaningful within the running process. Where they are written
+ * to disk, in a {@link TaskSnapshot}, the names go along with them.
+ */
+class TagDictionary {
+	static final int[] NO_TAGS = new int[0];
+
+	private static final TagDictionary INSTANCE = new TagDictionary();
+
+	// open addressing, replaced as a whole when it grows, so it can be read
+	// without the lock: a tag that is there is found, one that is not yet
+	// there is looked up again under the lock
+	private volatile Entry[] table = new Entry[128];
+	// by id, guarded by the lock
+	private Entry[] entries = new Entry[64];
+	private int size;
+
+	TagDictionary() {
+	}
+
+	public static TagDictionary getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the id of the tag, adding it to the dictionary if needed.
+	 */
+	public int intern(String name) {
+		return intern(name, 0, name.length());
+	}
+
+	/**
+	 * Returns the id of the tag found at [start, end) in the given text. The
+	 * substring is only created when the tag is seen for the first time.
+	 * Tags already known are found without taking a lock, so parser threads
+	 * do not wait on each other.
+	 */
+	public int intern(String text, int start, int end) {
+		return entry(text, start, end).id;
+	}
+
+	/**
+	 * Returns a shared one-element array holding the id of the tag found at
+	 * [start, end) in the given text. Callers must not modify it.
+	 */
+	public int[] internSingleton(String text, int start, int end) {
+		return entry(text, start, end).singleton;
+	}
+
+	/**
+	 * Returns the id of the tag, or -1 if it has never been interned.
+	 */
+	public int lookup(String name) {
+		int hash = hash(name, 0, name.length());
+		Entry entry = find(table, name, 0, name.length(), hash);
+		if (entry == null) {
+			synchronized (this) {
+				entry = find(table, name, 0, name.length(), hash);
+			}
+		}
+		return entry == null ? -1 : entry.id;
+	}
+
+	public synchronized String get(int id) {
+		return entryOf(id).name;
+	}
+
+	/**
+	 * Returns a shared one-element array holding the id. Callers must not
+	 * modify it.
+	 */
+	public synchronized int[] singleton(int id) {
+		return entryOf(id).singleton;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Interns all names and returns their ids in the same order.
+	 */
+	public int[] internAll(List<String> names) {
+		if (names.isEmpty()) {
+			return NO_TAGS;
+		}
+		if (names.size() == 1) {
+			return singleton(intern(names.get(0)));
+		}
+		int[] ids = new int[names.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = intern(names.get(i));
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the ids of the names that have been interned, leaving out the
+	 * others, which no task can have.
+	 */
+	public int[] lookupAll(List<String> names) {
+		int[] ids = new int[names.size()];
+		int n = 0;
+		for (String name : names) {
+			int id = lookup(name);
+			if (id >= 0) {
+				ids[n++] = id;
+			}
+		}
+		if (n == 0) {
+			return NO_TAGS;
+		}
+		if (n < ids.length) {
+			int[] known = new int[n];
+			System.arraycopy(ids, 0, known, 0, n);
+			ids = known;
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns a read-only list of tag names backed by the given ids.
+	 */
+	public List<String> asList(int[] ids) {
+		return new TagList(this, ids);
+	}
+
+	private Entry entry(String text, int start, int end) {
+		int hash = hash(text, start, end);
+		Entry entry = find(table, text, start, end, hash);
+		return entry != null ? entry : add(text, start, end, hash);
+	}
+
+	private synchronized Entry add(String text, int start, int end, int hash) {
+		Entry[] current = table;
+		Entry entry = find(current, text, start, end, hash);
+		if (entry != null) {
+			// added by another thread in the meantime
+			return entry;
+		}
+		entry = new Entry(text.substring(start, end), hash, size);
+		if (size == entries.length) {
+			Entry[] grown = new Entry[entries.length * 2];
+			System.arraycopy(entries, 0, grown, 0, size);
+			entries = grown;
+		}
+		entries[size++] = entry;
+		if (size * 2 > current.length) {
+			// filled before it is published
+			Entry[] grown = new Entry[current.length * 2];
+			for (int id = 0; id < size; id++) {
+				put(grown, entries[id]);
+			}
+			table = grown;
+		} else {
+			put(current, entry);
+		}
+		return entry;
+	}
+
+	private Entry entryOf(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No tag with id " + id);
+		}
+		return entries[id];
+	}
+
+	private static Entry find(Entry[] table, String text, int start,
+			int end, int hash) {
+		int mask = table.length - 1;
+		int length = end - start;
+		for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+			Entry entry = table[slot];
+			if (entry == null) {
+				return null;
+			}
+			if (entry.hash == hash && entry.name.length() == length
+					&& entry.name.regionMatches(0, text, start, length)) {
+				return entry;
+			}
+		}
+	}
+
+	private static void put(Entry[] table, Entry entry) {
+		int mask = table.length - 1;
+		int slot = spread(entry.hash) & mask;
+		while (table[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = entry;
+	}
+
+	// same value as String.hashCode() of the substring
+	private static int hash(String text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text.charAt(i);
+		}
+		return h;
+	}
+
+	private static int spread(int h) {
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+
+	/**
+	 * A tag, immutable so it can be read without the lock once it is in the
+	 * table
+	 */
+	private static class Entry {
+		final String name;
+		final int hash;
+		final int id;
+		final int[] singleton;
+
+		Entry(String name, int hash, int id) {
+			this.name = name;
+			this.hash = hash;
+			this.id = id;
+			this.singleton = new int[] { id };
+		}
+	}
+
+	private static class TagList extends AbstractList<String> implements
+			RandomAccess {
+		private final TagDictionary dictionary;
+		private final int[] ids;
+
+		TagList(TagDictionary dictionary, int[] ids) {
+			this.dictionary = dictionary;
+			this.ids = ids;
+		}
+
+		@Override
+		public String get(int index) {
+			if (index < 0 || index >= ids.length) {
+				throw new IndexOutOfBoundsException("Index: " + index
+						+ ", Size: " + ids.length);
+			}
+			return dictionary.get(ids[index]);
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+	}
+}
@@ -22,21 +22,22 @@
  */
 package com.todotxt.todotxttouch.task;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.URL;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
-import com.todotxt.todotxttouch.util.RelativeDate;
+import com.todotxt.todotxttouch.util.Dates;
 import com.todotxt.todotxttouch.util.Strings;
 
 @SuppressWarnings("serial")
 public class Task implements Serializable {
 	private static final String COMPLETED = "x ";
-	private static final String DATE_FORMAT = "yyyy-MM-dd";
 	private final String originalText;
 	private final Priority originalPriority;
 
@@ -47,12 +48,22 @@ public class Task implements Serializable {
 	private String text;
 	private String completionDate;
 	private String prependedDate;
-	private String relativeAge = "";
-	private List<String> contexts;
-	private List<String> projects;
-	private List<String> mailAddresses;
-	private List<URL> links;
-	private List<String> phoneNumbers;
+	private int completionDay = Dates.NONE;
+	private int prependedDay = Dates.NONE;
+	// ids into the TagDictionary, serialized by name, see writeObject()
+	private transient int[] contextIds;
+	private transient int[] projectIds;
+	// derived from text on first access, see getLinks() and friends
+	private transient List<String> mailAddresses;
+	private transient List<URL> links;
+	private transient List<String> phoneNumbers;
+	private transient String upperText;
+	// the line as it goes into the file, built on first use
+	private transient String fileFormat;
+	// changed since it was parsed or last stored
+	private transient boolean dirty;
+	// the line it was parsed from or last stored as, kept while it is dirty
+	private transient String storedLine;
 
 	public Task(long id, String rawText, Date defaultPrependedDate) {
 		this.id = id;
@@ -65,40 +76,57 @@ public class Task implements Serializable {
 		this(id, rawText, null);
 	}
 
+	/**
+	 * Restores a task as it was parsed before, see {@link TaskSnapshot}
+	 */
+	Task(long id, Priority priority, boolean completed, boolean deleted,
+			String text, String completionDate, int completionDay,
+			String prependedDate, int prependedDay, int[] contextIds,
+			int[] projectIds) {
+		this.id = id;
+		this.priority = priority;
+		this.completed = completed;
+		this.deleted = deleted;
+		this.text = text;
+		this.completionDate = completionDate;
+		this.completionDay = completionDay;
+		this.prependedDate = prependedDate;
+		this.prependedDay = prependedDay;
+		this.contextIds = contextIds;
+		this.projectIds = projectIds;
+		this.originalPriority = priority;
+		this.originalText = text;
+	}
+
 	public void update(String rawText) {
+		changing();
 		this.init(rawText, null);
 	}
 
 	private void init(String rawText, Date defaultPrependedDate) {
-		TextSplitter splitter = TextSplitter.getInstance();
-		TextSplitter.SplitResult splitResult = splitter.split(rawText);
-		this.priority = splitResult.priority;
-		this.text = splitResult.text;
-		this.prependedDate = splitResult.prependedDate;
-		this.completed = splitResult.completed;
-		this.completionDate = splitResult.completedDate;
-
-		this.contexts = ContextParser.getInstance().parse(text);
-		this.projects = ProjectParser.getInstance().parse(text);
-		this.mailAddresses = MailAddressParser.getInstance().parse(text);
-		this.links = LinkParser.getInstance().parse(text);
-		this.phoneNumbers = PhoneNumberParser.getInstance().parse(text);
+		TaskLineScanner.ScanResult scan = TaskLineScanner.getInstance().scan(
+				rawText);
+		this.priority = scan.priority;
+		this.text = scan.getText();
+		this.prependedDate = scan.getPrependedDate();
+		this.completed = scan.completed;
+		this.completionDate = scan.getCompletionDate();
+		this.prependedDay = Dates.parse(scan.line, scan.prependedDateStart);
+		this.completionDay = Dates.parse(scan.line, scan.completionDateStart);
+
+		this.contextIds = scan.getContextIds();
+		this.projectIds = scan.getProjectIds();
+		this.mailAddresses = null;
+		this.links = null;
+		this.phoneNumbers = null;
+		this.upperText = null;
+		this.fileFormat = null;
 		this.deleted = Strings.isEmptyOrNull(text);
 
 		if (defaultPrependedDate != null
 				&& Strings.isEmptyOrNull(this.prependedDate)) {
-			SimpleDateFormat formatter = new SimpleDateFormat(DATE_FORMAT);
-			this.prependedDate = formatter.format(defaultPrependedDate);
-		}
-
-		if (!Strings.isEmptyOrNull(this.prependedDate)) {
-			SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
-			try {
-				Date d = sdf.parse(this.prependedDate);
-				this.relativeAge = RelativeDate.getRelativeDate(d);
-			} catch (ParseException e) {
-				// e.printStackTrace();
-			}
+			this.prependedDay = Dates.toEpochDay(defaultPrependedDate);
+			this.prependedDate = Dates.format(prependedDay);
 		}
 	}
 
@@ -114,12 +142,27 @@ public class Task implements Serializable {
 		return text;
 	}
 
+	/**
+	 * The text in upper case, for case-insensitive search. Kept until the
+	 * text changes.
+	 */
+	String getUpperText() {
+		String result = upperText;
+		if (result == null) {
+			result = text.toUpperCase();
+			upperText = result;
+		}
+		return result;
+	}
+
 	public long getId() {
 		return id;
 	}
 
 	public void setPriority(Priority priority) {
+		changing();
 		this.priority = priority;
+		changed();
 	}
 
 	public Priority getPriority() {
@@ -127,31 +170,65 @@ public class Task implements Serializable {
 	}
 
 	public List<String> getContexts() {
-		return contexts;
+		return TagDictionary.getInstance().asList(contextIds);
+	}
+
+	/**
+	 * The TagDictionary ids of this task's contexts. Must not be modified.
+	 */
+	int[] getContextIds() {
+		return contextIds;
 	}
 
 	public List<URL> getLinks() {
-		return links;
+		List<URL> result = links;
+		if (result == null) {
+			result = TaskLineScanner.getInstance().scanText(text).getLinks();
+			links = result;
+		}
+		return result;
 	}
 
 	public List<String> getPhoneNumbers() {
-		return phoneNumbers;
+		List<String> result = phoneNumbers;
+		if (result == null) {
+			result = PhoneNumberParser.getInstance().parse(text);
+			phoneNumbers = result;
+		}
+		return result;
 	}
 
 	public List<String> getProjects() {
-		return projects;
+		return TagDictionary.getInstance().asList(projectIds);
+	}
+
+	/**
+	 * The TagDictionary ids of this task's projects. Must not be modified.
+	 */
+	int[] getProjectIds() {
+		return projectIds;
 	}
 
 	public List<String> getMailAddresses() {
-		return mailAddresses;
+		List<String> result = mailAddresses;
+		if (result == null) {
+			result = TaskLineScanner.getInstance().scanText(text)
+					.getMailAddresses();
+			mailAddresses = result;
+		}
+		return result;
 	}
 
 	public String getPrependedDate() {
 		return prependedDate;
 	}
 
-	public String getRelativeAge() {
-		return relativeAge;
+	/**
+	 * @return the prepended date in days since 1970-01-01, or
+	 *         {@link Dates#NONE}
+	 */
+	public int getPrependedDay() {
+		return prependedDay;
 	}
 
 	public boolean isDeleted() {
@@ -166,20 +243,33 @@ public class Task implements Serializable {
 		return completionDate;
 	}
 
+	/**
+	 * @return the completion date in days since 1970-01-01, or
+	 *         {@link Dates#NONE}
+	 */
+	public int getCompletionDay() {
+		return completionDay;
+	}
+
 	public void markComplete(Date date) {
 		if (!this.completed) {
+			changing();
 			this.priority = Priority.NONE;
-			this.completionDate = new SimpleDateFormat(Task.DATE_FORMAT)
-					.format(date);
+			this.completionDay = Dates.toEpochDay(date);
+			this.completionDate = Dates.format(completionDay);
 			this.deleted = false;
 			this.completed = true;
+			changed();
 		}
 	}
 
 	public void markIncomplete() {
 		if (this.completed) {
+			changing();
 			this.completionDate = "";
+			this.completionDay = Dates.NONE;
 			this.completed = false;
+			changed();
 		}
 	}
 
@@ -187,6 +277,40 @@ public class Task implements Serializable {
 		this.update("");
 	}
 
+	/**
+	 * @return true if the task has been changed since it was parsed or
+	 *         stored
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Called once the task has been stored as it is
+	 */
+	void markClean() {
+		dirty = false;
+		storedLine = null;
+	}
+
+	/**
+	 * @return the line the task was parsed from or last stored as
+	 */
+	String getStoredLine() {
+		return dirty ? storedLine : inFileFormat();
+	}
+
+	private void changing() {
+		if (!dirty) {
+			storedLine = inFileFormat();
+			dirty = true;
+		}
+	}
+
+	private void changed() {
+		fileFormat = null;
+	}
+
 	// TODO need a better solution (TaskFormatter?) here
 	public String inScreenFormat() {
 		StringBuilder sb = new StringBuilder();
@@ -201,6 +325,15 @@ public class Task implements Serializable {
 	}
 
 	public String inFileFormat() {
+		String result = fileFormat;
+		if (result == null) {
+			result = buildFileFormat();
+			fileFormat = result;
+		}
+		return result;
+	}
+
+	private String buildFileFormat() {
 		StringBuilder sb = new StringBuilder();
 		if (this.completed) {
 			sb.append(COMPLETED).append(this.completionDate).append(" ");
@@ -220,8 +353,24 @@ public class Task implements Serializable {
 	}
 
 	public void copyInto(Task destination) {
+		destination.changing();
 		destination.id = this.id;
-		destination.init(this.inFileFormat(), null);
+		destination.priority = this.priority;
+		destination.deleted = this.deleted;
+		destination.completed = this.completed;
+		destination.text = this.text;
+		destination.completionDate = this.completionDate;
+		destination.prependedDate = this.prependedDate;
+		destination.completionDay = this.completionDay;
+		destination.prependedDay = this.prependedDay;
+		// never modified, only replaced
+		destination.contextIds = this.contextIds;
+		destination.projectIds = this.projectIds;
+		destination.mailAddresses = this.mailAddresses;
+		destination.links = this.links;
+		destination.phoneNumbers = this.phoneNumbers;
+		destination.upperText = this.upperText;
+		destination.fileFormat = this.fileFormat;
 	}
 
 	@Override
@@ -240,29 +389,13 @@ public class Task implements Serializable {
 				return false;
 		} else if (!completionDate.equals(other.completionDate))
 			return false;
-		if (contexts == null) {
-			if (other.contexts != null)
-				return false;
-		} else if (!contexts.equals(other.contexts))
+		if (!Arrays.equals(contextIds, other.contextIds))
 			return false;
 		if (deleted != other.deleted)
 			return false;
 		if (id != other.id)
 			return false;
-		if (links == null) {
-			if (other.links != null)
-				return false;
-		} else if (!links.equals(other.links))
-			return false;
-		if (mailAddresses == null) {
-			if (other.mailAddresses != null)
-				return false;
-		} else if (!mailAddresses.equals(other.mailAddresses))
-			if (phoneNumbers == null) {
-				if (other.phoneNumbers != null)
-					return false;
-			} else if (!phoneNumbers.equals(other.phoneNumbers))
-				return false;
+		// links, mail addresses and phone numbers are derived from text
 		if (prependedDate == null) {
 			if (other.prependedDate != null)
 				return false;
@@ -270,15 +403,7 @@ public class Task implements Serializable {
 			return false;
 		if (priority != other.priority)
 			return false;
-		if (projects == null) {
-			if (other.projects != null)
-				return false;
-		} else if (!projects.equals(other.projects))
-			return false;
-		if (relativeAge == null) {
-			if (other.relativeAge != null)
-				return false;
-		} else if (!relativeAge.equals(other.relativeAge))
+		if (!Arrays.equals(projectIds, other.projectIds))
 			return false;
 		if (text == null) {
 			if (other.text != null)
@@ -295,22 +420,14 @@ public class Task implements Serializable {
 		result = prime * result + (completed ? 1231 : 1237);
 		result = prime * result
 				+ ((completionDate == null) ? 0 : completionDate.hashCode());
-		result = prime * result
-				+ ((contexts == null) ? 0 : contexts.hashCode());
+		result = prime * result + Arrays.hashCode(contextIds);
 		result = prime * result + (deleted ? 1231 : 1237);
 		result = prime * result + (int) (id ^ (id >>> 32));
-		result = prime * result + ((links == null) ? 0 : links.hashCode());
-		result = prime * result
-				+ ((mailAddresses == null) ? 0 : mailAddresses.hashCode())
-				+ ((phoneNumbers == null) ? 0 : phoneNumbers.hashCode());
 		result = prime * result
 				+ ((prependedDate == null) ? 0 : prependedDate.hashCode());
 		result = prime * result
 				+ ((priority == null) ? 0 : priority.hashCode());
-		result = prime * result
-				+ ((projects == null) ? 0 : projects.hashCode());
-		result = prime * result
-				+ ((relativeAge == null) ? 0 : relativeAge.hashCode());
+		result = prime * result + Arrays.hashCode(projectIds);
 		result = prime * result + ((text == null) ? 0 : text.hashCode());
 		return result;
 	}
@@ -323,13 +440,28 @@ public class Task implements Serializable {
 		}
 		if ((ctxts != null) && (ctxts.size() == 1))
 		{
-			contexts.clear();
-			contexts.add(ctxts.get(0));
+			contextIds = new int[] { TagDictionary.getInstance().intern(
+					ctxts.get(0)) };
 		}
 		if ((pjs != null) && (pjs.size() == 1))
 		{
-			projects.clear();
-			projects.add(pjs.get(0));
+			projectIds = new int[] { TagDictionary.getInstance().intern(
+					pjs.get(0)) };
 		}
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(new ArrayList<String>(getContexts()));
+		out.writeObject(new ArrayList<String>(getProjects()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		TagDictionary dictionary = TagDictionary.getInstance();
+		contextIds = dictionary.internAll((List<String>) in.readObject());
+		projectIds = dictionary.internAll((List<String>) in.readObject());
+	}
 }
\ No newline at end of file
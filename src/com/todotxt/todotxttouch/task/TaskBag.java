@@ -43,10 +43,43 @@ public interface TaskBag {
 
 	void delete(Task task);
 
+	/**
+	 * Adds a task for each input, with a single reload
+	 */
+	void addAll(List<String> inputs);
+
+	/**
+	 * Stores the changes made to each of the tasks, with a single reload
+	 */
+	void updateAll(List<Task> tasks);
+
+	void deleteAll(List<Task> tasks);
+
+	/**
+	 * Marks the tasks that are not completed yet as completed today and
+	 * stores them
+	 */
+	void completeAll(List<Task> tasks);
+
+	/**
+	 * Changes are persisted shortly after they are made, several at once.
+	 * Has those still waiting written now, e.g. before the app goes to the
+	 * background. Returns without waiting for the write, so it is safe to
+	 * call on the UI thread.
+	 */
+	void flush();
+
 	List<Task> getTasks();
 
 	List<Task> getTasks(Filter<Task> filter, Comparator<Task> comparator);
 
+	/**
+	 * Like {@link #getTasks(Filter, Comparator)} with the session's filter,
+	 * but checks only the tasks it matched last time if the query was
+	 * narrowed since
+	 */
+	List<Task> search(SearchSession session, Comparator<Task> comparator);
+
 	int size();
 
 	ArrayList<String> getProjects(boolean includeNone);
@@ -55,6 +88,23 @@ public interface TaskBag {
 
 	ArrayList<Priority> getPriorities();
 
+	/**
+	 * @return the number of tasks with each of the projects, where "-" counts
+	 *         the tasks without any
+	 */
+	int[] countProjects(List<String> projects);
+
+	/**
+	 * @return the number of tasks with each of the contexts, where "-" counts
+	 *         the tasks without any
+	 */
+	int[] countContexts(List<String> contexts);
+
+	/**
+	 * @return the number of tasks with each of the priorities
+	 */
+	int[] countPriorities(List<Priority> priorities);
+
 	/* REMOTE APIs */
 	// FUTURE make this syncWithRemote()
 	/**
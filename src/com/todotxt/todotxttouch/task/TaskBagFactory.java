@@ -32,15 +32,24 @@ import com.todotxt.todotxttouch.TodoApplication;
  * @author Tim Barlotta
  */
 public class TaskBagFactory {
-	public static TaskBag getTaskBag(TodoApplication application,
+	public static TaskBag getTaskBag(final TodoApplication application,
 			SharedPreferences sharedPreferences) {
 		TaskBagImpl.Preferences taskBagPreferences = new TaskBagImpl.Preferences(
 				sharedPreferences);
 
 		LocalFileTaskRepository localFileTaskRepository = new LocalFileTaskRepository(
 				taskBagPreferences);
+		localFileTaskRepository
+				.setOnChangeListener(new LocalFileTaskRepository.OnChangeListener() {
+					@Override
+					public void onTodoFileChanged() {
+						application.onTodoFileChanged();
+					}
+				});
 
+		TaskStore store = taskBagPreferences.isTaskTableEnabled() ? new TaskTableStore()
+				: new TaskListStore();
 		return new TaskBagImpl(taskBagPreferences, localFileTaskRepository,
-				application.getRemoteClientManager());
+				application.getRemoteClientManager(), store);
 	}
 }
@@ -25,18 +25,17 @@ package com.todotxt.todotxttouch.task;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import android.content.SharedPreferences;
 
 import com.todotxt.todotxttouch.remote.PullTodoResult;
 import com.todotxt.todotxttouch.remote.RemoteClientManager;
 import com.todotxt.todotxttouch.util.TaskIo;
+import com.todotxt.todotxttouch.util.TaskWriter;
 
 /**
  * Implementation of the TaskBag interface
@@ -47,16 +46,25 @@ class TaskBagImpl implements TaskBag {
 	private Preferences preferences;
 	private final LocalTaskRepository localRepository;
 	private final RemoteClientManager remoteClientManager;
-	private ArrayList<Task> tasks = new ArrayList<Task>();
-	private Date lastReload = null;
+	private final TaskStore store;
+	// the tasks are the authority on the todo file once loaded, until the
+	// repository sees it changed by someone else
+	private boolean loaded = false;
 	private Date lastSync = null;
 
 	public TaskBagImpl(Preferences preferences,
 			LocalTaskRepository localRepository,
 			RemoteClientManager remoteClientManager) {
+		this(preferences, localRepository, remoteClientManager,
+				new TaskListStore());
+	}
+
+	TaskBagImpl(Preferences preferences, LocalTaskRepository localRepository,
+			RemoteClientManager remoteClientManager, TaskStore store) {
 		this.preferences = preferences;
 		this.localRepository = localRepository;
 		this.remoteClientManager = remoteClientManager;
+		this.store = store;
 	}
 
 	public void updatePreferences(TaskBagImpl.Preferences preferences) {
@@ -65,19 +73,15 @@ class TaskBagImpl implements TaskBag {
 
 	private void store(ArrayList<Task> tasks) {
 		localRepository.store(tasks);
-		lastReload = null;
-	}
-
-	private void store() {
-		store(this.tasks);
+		loaded = false;
 	}
 
 	@Override
 	public void archive() {
 		try {
 			reload();
-			localRepository.archive(tasks);
-			lastReload = null;
+			localRepository.archive(store.getAll());
+			loaded = false;
 			reload();
 		} catch (Exception e) {
 			throw new TaskPersistException("An error occurred while archiving",
@@ -87,17 +91,16 @@ class TaskBagImpl implements TaskBag {
 
 	@Override
 	public void reload() {
-		if (lastReload == null
-				|| localRepository.todoFileModifiedSince(lastReload)) {
+		if (!loaded || localRepository.todoFileChanged()) {
 			localRepository.init();
-			this.tasks = localRepository.load();
-			lastReload = new Date();
+			store.reset(localRepository.load());
+			loaded = true;
 		}
 	}
 
 	@Override
 	public int size() {
-		return tasks.size();
+		return store.size();
 	}
 
 	@Override
@@ -107,34 +110,23 @@ class TaskBagImpl implements TaskBag {
 
 	@Override
 	public List<Task> getTasks(Filter<Task> filter, Comparator<Task> comparator) {
-		ArrayList<Task> localTasks = new ArrayList<Task>();
-		if (filter != null) {
-			for (Task t : tasks) {
-				if (filter.apply(t)) {
-					localTasks.add(t);
-				}
-			}
-		} else {
-			localTasks.addAll(tasks);
-		}
-
-		if (comparator == null) {
-			comparator = Sort.PRIORITY_DESC.getComparator();
-		}
-
-		Collections.sort(localTasks, comparator);
+		return store.getTasks(filter, comparator);
+	}
 
-		return localTasks;
+	@Override
+	public List<Task> search(SearchSession session,
+			Comparator<Task> comparator) {
+		return store.search(session, comparator);
 	}
 
 	@Override
 	public void addAsTask(String input) {
 		try {
 			reload();
-			Task task = new Task(tasks.size(), input,
+			Task task = new Task(store.size(), input,
 					(preferences.isPrependDateEnabled() ? new Date() : null));
-			tasks.add(task);
-			store();
+			store.add(task);
+			localRepository.storeAdded(task);
 		} catch (Exception e) {
 			throw new TaskPersistException("An error occurred while adding {"
 					+ input + "}", e);
@@ -145,11 +137,9 @@ class TaskBagImpl implements TaskBag {
 	public void update(Task task) {
 		try {
 			reload();
-			Task found = TaskBagImpl.find(tasks, task);
-			if (found != null) {
-				task.copyInto(found);
-				// Log.i(TAG, "copied into found {" + found + "}");
-				store();
+			int index = store.find(task);
+			if (index >= 0) {
+				replace(index, task);
 			} else {
 				throw new TaskPersistException("Task not found, not updated");
 			}
@@ -159,14 +149,29 @@ class TaskBagImpl implements TaskBag {
 		}
 	}
 
+	/**
+	 * Replaces the task at index with the given one, unless it is that task
+	 * and has not been changed since it was stored
+	 */
+	private void replace(int index, Task task) {
+		String line = store.get(index).getStoredLine();
+		if (!task.isDirty() && line.equals(task.inFileFormat())) {
+			return;
+		}
+		Task found = store.set(index, task);
+		localRepository.storeUpdated(index, line, found);
+		found.markClean();
+	}
+
 	@Override
 	public void delete(Task task) {
 		try {
 			reload();
-			Task found = TaskBagImpl.find(tasks, task);
-			if (found != null) {
-				tasks.remove(found);
-				store();
+			int index = store.find(task);
+			if (index >= 0) {
+				String line = store.get(index).getStoredLine();
+				store.remove(index);
+				localRepository.storeDeleted(index, line);
 			} else {
 				throw new TaskPersistException("Task not found, not deleted");
 			}
@@ -176,6 +181,107 @@ class TaskBagImpl implements TaskBag {
 		}
 	}
 
+	@Override
+	public void addAll(List<String> inputs) {
+		try {
+			reload();
+			Date date = preferences.isPrependDateEnabled() ? new Date() : null;
+			for (String input : inputs) {
+				Task task = new Task(store.size(), input, date);
+				store.add(task);
+				localRepository.storeAdded(task);
+			}
+		} catch (Exception e) {
+			throw new TaskPersistException("An error occurred while adding "
+					+ inputs.size() + " tasks", e);
+		}
+	}
+
+	@Override
+	public void updateAll(List<Task> changed) {
+		int missing = 0;
+		try {
+			reload();
+			int[] indexes = findAll(changed);
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] < 0) {
+					missing++;
+					continue;
+				}
+				replace(indexes[i], changed.get(i));
+			}
+		} catch (Exception e) {
+			throw new TaskPersistException("An error occurred while updating "
+					+ changed.size() + " tasks", e);
+		}
+		if (missing > 0) {
+			throw new TaskPersistException(missing
+					+ " tasks not found, not updated");
+		}
+	}
+
+	@Override
+	public void deleteAll(List<Task> deleted) {
+		int missing = 0;
+		try {
+			reload();
+			int[] indexes = findAll(deleted);
+			// from the back, so the indexes still to come stay valid
+			Arrays.sort(indexes);
+			for (int i = indexes.length - 1; i >= 0; i--) {
+				if (indexes[i] < 0) {
+					missing++;
+				} else if (i == indexes.length - 1
+						|| indexes[i] != indexes[i + 1]) {
+					String line = store.get(indexes[i]).getStoredLine();
+					store.remove(indexes[i]);
+					localRepository.storeDeleted(indexes[i], line);
+				}
+			}
+		} catch (Exception e) {
+			throw new TaskPersistException("An error occurred while deleting "
+					+ deleted.size() + " tasks", e);
+		}
+		if (missing > 0) {
+			throw new TaskPersistException(missing
+					+ " tasks not found, not deleted");
+		}
+	}
+
+	@Override
+	public void completeAll(List<Task> completed) {
+		Date date = new Date();
+		List<Task> changed = new ArrayList<Task>(completed.size());
+		for (Task task : completed) {
+			if (!task.isCompleted()) {
+				task.markComplete(date);
+				changed.add(task);
+			}
+		}
+		updateAll(changed);
+	}
+
+	/**
+	 * @return the index of each task, or -1 if it is not in the bag
+	 */
+	private int[] findAll(List<Task> batch) {
+		int[] indexes = new int[batch.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = store.find(batch.get(i));
+		}
+		return indexes;
+	}
+
+	@Override
+	public void flush() {
+		try {
+			localRepository.flushInBackground();
+		} catch (Exception e) {
+			throw new TaskPersistException(
+					"An error occurred while writing changes", e);
+		}
+	}
+
 	/* REMOTE APIS */
 	@Override
 	public void pushToRemote(boolean overwrite) {
@@ -185,6 +291,7 @@ class TaskBagImpl implements TaskBag {
 	@Override
 	public void pushToRemote(boolean overridePreference, boolean overwrite) {
 		if (!this.preferences.isWorkOfflineEnabled() || overridePreference) {
+			localRepository.compact();
 			File doneFile = null;
 			if (localRepository.doneFileModifiedSince(lastSync)) {
 				doneFile = LocalFileTaskRepository.DONE_TXT_FILE;
@@ -228,55 +335,44 @@ class TaskBagImpl implements TaskBag {
 
 	@Override
 	public ArrayList<Priority> getPriorities() {
-		// TODO cache this after reloads?
-		Set<Priority> res = new HashSet<Priority>();
-		for (Task item : tasks) {
-			res.add(item.getPriority());
-		}
-		ArrayList<Priority> ret = new ArrayList<Priority>(res);
-		Collections.sort(ret);
-		return ret;
+		return new ArrayList<Priority>(store.getPriorities());
 	}
 
 	@Override
 	public ArrayList<String> getContexts(boolean includeNone) {
-		// TODO cache this after reloads?
-		Set<String> res = new HashSet<String>();
-		for (Task item : tasks) {
-			res.addAll(item.getContexts());
-		}
-		ArrayList<String> ret = new ArrayList<String>(res);
-		Collections.sort(ret);
-		if (includeNone) {
-			ret.add(0, "-");
-		}
-		return ret;
+		return tagNames(store.getContexts(), includeNone);
 	}
 
 	@Override
 	public ArrayList<String> getProjects(boolean includeNone) {
-		// TODO cache this after reloads?
-		Set<String> res = new HashSet<String>();
-		for (Task item : tasks) {
-			res.addAll(item.getProjects());
-		}
-		ArrayList<String> ret = new ArrayList<String>(res);
-		Collections.sort(ret);
+		return tagNames(store.getProjects(), includeNone);
+	}
+
+	private static ArrayList<String> tagNames(List<String> names,
+			boolean includeNone) {
+		ArrayList<String> ret = new ArrayList<String>();
 		if (includeNone) {
-			ret.add(0, "-");
+			ret.add("-");
+		}
+		if (names != null) {
+			ret.addAll(names);
 		}
 		return ret;
 	}
 
-	private static Task find(List<Task> tasks, Task task) {
-		for (Task task2 : tasks) {
-			if (task2 == task
-					|| (task2.getText().equals(task.getOriginalText()) && task2
-							.getPriority() == task.getOriginalPriority())) {
-				return task2;
-			}
-		}
-		return null;
+	@Override
+	public int[] countProjects(List<String> projects) {
+		return store.countProjects(projects);
+	}
+
+	@Override
+	public int[] countContexts(List<String> contexts) {
+		return store.countContexts(contexts);
+	}
+
+	@Override
+	public int[] countPriorities(List<Priority> priorities) {
+		return store.countPriorities(priorities);
 	}
 
 	public static class Preferences {
@@ -297,6 +393,15 @@ class TaskBagImpl implements TaskBag {
 		public boolean isWorkOfflineEnabled() {
 			return sharedPreferences.getBoolean("workofflinepref", false);
 		}
+
+		public TaskWriter.Sync getFileSync() {
+			return TaskWriter.Sync.fromName(sharedPreferences.getString(
+					"filesyncpref", TaskWriter.Sync.FILE.name()));
+		}
+
+		public boolean isTaskTableEnabled() {
+			return sharedPreferences.getBoolean("tasktablepref", false);
+		}
 	}
 
 }
@@ -0,0 +1,238 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Finds tasks in a bag's list by identity, or by the text and priority a
+ * copy was made with, without comparing against every task. Built on the
+ * first lookup after a reload.
+ * 
+ * Removing a task shifts the ones after it, so positions are only trusted
+ * below {@link #valid} and the rest is renumbered on demand: a run of
+ * deletes costs one pass, not one per delete.
+ */
+class TaskIndex {
+	private List<Task> tasks;
+	private boolean built;
+	private final IdentityHashMap<Task, Entry> entries = new IdentityHashMap<Task, Entry>();
+	// a Task, or an ArrayList<Task> for duplicate lines
+	private final HashMap<Key, Object> byKey = new HashMap<Key, Object>();
+	// positions below this are up to date
+	private int valid;
+
+	/**
+	 * Starts over with the given list, which the bag then changes through
+	 * {@link #added(Task)}, {@link #changed(Task)} and
+	 * {@link #removed(int, Task)} only.
+	 */
+	public void reset(List<Task> tasks) {
+		this.tasks = tasks;
+		built = false;
+		entries.clear();
+		byKey.clear();
+		valid = 0;
+	}
+
+	/**
+	 * Finds the task itself, or else the task with the text and priority the
+	 * given one was created with. Among duplicate lines, the one with the
+	 * same id is preferred, then the first.
+	 * 
+	 * @return the position of the task, or -1
+	 */
+	public int find(Task task) {
+		build();
+		Entry entry = entries.get(task);
+		if (entry != null) {
+			return position(entry);
+		}
+		Object found = byKey.get(new Key(task.getOriginalText(), task
+				.getOriginalPriority()));
+		if (found == null) {
+			return -1;
+		}
+		if (found instanceof Task) {
+			return position(entries.get(found));
+		}
+		int first = -1;
+		for (Task candidate : asList(found)) {
+			int position = position(entries.get(candidate));
+			if (candidate.getId() == task.getId()) {
+				return position;
+			}
+			if (first < 0 || position < first) {
+				first = position;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * The task was appended to the list
+	 */
+	public void added(Task task) {
+		if (!built) {
+			return;
+		}
+		int position = tasks.size() - 1;
+		Entry entry = new Entry(position, new Key(task));
+		entries.put(task, entry);
+		put(entry.key, task);
+		if (valid == position) {
+			valid++;
+		}
+	}
+
+	/**
+	 * The text or priority of the task in the list has changed
+	 */
+	public void changed(Task task) {
+		if (!built) {
+			return;
+		}
+		Entry entry = entries.get(task);
+		remove(entry.key, task);
+		entry.key = new Key(task);
+		put(entry.key, task);
+	}
+
+	/**
+	 * The task was removed from the list at the given position
+	 */
+	public void removed(int position, Task task) {
+		if (!built) {
+			return;
+		}
+		Entry entry = entries.remove(task);
+		remove(entry.key, task);
+		valid = Math.min(valid, position);
+	}
+
+	private void build() {
+		if (built) {
+			return;
+		}
+		for (int i = 0; i < tasks.size(); i++) {
+			Task task = tasks.get(i);
+			Entry entry = new Entry(i, new Key(task));
+			entries.put(task, entry);
+			put(entry.key, task);
+		}
+		valid = tasks.size();
+		built = true;
+	}
+
+	private int position(Entry entry) {
+		if (entry.position >= valid) {
+			for (int i = valid; i < tasks.size(); i++) {
+				entries.get(tasks.get(i)).position = i;
+			}
+			valid = tasks.size();
+		}
+		return entry.position;
+	}
+
+	private void put(Key key, Task task) {
+		Object found = byKey.get(key);
+		if (found == null) {
+			byKey.put(key, task);
+		} else if (found instanceof Task) {
+			ArrayList<Task> duplicates = new ArrayList<Task>(2);
+			duplicates.add((Task) found);
+			duplicates.add(task);
+			byKey.put(key, duplicates);
+		} else {
+			asList(found).add(task);
+		}
+	}
+
+	private void remove(Key key, Task task) {
+		Object found = byKey.get(key);
+		if (found == task) {
+			byKey.remove(key);
+		} else if (found != null && !(found instanceof Task)) {
+			ArrayList<Task> duplicates = asList(found);
+			for (int i = 0; i < duplicates.size(); i++) {
+				if (duplicates.get(i) == task) {
+					duplicates.remove(i);
+					break;
+				}
+			}
+			if (duplicates.size() == 1) {
+				byKey.put(key, duplicates.get(0));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayList<Task> asList(Object duplicates) {
+		return (ArrayList<Task>) duplicates;
+	}
+
+	private static class Entry {
+		int position;
+		// what the task was indexed under, it may have changed since
+		Key key;
+
+		Entry(int position, Key key) {
+			this.position = position;
+			this.key = key;
+		}
+	}
+
+	private static class Key {
+		final String text;
+		final Priority priority;
+
+		Key(Task task) {
+			this(task.getText(), task.getPriority());
+		}
+
+		Key(String text, Priority priority) {
+			this.text = text;
+			this.priority = priority;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return priority == other.priority
+					&& (text == null ? other.text == null : text
+							.equals(other.text));
+		}
+
+		@Override
+		public int hashCode() {
+			return (text == null ? 0 : text.hashCode()) * 31
+					+ (priority == null ? 0 : priority.ordinal());
+		}
+	}
+}
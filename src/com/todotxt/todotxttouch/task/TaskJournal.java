@@ -0,0 +1,514 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.Log;
+
+import com.todotxt.todotxttouch.util.FileVersion;
+import com.todotxt.todotxttouch.util.TaskWriter;
+import com.todotxt.todotxttouch.util.Util;
+
+/**
+ * A write-ahead log of changes to the todo file, so a single change costs one
+ * append instead of rewriting the whole file. Every line is one record:
+ * 
+ * <pre>
+ * a &lt;line&gt;                 task added at the end
+ * r &lt;index&gt; &lt;old&gt;\t&lt;line&gt;  task at index replaced
+ * d &lt;index&gt; &lt;old&gt;         task at index removed
+ * f &lt;size&gt; &lt;checksum&gt;     records above folded into the todo file
+ * </pre>
+ * 
+ * The first line holds the size and checksum of the todo file the journal
+ * was started on. While the todo file still has them, the records are
+ * applied by index. The todo file is only replaced after a closing
+ * <code>f</code> record names its new contents, so a journal the app could
+ * not delete after folding it in is recognized and skipped. Otherwise
+ * another writer got there first, and the records are merged instead, see
+ * {@link #replay(List, FileVersion)}.
+ * 
+ * Between {@link #begin()} and {@link #flush()} records are only collected,
+ * and then written with a single append.
+ */
+class TaskJournal implements TaskWriter.Commit {
+	private static final String TAG = TaskJournal.class.getSimpleName();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String HEADER = "#todo.txt journal ";
+
+	private final File todoFile;
+	private final File journalFile;
+	private TaskWriter.Sync sync;
+	// the todo file the following records apply to, null to take it as is
+	private FileVersion base;
+	// records collected since begin(), and the header they belong to
+	private StringBuilder batch;
+	private String batchHeader;
+
+	TaskJournal(File todoFile, File journalFile, TaskWriter.Sync sync) {
+		this.todoFile = todoFile;
+		this.journalFile = journalFile;
+		this.sync = sync;
+	}
+
+	void setSync(TaskWriter.Sync sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * Sets the version of the todo file that the tasks being journaled were
+	 * loaded from or written to. Without one, the file is read when a journal
+	 * is started.
+	 */
+	void setBase(FileVersion base) {
+		this.base = base;
+	}
+
+	/**
+	 * Collects the following records until {@link #flush()}. They belong to
+	 * the todo file set by {@link #setBase(FileVersion)}, a batch flushed
+	 * after it has changed is merged on replay.
+	 */
+	public void begin() throws IOException {
+		if (batch == null) {
+			batchHeader = journalFile.exists() ? null : header();
+			batch = new StringBuilder();
+		}
+	}
+
+	/**
+	 * @return true if records are waiting for {@link #flush()}
+	 */
+	public boolean hasPending() {
+		return batch != null && batch.length() > 0;
+	}
+
+	/**
+	 * Writes the records collected since {@link #begin()}
+	 */
+	public void flush() throws IOException {
+		if (batch == null) {
+			return;
+		}
+		if (batch.length() > 0) {
+			write(batch.toString(), batchHeader);
+		}
+		batch = null;
+		batchHeader = null;
+	}
+
+	public void added(Task task) throws IOException {
+		append("a " + escape(task.inFileFormat()));
+	}
+
+	/**
+	 * @param line
+	 *            the line the task replaces
+	 */
+	public void updated(int index, String line, Task task) throws IOException {
+		append("r " + index + " " + escape(line) + "\t"
+				+ escape(task.inFileFormat()));
+	}
+
+	/**
+	 * @param line
+	 *            the line of the task removed
+	 */
+	public void deleted(int index, String line) throws IOException {
+		append("d " + index + " " + escape(line));
+	}
+
+	/**
+	 * Marks the records so far as folded into the todo file about to be
+	 * written with the given contents. Does nothing without a journal.
+	 */
+	@Override
+	public void committing(long length, long checksum) throws IOException {
+		if (journalFile.exists()) {
+			write(folded(length, checksum) + "\n", null);
+		}
+	}
+
+	public boolean exists() {
+		return journalFile.exists();
+	}
+
+	/**
+	 * @return the size of the journal in bytes
+	 */
+	public long length() {
+		return journalFile.length();
+	}
+
+	/**
+	 * Deletes the journal and drops any records not yet flushed
+	 */
+	public void delete() {
+		batch = null;
+		batchHeader = null;
+		journalFile.delete();
+	}
+
+	/**
+	 * Applies the journal to the tasks loaded from the todo file, which is
+	 * read to take its version
+	 */
+	public boolean replay(List<Task> tasks) throws IOException {
+		return replay(tasks, FileVersion.of(todoFile));
+	}
+
+	/**
+	 * Applies the journal to the tasks loaded from the todo file. A journal
+	 * already folded into the file changes nothing. If the file is no longer
+	 * the one the journal was started on, the records are merged: a task is
+	 * replaced or removed where its old line still is, allowing for lines
+	 * inserted or removed above it, and added tasks are appended even if the
+	 * same line is there already. A replaced task whose old line is gone was
+	 * changed by both sides, and both versions are kept.
+	 * 
+	 * The journal is kept either way, it is up to the caller to write the
+	 * tasks out before deleting it.
+	 * 
+	 * @param current
+	 *            the version of the todo file the tasks were loaded from
+	 * @return false if the records were merged
+	 */
+	public boolean replay(final List<Task> tasks, FileVersion current)
+			throws IOException {
+		ArrayList<String> records = read();
+		if (records == null || isFolded(records, current)) {
+			return true;
+		}
+		if (matches(records, current)) {
+			apply(records, new Target() {
+				@Override
+				public void add(String line) {
+					tasks.add(new Task(tasks.size(), line));
+				}
+
+				@Override
+				public void replace(int index, String old, String line) {
+					tasks.set(index, new Task(tasks.get(index).getId(), line));
+				}
+
+				@Override
+				public void remove(int index, String old) {
+					tasks.remove(index);
+				}
+			});
+			return true;
+		}
+		Log.w(TAG, todoFile + " has changed since " + journalFile
+				+ " was started, merging it");
+		apply(records, new Merge(tasks));
+		return false;
+	}
+
+	/**
+	 * Applies the journal to the target by index, if it still belongs to the
+	 * todo file and has not been folded into it yet
+	 * 
+	 * @return false if the todo file has changed, nothing is applied then
+	 */
+	public boolean replay(Target target, FileVersion current)
+			throws IOException {
+		ArrayList<String> records = read();
+		if (records == null || isFolded(records, current)) {
+			return true;
+		}
+		if (!matches(records, current)) {
+			return false;
+		}
+		apply(records, target);
+		return true;
+	}
+
+	/**
+	 * @return the complete lines of the journal, header first, or null if
+	 *         there is none
+	 */
+	private ArrayList<String> read() throws IOException {
+		if (!journalFile.exists()) {
+			return null;
+		}
+		byte[] bytes = readFully(journalFile);
+		ArrayList<String> records = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				records.add(new String(bytes, start, i - start, "UTF-8"));
+				start = i + 1;
+			}
+		}
+		// anything after the last line break is a torn write
+		return records;
+	}
+
+	private static boolean matches(ArrayList<String> records,
+			FileVersion current) {
+		return !records.isEmpty() && current != null
+				&& records.get(0).equals(header(current));
+	}
+
+	// only a closing record counts, one followed by more records is stale
+	private static boolean isFolded(ArrayList<String> records,
+			FileVersion current) {
+		return records.size() > 1
+				&& current != null
+				&& records.get(records.size() - 1).equals(
+						folded(current.length(), current.checksum()));
+	}
+
+	private static String folded(long length, long checksum) {
+		return "f " + length + " " + Long.toHexString(checksum);
+	}
+
+	private static void apply(ArrayList<String> records, Target target) {
+		if (records == null) {
+			return;
+		}
+		for (int i = 1; i < records.size(); i++) {
+			if (!apply(records.get(i), target)) {
+				Log.w(TAG, "Stopping at unreadable journal record "
+						+ records.get(i));
+				break;
+			}
+		}
+	}
+
+	private static boolean apply(String record, Target target) {
+		try {
+			char type = record.charAt(0);
+			if (type == 'a') {
+				target.add(unescape(record.substring(2)));
+				return true;
+			} else if (type == 'f') {
+				// the todo file was not replaced after all
+				return true;
+			}
+			int space = record.indexOf(' ', 2);
+			int index = Integer.parseInt(record.substring(2, space));
+			String rest = record.substring(space + 1);
+			if (type == 'r') {
+				int tab = rest.indexOf('\t');
+				target.replace(index, unescape(rest.substring(0, tab)),
+						unescape(rest.substring(tab + 1)));
+				return true;
+			} else if (type == 'd') {
+				target.remove(index, unescape(rest));
+				return true;
+			}
+		} catch (RuntimeException e) {
+			// malformed record or index out of range
+		}
+		return false;
+	}
+
+	private void append(String record) throws IOException {
+		if (batch != null) {
+			batch.append(record).append('\n');
+		} else {
+			write(record + "\n", null);
+		}
+	}
+
+	/**
+	 * @param header
+	 *            to start a new journal with, null to take the todo file as
+	 *            it is now
+	 */
+	private void write(String records, String header) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		boolean start = !journalFile.exists();
+		if (start) {
+			Util.createParentDirectory(journalFile);
+			if (header == null) {
+				header = header();
+			}
+			bytes.write((header + "\n").getBytes(UTF_8));
+		}
+		bytes.write(records.getBytes(UTF_8));
+		FileOutputStream out = new FileOutputStream(journalFile, !start);
+		try {
+			bytes.writeTo(out);
+			if (sync != TaskWriter.Sync.NONE) {
+				out.getFD().sync();
+			}
+		} finally {
+			Util.closeStream(out);
+		}
+	}
+
+	private String header() throws IOException {
+		return header(base != null ? base : FileVersion.of(todoFile));
+	}
+
+	private static String header(FileVersion version) {
+		return version == null ? HEADER : HEADER + version.length() + " "
+				+ Long.toHexString(version.checksum());
+	}
+
+	private static byte[] readFully(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+					(int) file.length());
+			byte[] buffer = new byte[8 * 1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			Util.closeStream(in);
+		}
+	}
+
+	// task lines never contain line breaks when read from a file, but text
+	// typed into the app might; tabs separate the old and new line
+	static String escape(String line) {
+		if (line.indexOf('\\') < 0 && line.indexOf('\n') < 0
+				&& line.indexOf('\r') < 0 && line.indexOf('\t') < 0) {
+			return line;
+		}
+		StringBuilder sb = new StringBuilder(line.length() + 8);
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\') {
+				sb.append("\\\\");
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c == '\r') {
+				sb.append("\\r");
+			} else if (c == '\t') {
+				sb.append("\\t");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	static String unescape(String line) {
+		if (line.indexOf('\\') < 0) {
+			return line;
+		}
+		StringBuilder sb = new StringBuilder(line.length());
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()) {
+				char next = line.charAt(++i);
+				sb.append(next == 'n' ? '\n' : next == 'r' ? '\r'
+						: next == 't' ? '\t' : next);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Receives the records of a journal being replayed. Indexes out of range
+	 * must throw an {@link IndexOutOfBoundsException}.
+	 */
+	interface Target {
+		void add(String line);
+
+		void replace(int index, String old, String line);
+
+		void remove(int index, String old);
+	}
+
+	/**
+	 * Applies records to tasks whose indexes may have moved. A record's old
+	 * line is looked for at its index shifted by as much as the one before,
+	 * then ever further away from there.
+	 */
+	private static class Merge implements Target {
+		private final List<Task> tasks;
+		private final ArrayList<String> lines;
+		// how far lines have moved since the journal saw them
+		private int shift;
+
+		Merge(List<Task> tasks) {
+			this.tasks = tasks;
+			lines = new ArrayList<String>(tasks.size());
+			for (Task task : tasks) {
+				lines.add(task.inFileFormat());
+			}
+		}
+
+		@Override
+		public void add(String line) {
+			tasks.add(new Task(tasks.size(), line));
+			lines.add(line);
+		}
+
+		@Override
+		public void replace(int index, String old, String line) {
+			int found = find(index, old);
+			if (found >= 0) {
+				tasks.set(found, new Task(tasks.get(found).getId(), line));
+				lines.set(found, line);
+			} else {
+				Log.w(TAG, "Keeping both versions of changed task " + line);
+				add(line);
+			}
+		}
+
+		@Override
+		public void remove(int index, String old) {
+			int found = find(index, old);
+			if (found >= 0) {
+				tasks.remove(found);
+				lines.remove(found);
+			}
+		}
+
+		private int find(int index, String line) {
+			int size = lines.size();
+			int expected = Math.max(0, Math.min(index + shift, size));
+			for (int after = expected, before = expected; before >= 0
+					|| after < size; after++, before--) {
+				if (after >= 0 && after < size && lines.get(after).equals(line)) {
+					shift = after - index;
+					return after;
+				}
+				if (before != after && before >= 0 && before < size
+						&& lines.get(before).equals(line)) {
+					shift = before - index;
+					return before;
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,545 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.todotxt.todotxttouch.TodoException;
+
+/**
+ * Single pass scanner for a todo.txt line. Produces the same results as
+ * running {@link TextSplitter}, {@link ContextParser}, {@link ProjectParser},
+ * {@link MailAddressParser} and {@link LinkParser} one after another, but
+ * reads the line only once and reports everything as offsets into the
+ * original string instead of copying substrings.
+ */
+class TaskLineScanner {
+	private static final int MAX_MAIL_LOCAL_PART = 256;
+	private static final int MAX_MAIL_DOMAIN_LABEL = 65;
+	private static final int MAX_MAIL_SUBDOMAIN_LABEL = 26;
+	private static final int DATE_LENGTH = 10;
+	private static final int DATE_CACHE_SIZE = 64;
+	// unsynchronized on purpose, Strings are immutable and a lost store only
+	// costs another substring
+	private static final String[] DATE_CACHE = new String[DATE_CACHE_SIZE];
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private static final TaskLineScanner INSTANCE = new TaskLineScanner();
+
+	private TaskLineScanner() {
+	}
+
+	public static TaskLineScanner getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * A list of [start, end) offsets into the scanned line
+	 */
+	static class Spans {
+		private int[] offsets;
+		private int count;
+
+		void add(int start, int end) {
+			if (offsets == null) {
+				offsets = new int[4];
+			} else if (offsets.length == count * 2) {
+				int[] grown = new int[offsets.length * 2];
+				System.arraycopy(offsets, 0, grown, 0, offsets.length);
+				offsets = grown;
+			}
+			offsets[count * 2] = start;
+			offsets[count * 2 + 1] = end;
+			count++;
+		}
+
+		public int size() {
+			return count;
+		}
+
+		public int start(int i) {
+			return offsets[i * 2];
+		}
+
+		public int end(int i) {
+			return offsets[i * 2 + 1];
+		}
+
+		public List<String> toList(String line) {
+			if (count == 0) {
+				return Collections.emptyList();
+			}
+			if (count == 1) {
+				return Collections.singletonList(line.substring(start(0),
+						end(0)));
+			}
+			List<String> result = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				result.add(line.substring(start(i), end(i)));
+			}
+			return result;
+		}
+
+		public int[] toTagIds(String line, TagDictionary dictionary) {
+			if (count == 0) {
+				return TagDictionary.NO_TAGS;
+			}
+			if (count == 1) {
+				return dictionary.internSingleton(line, start(0), end(0));
+			}
+			int[] ids = new int[count];
+			for (int i = 0; i < count; i++) {
+				ids[i] = dictionary.intern(line, start(i), end(i));
+			}
+			return ids;
+		}
+	}
+
+	static class ScanResult {
+		public final String line;
+		public boolean completed;
+		public Priority priority = Priority.NONE;
+		public int completionDateStart = -1;
+		public int prependedDateStart = -1;
+		public int textStart;
+		public int textEnd;
+		public final Spans contexts = new Spans();
+		public final Spans projects = new Spans();
+		public final Spans mailAddresses = new Spans();
+		public final Spans links = new Spans();
+
+		private ScanResult(String line) {
+			this.line = line;
+		}
+
+		public String getText() {
+			return line.substring(textStart, textEnd);
+		}
+
+		public String getCompletionDate() {
+			return date(completionDateStart);
+		}
+
+		public String getPrependedDate() {
+			return date(prependedDateStart);
+		}
+
+		public List<String> getContexts() {
+			return contexts.toList(line);
+		}
+
+		public List<String> getProjects() {
+			return projects.toList(line);
+		}
+
+		public int[] getContextIds() {
+			return contexts.toTagIds(line, TagDictionary.getInstance());
+		}
+
+		public int[] getProjectIds() {
+			return projects.toTagIds(line, TagDictionary.getInstance());
+		}
+
+		public List<String> getMailAddresses() {
+			return mailAddresses.toList(line);
+		}
+
+		public List<URL> getLinks() {
+			if (links.size() == 0) {
+				return Collections.emptyList();
+			}
+			List<URL> result = new ArrayList<URL>(links.size());
+			for (int i = 0; i < links.size(); i++) {
+				try {
+					result.add(new URL(line.substring(links.start(i),
+							links.end(i))));
+				} catch (MalformedURLException e) {
+					throw new TodoException("Malformed URL matched the scanner",
+							e);
+				}
+			}
+			return result;
+		}
+
+		private String date(int start) {
+			if (start < 0) {
+				return "";
+			}
+			// tasks in a file share few distinct dates, reuse their strings
+			int hash = 0;
+			for (int i = start; i < start + DATE_LENGTH; i++) {
+				hash = 31 * hash + line.charAt(i);
+			}
+			int slot = (hash ^ (hash >>> 7)) & (DATE_CACHE_SIZE - 1);
+			String cached = DATE_CACHE[slot];
+			if (cached != null
+					&& cached.regionMatches(0, line, start, DATE_LENGTH)) {
+				return cached;
+			}
+			String date = line.substring(start, start + DATE_LENGTH);
+			DATE_CACHE[slot] = date;
+			return date;
+		}
+	}
+
+	public ScanResult scan(String line) {
+		if (line == null) {
+			line = "";
+		}
+		ScanResult result = new ScanResult(line);
+		scanHeader(line, result);
+		scanBody(line, result);
+		return result;
+	}
+
+	/**
+	 * Scans text that has already been split from its completion mark,
+	 * priority and dates, e.g. {@link Task#getText()}
+	 */
+	public ScanResult scanText(String text) {
+		if (text == null) {
+			text = "";
+		}
+		ScanResult result = new ScanResult(text);
+		result.textEnd = text.length();
+		scanBody(text, result);
+		return result;
+	}
+
+	/**
+	 * Completion mark, priority and dates. Mirrors the anchored patterns in
+	 * TextSplitter and PriorityTextSplitter: once any of them matched, the
+	 * remaining text ends at the first line terminator, as "(.*)" does.
+	 */
+	private void scanHeader(String line, ScanResult result) {
+		int length = line.length();
+		int lineEnd = lineTerminator(line);
+		int pos = 0;
+		boolean matched = false;
+
+		if (length >= 2 && isCompletionMark(line.charAt(0))
+				&& line.charAt(1) == ' ') {
+			result.completed = true;
+			pos = 2;
+			matched = true;
+		}
+
+		if (result.completed) {
+			if (isDateFollowedBySpace(line, pos, lineEnd)
+					&& isDateFollowedBySpace(line, pos + DATE_LENGTH + 1,
+							lineEnd)) {
+				result.completionDateStart = pos;
+				result.prependedDateStart = pos + DATE_LENGTH + 1;
+				pos += 2 * (DATE_LENGTH + 1);
+			} else if (isDateFollowedBySpace(line, pos, lineEnd)) {
+				result.completionDateStart = pos;
+				pos += DATE_LENGTH + 1;
+			}
+		} else {
+			int end = matched ? lineEnd : length;
+			if (pos + 4 <= end && line.charAt(pos) == '('
+					&& isUpperCaseLetter(line.charAt(pos + 1))
+					&& line.charAt(pos + 2) == ')'
+					&& line.charAt(pos + 3) == ' ') {
+				result.priority = PRIORITIES[line.charAt(pos + 1) - 'A' + 1];
+				pos += 4;
+				matched = true;
+			}
+			end = matched ? lineEnd : length;
+			if (isDateFollowedBySpace(line, pos, end)) {
+				result.prependedDateStart = pos;
+				pos += DATE_LENGTH + 1;
+				matched = true;
+			}
+		}
+
+		result.textStart = pos;
+		result.textEnd = matched ? lineEnd : length;
+	}
+
+	/**
+	 * Walks the text once, feeding every character to the context, project,
+	 * mail address and link matchers. Each matcher keeps its own resume
+	 * position so tokens nested in one another (a mail address inside a
+	 * link, say) are found exactly as the separate regex passes found them.
+	 */
+	private void scanBody(String line, ScanResult result) {
+		int start = result.textStart;
+		int end = result.textEnd;
+		int mailResume = start;
+		int linkResume = start;
+		int localPartStart = start;
+
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+
+			if ((c == '@' || c == '+')
+					&& (i == start || isWhitespace(line.charAt(i - 1)))) {
+				int tokenEnd = tagEnd(line, i + 1, end);
+				if (tokenEnd > 0) {
+					if (c == '@') {
+						result.contexts.add(i + 1, tokenEnd);
+					} else {
+						result.projects.add(trimStart(line, i + 1), tokenEnd);
+					}
+				}
+			}
+
+			if (c == '@' && i >= mailResume) {
+				int localStart = Math.max(
+						Math.max(localPartStart, i - MAX_MAIL_LOCAL_PART),
+						mailResume);
+				if (localStart < i) {
+					int mailEnd = mailDomainEnd(line, i + 1, end);
+					if (mailEnd > 0) {
+						result.mailAddresses.add(localStart, mailEnd);
+						mailResume = mailEnd;
+					}
+				}
+			}
+			if (!isMailLocalChar(c)) {
+				localPartStart = i + 1;
+			}
+
+			if (c == 'h' && i >= linkResume) {
+				int linkEnd = linkEnd(line, i, end);
+				if (linkEnd > 0) {
+					result.links.add(i, linkEnd);
+					linkResume = linkEnd;
+				}
+			}
+		}
+	}
+
+	/**
+	 * End of "\S*\w" starting at from, or -1 if the run has no word character
+	 */
+	private static int tagEnd(String line, int from, int end) {
+		int lastWord = -1;
+		for (int i = from; i < end; i++) {
+			char c = line.charAt(i);
+			if (isWhitespace(c)) {
+				break;
+			}
+			if (isWordChar(c)) {
+				lastWord = i;
+			}
+		}
+		return lastWord < 0 ? -1 : lastWord + 1;
+	}
+
+	private static int trimStart(String line, int from) {
+		while (line.charAt(from) <= ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * End of the domain part of a mail address starting at from, or -1
+	 */
+	private static int mailDomainEnd(String line, int from, int end) {
+		int pos = labelEnd(line, from, end, MAX_MAIL_DOMAIN_LABEL);
+		if (pos < 0 || pos == end || isMailLabelChar(line.charAt(pos))) {
+			return -1;
+		}
+		int matchEnd = -1;
+		while (pos < end && line.charAt(pos) == '.') {
+			int next = labelEnd(line, pos + 1, end, MAX_MAIL_SUBDOMAIN_LABEL);
+			if (next < 0) {
+				break;
+			}
+			matchEnd = next;
+			pos = next;
+		}
+		return matchEnd;
+	}
+
+	/**
+	 * End of "[a-zA-Z0-9][a-zA-Z0-9\-]{0,max-1}" starting at from, or -1
+	 */
+	private static int labelEnd(String line, int from, int end, int max) {
+		if (from >= end || !isAsciiLetterOrDigit(line.charAt(from))) {
+			return -1;
+		}
+		int limit = Math.min(end, from + max);
+		int pos = from + 1;
+		while (pos < limit && isMailLabelChar(line.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * End of a link starting at from, or -1 if there is none
+	 */
+	private static int linkEnd(String line, int from, int end) {
+		int pos;
+		if (line.startsWith("http://", from)) {
+			pos = from + 7;
+		} else if (line.startsWith("https://", from)) {
+			pos = from + 8;
+		} else {
+			return -1;
+		}
+		if (pos > end) {
+			return -1;
+		}
+
+		pos = hostLabelEnd(line, pos, end);
+		if (pos < 0) {
+			return -1;
+		}
+		int hostEnd = -1;
+		while (pos < end && line.charAt(pos) == '.') {
+			int next = hostLabelEnd(line, pos + 1, end);
+			if (next < 0) {
+				break;
+			}
+			hostEnd = next;
+			pos = next;
+		}
+		if (hostEnd < 0) {
+			return -1;
+		}
+
+		int linkEnd = hostEnd;
+		for (int i = hostEnd; i < end; i++) {
+			char c = line.charAt(i);
+			if (!isLinkChar(c)) {
+				break;
+			}
+			if (isLinkEndChar(c)) {
+				linkEnd = i + 1;
+			}
+		}
+		return linkEnd;
+	}
+
+	private static int hostLabelEnd(String line, int from, int end) {
+		int pos = from;
+		while (pos < end && isHostChar(line.charAt(pos))) {
+			pos++;
+		}
+		return pos == from ? -1 : pos;
+	}
+
+	private static boolean isDateFollowedBySpace(String line, int from,
+			int end) {
+		if (from + DATE_LENGTH + 1 > end) {
+			return false;
+		}
+		for (int i = 0; i < DATE_LENGTH; i++) {
+			char c = line.charAt(from + i);
+			if (i == 4 || i == 7) {
+				if (c != '-') {
+					return false;
+				}
+			} else if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return line.charAt(from + DATE_LENGTH) == ' ';
+	}
+
+	/**
+	 * Index of the first character "." does not match, as
+	 * {@link java.util.regex.Pattern} defines it
+	 */
+	private static int lineTerminator(String line) {
+		int length = line.length();
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+					|| c == '\u2029') {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private static boolean isCompletionMark(char c) {
+		return c == 'x' || c == 'X' || c == ',';
+	}
+
+	private static boolean isUpperCaseLetter(char c) {
+		return c >= 'A' && c <= 'Z';
+	}
+
+	private static boolean isAsciiLetterOrDigit(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9');
+	}
+
+	/* \s */
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+				|| c == '\f' || c == '\r';
+	}
+
+	/* \w */
+	static boolean isWordChar(char c) {
+		return isAsciiLetterOrDigit(c) || c == '_';
+	}
+
+	private static boolean isMailLocalChar(char c) {
+		return isAsciiLetterOrDigit(c) || c == '+' || c == '.' || c == '_'
+				|| c == '%' || c == '-';
+	}
+
+	private static boolean isMailLabelChar(char c) {
+		return isAsciiLetterOrDigit(c) || c == '-';
+	}
+
+	private static boolean isHostChar(char c) {
+		return isWordChar(c) || c == '-';
+	}
+
+	private static boolean isLinkEndChar(char c) {
+		switch (c) {
+		case '-':
+		case '@':
+		case '?':
+		case '^':
+		case '=':
+		case '%':
+		case '&':
+		case ';':
+		case '/':
+		case '~':
+		case '+':
+		case '#':
+			return true;
+		default:
+			return isWordChar(c);
+		}
+	}
+
+	private static boolean isLinkChar(char c) {
+		return c == '.' || c == ',' || c == ':' || isLinkEndChar(c);
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the tasks as a list of Task objects, with a {@link TaskIndex} to find
+ * them and {@link TaskPostings} to filter them.
+ */
+class TaskListStore implements TaskStore {
+	private ArrayList<Task> tasks = new ArrayList<Task>();
+	private final TaskIndex taskIndex = new TaskIndex();
+	private final TaskPostings taskPostings = new TaskPostings();
+	// changes with every change to the list, see SearchSession
+	private int version;
+
+	@Override
+	public void reset(ArrayList<Task> tasks) {
+		this.tasks = tasks == null ? new ArrayList<Task>() : tasks;
+		taskIndex.reset(this.tasks);
+		taskPostings.reset(this.tasks);
+		version++;
+	}
+
+	@Override
+	public int size() {
+		return tasks.size();
+	}
+
+	@Override
+	public ArrayList<Task> getAll() {
+		return tasks;
+	}
+
+	@Override
+	public Task get(int position) {
+		return tasks.get(position);
+	}
+
+	@Override
+	public int find(Task task) {
+		return taskIndex.find(task);
+	}
+
+	@Override
+	public void add(Task task) {
+		tasks.add(task);
+		taskIndex.added(task);
+		taskPostings.added(task);
+		version++;
+	}
+
+	@Override
+	public Task set(int position, Task task) {
+		Task found = tasks.get(position);
+		// the postings hold the task as it was stored, which a change made
+		// to it in place has overwritten already
+		Task indexed = found.isDirty() ? new Task(0, found.getStoredLine())
+				: found;
+		int[] contextIds = indexed.getContextIds();
+		int[] projectIds = indexed.getProjectIds();
+		Priority priority = indexed.getPriority();
+		task.copyInto(found);
+		taskIndex.changed(found);
+		taskPostings.changed(position, contextIds, projectIds, priority,
+				found);
+		version++;
+		return found;
+	}
+
+	@Override
+	public void remove(int position) {
+		taskIndex.removed(position, tasks.remove(position));
+		taskPostings.removed(position);
+		version++;
+	}
+
+	@Override
+	public List<Task> getTasks(Filter<Task> filter, Comparator<Task> comparator) {
+		ArrayList<Task> localTasks = new ArrayList<Task>();
+		int[] selected = filter instanceof PostingFilter ? taskPostings
+				.select((PostingFilter) filter) : null;
+		if (selected != null) {
+			localTasks.ensureCapacity(selected.length);
+			for (int position : selected) {
+				localTasks.add(tasks.get(position));
+			}
+		} else if (filter != null) {
+			for (Task t : tasks) {
+				if (filter.apply(t)) {
+					localTasks.add(t);
+				}
+			}
+		} else {
+			localTasks.addAll(tasks);
+		}
+		return sort(localTasks, comparator);
+	}
+
+	@Override
+	public List<Task> search(SearchSession session,
+			Comparator<Task> comparator) {
+		int[] selected = session.select(taskPostings, version);
+		ArrayList<Task> localTasks = new ArrayList<Task>(selected.length);
+		for (int position : selected) {
+			localTasks.add(tasks.get(position));
+		}
+		return sort(localTasks, comparator);
+	}
+
+	private static List<Task> sort(ArrayList<Task> localTasks,
+			Comparator<Task> comparator) {
+		if (comparator == null) {
+			comparator = Sort.PRIORITY_DESC.getComparator();
+		}
+
+		Collections.sort(localTasks, comparator);
+
+		return localTasks;
+	}
+
+	@Override
+	public List<Priority> getPriorities() {
+		return taskPostings.getPriorities();
+	}
+
+	@Override
+	public List<String> getContexts() {
+		return taskPostings.getContexts();
+	}
+
+	@Override
+	public List<String> getProjects() {
+		return taskPostings.getProjects();
+	}
+
+	@Override
+	public int[] countProjects(List<String> projects) {
+		int[] counts = new int[projects.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = taskPostings.countProject(projects.get(i));
+		}
+		return counts;
+	}
+
+	@Override
+	public int[] countContexts(List<String> contexts) {
+		int[] counts = new int[contexts.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = taskPostings.countContext(contexts.get(i));
+		}
+		return counts;
+	}
+
+	@Override
+	public int[] countPriorities(List<Priority> priorities) {
+		int[] counts = new int[priorities.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = taskPostings.countPriority(priorities.get(i));
+		}
+		return counts;
+	}
+}
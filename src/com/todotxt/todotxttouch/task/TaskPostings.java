@@ -0,0 +1,463 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Posting lists from each context, project and priority to the positions of
+ * the tasks in a bag's list that have it, so filtering by them only touches
+ * the tasks that match. Their sizes are the task counts shown in the filter
+ * lists, and the sorted tag names in use are kept alongside. Text search
+ * goes through a {@link TrigramIndex} of the upper case texts. Both are built
+ * on the first query after a reload that needs them, and kept up to date as
+ * the bag changes its list.
+ * 
+ * Removing a task shifts the ones after it, so removed positions are only
+ * collected, and the lists are renumbered on their next use: a run of
+ * deletes costs one pass over them, not one per delete.
+ */
+class TaskPostings {
+	private List<Task> tasks;
+	private boolean built;
+	// by TagDictionary id
+	private PostingList[] contexts = new PostingList[0];
+	private PostingList[] projects = new PostingList[0];
+	private final PostingList[] priorities = new PostingList[Priority
+			.values().length];
+	private final PostingList noContext = new PostingList();
+	private final PostingList noProject = new PostingList();
+	// taken out since the lists were last renumbered
+	private final RemovedPositions removed = new RemovedPositions();
+	// sorted names of the tags in use, null until asked for
+	private ArrayList<String> contextNames;
+	private ArrayList<String> projectNames;
+	private final TrigramIndex trigrams = new TrigramIndex();
+	private boolean trigramsBuilt;
+
+	/**
+	 * Starts over with the given list, which the bag then changes through
+	 * {@link #added(Task)}, {@link #changed(int, int[], int[], Priority, Task)}
+	 * and {@link #removed(int)} only.
+	 */
+	public void reset(List<Task> tasks) {
+		this.tasks = tasks;
+		built = false;
+		contexts = new PostingList[0];
+		projects = new PostingList[0];
+		for (int i = 0; i < priorities.length; i++) {
+			priorities[i] = null;
+		}
+		noContext.clear();
+		noProject.clear();
+		removed.clear();
+		contextNames = null;
+		projectNames = null;
+		trigrams.clear();
+		trigramsBuilt = false;
+	}
+
+	/**
+	 * @return the matching positions in ascending order, or null if the
+	 *         filter has to be applied to every task
+	 */
+	public int[] select(PostingFilter filter) {
+		return build() ? filter.select(this) : null;
+	}
+
+	public int size() {
+		return tasks == null ? 0 : tasks.size();
+	}
+
+	public Task get(int position) {
+		return tasks.get(position);
+	}
+
+	/**
+	 * @return the positions of the tasks with any of the contexts, or no
+	 *         context at all if none is set
+	 */
+	public int[] withContexts(int[] ids, boolean none) {
+		return union(contexts, ids, none ? noContext : null);
+	}
+
+	/**
+	 * @return the positions of the tasks with any of the projects, or no
+	 *         project at all if none is set
+	 */
+	public int[] withProjects(int[] ids, boolean none) {
+		return union(projects, ids, none ? noProject : null);
+	}
+
+	public int[] withPriorities(List<Priority> wanted) {
+		PostingList[] lists = new PostingList[wanted.size()];
+		for (int i = 0; i < lists.length; i++) {
+			lists[i] = priorities[wanted.get(i).ordinal()];
+		}
+		return union(lists);
+	}
+
+	/**
+	 * @return the positions of the tasks whose upper case text may contain
+	 *         all of the upper case terms, or null if the terms are too short
+	 *         to tell
+	 */
+	public int[] withText(String[] terms) {
+		if (tasks == null) {
+			return null;
+		}
+		if (!trigramsBuilt) {
+			for (Task task : tasks) {
+				trigrams.added(task.getUpperText());
+			}
+			trigramsBuilt = true;
+		}
+		return trigrams.candidates(terms);
+	}
+
+	public List<String> getContexts() {
+		if (build() && contextNames == null) {
+			contextNames = names(contexts);
+		}
+		return contextNames;
+	}
+
+	public List<String> getProjects() {
+		if (build() && projectNames == null) {
+			projectNames = names(projects);
+		}
+		return projectNames;
+	}
+
+	public List<Priority> getPriorities() {
+		ArrayList<Priority> ret = new ArrayList<Priority>();
+		if (build()) {
+			for (Priority priority : Priority.values()) {
+				if (count(priorities, priority.ordinal()) > 0) {
+					ret.add(priority);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the number of tasks with the context, or without any for "-"
+	 */
+	public int countContext(String name) {
+		return countTag(contexts, noContext, name);
+	}
+
+	/**
+	 * @return the number of tasks with the project, or without any for "-"
+	 */
+	public int countProject(String name) {
+		return countTag(projects, noProject, name);
+	}
+
+	public int countPriority(Priority priority) {
+		return build() ? count(priorities, priority.ordinal()) : 0;
+	}
+
+	/**
+	 * The task was appended to the list
+	 */
+	public void added(Task task) {
+		if (built) {
+			renumber();
+			index(tasks.size() - 1, task);
+		}
+		if (trigramsBuilt) {
+			trigrams.added(task.getUpperText());
+		}
+	}
+
+	/**
+	 * The task at the position was changed or replaced
+	 * 
+	 * @param contextIds
+	 *            the contexts the task had before
+	 * @param projectIds
+	 *            the projects the task had before
+	 * @param priority
+	 *            the priority the task had before
+	 */
+	public void changed(int position, int[] contextIds, int[] projectIds,
+			Priority priority, Task task) {
+		if (built) {
+			renumber();
+			unindex(position, contextIds, projectIds, priority);
+			index(position, task);
+		}
+		if (trigramsBuilt) {
+			trigrams.changed(position, task.getUpperText());
+		}
+	}
+
+	/**
+	 * The task at the position was removed from the list
+	 */
+	public void removed(int position) {
+		if (built) {
+			removed.add(position);
+		}
+		if (trigramsBuilt) {
+			trigrams.removed(position);
+		}
+	}
+
+	/**
+	 * @return false if there is no list yet
+	 */
+	private boolean build() {
+		if (tasks == null) {
+			return false;
+		}
+		if (!built) {
+			for (int i = 0; i < tasks.size(); i++) {
+				index(i, tasks.get(i));
+			}
+			built = true;
+		}
+		renumber();
+		return true;
+	}
+
+	private void index(int position, Task task) {
+		int[] contextIds = task.getContextIds();
+		if (contextIds.length == 0) {
+			noContext.add(position);
+		}
+		for (int id : contextIds) {
+			contexts = grow(contexts, id);
+			if (postings(contexts, id).add(position)) {
+				insertName(contextNames, id);
+			}
+		}
+		int[] projectIds = task.getProjectIds();
+		if (projectIds.length == 0) {
+			noProject.add(position);
+		}
+		for (int id : projectIds) {
+			projects = grow(projects, id);
+			if (postings(projects, id).add(position)) {
+				insertName(projectNames, id);
+			}
+		}
+		postings(priorities, task.getPriority().ordinal()).add(position);
+	}
+
+	/**
+	 * Takes the position out of the lists of the task as it was indexed
+	 */
+	private void unindex(int position, int[] contextIds, int[] projectIds,
+			Priority priority) {
+		if (contextIds.length == 0) {
+			noContext.remove(position);
+		}
+		for (int id : contextIds) {
+			unindex(contexts, contextNames, id, position);
+		}
+		if (projectIds.length == 0) {
+			noProject.remove(position);
+		}
+		for (int id : projectIds) {
+			unindex(projects, projectNames, id, position);
+		}
+		unindex(priorities, null, priority.ordinal(), position);
+	}
+
+	private static void unindex(PostingList[] lists, ArrayList<String> names,
+			int id, int position) {
+		PostingList postings = id < lists.length ? lists[id] : null;
+		if (postings != null && postings.remove(position)) {
+			removeName(names, id);
+		}
+	}
+
+	/**
+	 * Takes the removed positions out of all lists, and brings the others
+	 * in line with the list of tasks again
+	 */
+	private void renumber() {
+		if (removed.size() == 0) {
+			return;
+		}
+		PostingList gone = removed.sorted(tasks.size());
+		renumber(contexts, contextNames, gone);
+		renumber(projects, projectNames, gone);
+		renumber(priorities, null, gone);
+		noContext.removeAll(gone);
+		noProject.removeAll(gone);
+		removed.clear();
+	}
+
+	private static void renumber(PostingList[] lists,
+			ArrayList<String> names, PostingList gone) {
+		for (int id = 0; id < lists.length; id++) {
+			PostingList postings = lists[id];
+			if (postings != null && postings.removeAll(gone)) {
+				removeName(names, id);
+			}
+		}
+	}
+
+	private int countTag(PostingList[] lists, PostingList none, String name) {
+		if (!build()) {
+			return 0;
+		}
+		if ("-".equals(name)) {
+			return none.size;
+		}
+		int id = TagDictionary.getInstance().lookup(name);
+		return id < 0 ? 0 : count(lists, id);
+	}
+
+	private static int count(PostingList[] lists, int id) {
+		return id < lists.length && lists[id] != null ? lists[id].size : 0;
+	}
+
+	private static ArrayList<String> names(PostingList[] lists) {
+		TagDictionary dictionary = TagDictionary.getInstance();
+		ArrayList<String> names = new ArrayList<String>();
+		for (int id = 0; id < lists.length; id++) {
+			if (count(lists, id) > 0) {
+				names.add(dictionary.get(id));
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	private static void insertName(ArrayList<String> names, int id) {
+		if (names != null) {
+			String name = TagDictionary.getInstance().get(id);
+			int at = Collections.binarySearch(names, name);
+			if (at < 0) {
+				names.add(-at - 1, name);
+			}
+		}
+	}
+
+	private static void removeName(ArrayList<String> names, int id) {
+		if (names != null) {
+			int at = Collections.binarySearch(names, TagDictionary
+					.getInstance().get(id));
+			if (at >= 0) {
+				names.remove(at);
+			}
+		}
+	}
+
+	private static PostingList[] grow(PostingList[] lists, int id) {
+		if (id < lists.length) {
+			return lists;
+		}
+		PostingList[] grown = new PostingList[Math.max(id + 1,
+				lists.length * 2)];
+		System.arraycopy(lists, 0, grown, 0, lists.length);
+		return grown;
+	}
+
+	private static PostingList postings(PostingList[] lists, int id) {
+		PostingList postings = lists[id];
+		if (postings == null) {
+			postings = new PostingList();
+			lists[id] = postings;
+		}
+		return postings;
+	}
+
+	private static int[] union(PostingList[] lists, int[] ids,
+			PostingList extra) {
+		PostingList[] selected = new PostingList[ids.length + 1];
+		for (int i = 0; i < ids.length; i++) {
+			selected[i] = ids[i] < lists.length ? lists[ids[i]] : null;
+		}
+		selected[ids.length] = extra;
+		return union(selected);
+	}
+
+	private static int[] union(PostingList[] lists) {
+		int[] result = new int[0];
+		for (PostingList postings : lists) {
+			if (postings != null && postings.size > 0) {
+				result = union(result, result.length, postings.positions,
+						postings.size);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Merges two ascending lists without duplicates
+	 */
+	static int[] union(int[] a, int aSize, int[] b, int bSize) {
+		int[] result = new int[aSize + bSize];
+		int i = 0, j = 0, n = 0;
+		while (i < aSize && j < bSize) {
+			if (a[i] < b[j]) {
+				result[n++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[n++] = b[j++];
+			} else {
+				result[n++] = a[i++];
+				j++;
+			}
+		}
+		while (i < aSize) {
+			result[n++] = a[i++];
+		}
+		while (j < bSize) {
+			result[n++] = b[j++];
+		}
+		return n == result.length ? result : copyOf(result, n);
+	}
+
+	/**
+	 * @return the positions in both ascending lists
+	 */
+	static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[n++] = a[i++];
+				j++;
+			}
+		}
+		return n == result.length ? result : copyOf(result, n);
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+}
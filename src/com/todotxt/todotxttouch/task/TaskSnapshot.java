@@ -0,0 +1,454 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+import com.todotxt.todotxttouch.util.Dates;
+import com.todotxt.todotxttouch.util.FileVersion;
+import com.todotxt.todotxttouch.util.LineIndex;
+import com.todotxt.todotxttouch.util.Util;
+
+/**
+ * The tasks of the todo file as they were parsed, in a binary form that
+ * loads without parsing any text. A snapshot names the version of the todo
+ * file it was taken from, and is only used while the file still has it,
+ * down to the checksum of its content.
+ * 
+ * Layout, numbers are unsigned varints unless noted:
+ * 
+ * <pre>
+ * magic, format                     int, int
+ * todo file version                 length, modified, checksum as longs
+ * tag count, names                  strings
+ * task count, tasks                 see writeTask()
+ * line count, lines                 gap and length of each line
+ * CRC32 of everything before        long
+ * </pre>
+ * 
+ * Strings are their UTF-8 byte count plus one followed by the bytes, 0 for
+ * null. The tag names are only those of the tags the tasks have, in order of
+ * first use, and tasks refer to them by their position in that list. They
+ * are mapped to the TagDictionary ids of the reading process through the
+ * names.
+ */
+class TaskSnapshot {
+	private static final String TAG = TaskSnapshot.class.getSimpleName();
+	private static final int MAGIC = 0x54445331; // "TDS1"
+	private static final int FORMAT = 1;
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int HEADER_LENGTH = 32;
+
+	// task flags
+	private static final int COMPLETED = 1;
+	private static final int DELETED = 2;
+	// the date string is not what formatting its epoch day gives
+	private static final int COMPLETION_DATE = 4;
+	private static final int PREPENDED_DATE = 8;
+
+	private final File file;
+	// the todo file version the snapshot on disk was taken from
+	private FileVersion version;
+
+	// the snapshot being read
+	private byte[] data;
+	private int position;
+	private char[] chars = new char[256];
+
+	TaskSnapshot(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the version of the todo file the snapshot was last read or
+	 *         written for, or null
+	 */
+	public FileVersion getVersion() {
+		return version;
+	}
+
+	/**
+	 * Reads the snapshot if it was taken from the todo file as it is now.
+	 * 
+	 * @param index
+	 *            filled with the lines of the todo file, cleared if the
+	 *            snapshot cannot be used
+	 * @return the tasks, or null if there is no usable snapshot
+	 */
+	public ArrayList<Task> read(File todoFile, LineIndex index) {
+		index.clear();
+		version = null;
+		try {
+			data = readFully(file);
+			if (data == null) {
+				return null;
+			}
+			position = 0;
+			FileVersion taken = readHeader(todoFile);
+			if (taken == null) {
+				return null;
+			}
+			int end = data.length - 8;
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, end);
+			if (getLong(end) != crc.getValue()) {
+				throw new IOException("Checksum mismatch");
+			}
+			ArrayList<Task> tasks = readTasks();
+			int lines = readVarint();
+			long lineEnd = 0;
+			for (int i = 0; i < lines; i++) {
+				long start = lineEnd + readVarint();
+				lineEnd = start + readVarint();
+				index.add(start, lineEnd);
+			}
+			if (position != end) {
+				throw new IOException("Trailing bytes");
+			}
+			// what was checked, a later write must not pass for it
+			index.setVersion(taken);
+			version = taken;
+			return tasks;
+		} catch (IOException e) {
+			Log.w(TAG, "Dropping unreadable snapshot " + file, e);
+		} catch (RuntimeException e) {
+			// a count, tag or priority out of range
+			Log.w(TAG, "Dropping unreadable snapshot " + file, e);
+		} finally {
+			data = null;
+		}
+		index.clear();
+		delete();
+		return null;
+	}
+
+	/**
+	 * Replaces the snapshot with the tasks and lines just read from the todo
+	 * file.
+	 * 
+	 * @param version
+	 *            the version of the todo file they were read from
+	 */
+	public void write(FileVersion version, List<Task> tasks, LineIndex index)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				HEADER_LENGTH + tasks.size() * 48);
+		putInt(out, MAGIC);
+		putInt(out, FORMAT);
+		putLong(out, version.length());
+		putLong(out, version.lastModified());
+		putLong(out, version.checksum());
+		// TagDictionary id to position in the snapshot plus one
+		TagDictionary dictionary = TagDictionary.getInstance();
+		int[] numbers = new int[dictionary.size()];
+		List<String> names = new ArrayList<String>();
+		for (Task task : tasks) {
+			number(task.getContextIds(), numbers, names, dictionary);
+			number(task.getProjectIds(), numbers, names, dictionary);
+		}
+		putVarint(out, names.size());
+		for (String name : names) {
+			putString(out, name);
+		}
+		putVarint(out, tasks.size());
+		long previousId = -1;
+		for (Task task : tasks) {
+			putTask(out, task, previousId, numbers);
+			previousId = task.getId();
+		}
+		putVarint(out, index.size());
+		for (int i = 0; i < index.size(); i++) {
+			putVarint(out, (int) (index.start(i) - index.gapStart(i)));
+			putVarint(out, (int) (index.end(i) - index.start(i)));
+		}
+		byte[] content = out.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		ByteArrayOutputStream trailer = new ByteArrayOutputStream(8);
+		putLong(trailer, crc.getValue());
+
+		File temp = new File(file.getParentFile(), file.getName()
+				+ TEMP_SUFFIX);
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			stream.write(content);
+			trailer.writeTo(stream);
+		} finally {
+			Util.closeStream(stream);
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			this.version = null;
+			throw new IOException("Could not rename " + temp + " to " + file);
+		}
+		this.version = version;
+	}
+
+	public void delete() {
+		version = null;
+		file.delete();
+	}
+
+	/**
+	 * @return the version the snapshot was taken from, with the current
+	 *         modification time, or null if the todo file no longer has the
+	 *         same size and checksum
+	 */
+	private FileVersion readHeader(File todoFile) throws IOException {
+		if (data.length < HEADER_LENGTH + 8 || getInt(0) != MAGIC
+				|| getInt(4) != FORMAT) {
+			throw new IOException("Not a snapshot");
+		}
+		FileVersion taken = new FileVersion(getLong(8), getLong(16),
+				getLong(24));
+		position = HEADER_LENGTH;
+		return taken.check(todoFile);
+	}
+
+	private ArrayList<Task> readTasks() throws IOException {
+		int tagCount = readVarint();
+		// tag ids of the writer to the ones of this process
+		int[] tags = new int[tagCount];
+		TagDictionary dictionary = TagDictionary.getInstance();
+		for (int i = 0; i < tagCount; i++) {
+			tags[i] = dictionary.intern(readString());
+		}
+		int count = readVarint();
+		ArrayList<Task> tasks = new ArrayList<Task>(count);
+		Priority[] priorities = Priority.values();
+		long id = -1;
+		for (int i = 0; i < count; i++) {
+			id += readVarint();
+			int flags = readVarint();
+			Priority priority = priorities[readVarint()];
+			String text = readString();
+			int completionDay = readDay();
+			String completionDate = (flags & COMPLETION_DATE) != 0 ? readString()
+					: Dates.format(completionDay);
+			int prependedDay = readDay();
+			String prependedDate = (flags & PREPENDED_DATE) != 0 ? readString()
+					: Dates.format(prependedDay);
+			int[] contextIds = readTags(tags, dictionary);
+			int[] projectIds = readTags(tags, dictionary);
+			tasks.add(new Task(id, priority, (flags & COMPLETED) != 0,
+					(flags & DELETED) != 0, text, completionDate,
+					completionDay, prependedDate, prependedDay, contextIds,
+					projectIds));
+		}
+		return tasks;
+	}
+
+	/**
+	 * A task is its id as the step from the one before, flags, priority,
+	 * text, then each date as epoch day plus one, 0 for none, followed by
+	 * the date string if it does not format from the day, and last the
+	 * context and project tag ids.
+	 */
+	private static void putTask(ByteArrayOutputStream out, Task task,
+			long previousId, int[] numbers) throws IOException {
+		int completionDay = task.getCompletionDay();
+		int prependedDay = task.getPrependedDay();
+		boolean completionDate = !Dates.format(completionDay).equals(
+				task.getCompletionDate());
+		boolean prependedDate = !Dates.format(prependedDay).equals(
+				task.getPrependedDate());
+		putVarint(out, (int) (task.getId() - previousId));
+		putVarint(out, (task.isCompleted() ? COMPLETED : 0)
+				| (task.isDeleted() ? DELETED : 0)
+				| (completionDate ? COMPLETION_DATE : 0)
+				| (prependedDate ? PREPENDED_DATE : 0));
+		putVarint(out, task.getPriority().ordinal());
+		putString(out, task.getText());
+		putDay(out, completionDay);
+		if (completionDate) {
+			putString(out, task.getCompletionDate());
+		}
+		putDay(out, prependedDay);
+		if (prependedDate) {
+			putString(out, task.getPrependedDate());
+		}
+		putTags(out, task.getContextIds(), numbers);
+		putTags(out, task.getProjectIds(), numbers);
+	}
+
+	private static void putDay(ByteArrayOutputStream out, int day) {
+		// days before 1970 are rare, but not invalid
+		putVarint(out, day == Dates.NONE ? 0 : zigzag(day) + 1);
+	}
+
+	private int readDay() {
+		int value = readVarint();
+		return value == 0 ? Dates.NONE : unzigzag(value - 1);
+	}
+
+	private static void number(int[] ids, int[] numbers, List<String> names,
+			TagDictionary dictionary) {
+		for (int id : ids) {
+			if (numbers[id] == 0) {
+				names.add(dictionary.get(id));
+				numbers[id] = names.size();
+			}
+		}
+	}
+
+	private static void putTags(ByteArrayOutputStream out, int[] ids,
+			int[] numbers) {
+		putVarint(out, ids.length);
+		for (int id : ids) {
+			putVarint(out, numbers[id] - 1);
+		}
+	}
+
+	private int[] readTags(int[] tags, TagDictionary dictionary) {
+		int count = readVarint();
+		if (count == 0) {
+			return TagDictionary.NO_TAGS;
+		}
+		if (count == 1) {
+			return dictionary.singleton(tags[readVarint()]);
+		}
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = tags[readVarint()];
+		}
+		return ids;
+	}
+
+	private static void putString(ByteArrayOutputStream out, String s)
+			throws IOException {
+		if (s == null) {
+			putVarint(out, 0);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		putVarint(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private String readString() throws IOException {
+		int length = readVarint() - 1;
+		if (length < 0) {
+			return null;
+		}
+		int start = position;
+		if (length > data.length - start) {
+			throw new IOException("String of " + length + " bytes");
+		}
+		position += length;
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			byte b = data[start + i];
+			if (b < 0) {
+				return new String(data, start, length, "UTF-8");
+			}
+			chars[i] = (char) b;
+		}
+		return new String(chars, 0, length);
+	}
+
+	private static void putVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private int readVarint() {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = data[position++];
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void putInt(ByteArrayOutputStream out, int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			out.write(value >>> shift);
+		}
+	}
+
+	private static void putLong(ByteArrayOutputStream out, long value) {
+		putInt(out, (int) (value >>> 32));
+		putInt(out, (int) value);
+	}
+
+	private int getInt(int offset) {
+		return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+				| (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+	}
+
+	private long getLong(int offset) {
+		return (long) getInt(offset) << 32 | (getInt(offset + 4) & 0xffffffffL);
+	}
+
+	private static byte[] readFully(File file) throws IOException {
+		FileInputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		try {
+			long length = file.length();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large");
+			}
+			byte[] bytes = new byte[(int) length];
+			int read = 0;
+			while (read < bytes.length) {
+				int n = in.read(bytes, read, bytes.length - read);
+				if (n < 0) {
+					throw new IOException(file + " was cut short");
+				}
+				read += n;
+			}
+			return bytes;
+		} finally {
+			Util.closeStream(in);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Holds the tasks of a {@link TaskBagImpl} in memory. The bag loads and
+ * persists them; a store keeps them findable by position and answers the
+ * queries over them.
+ */
+interface TaskStore {
+	/**
+	 * Starts over with the tasks just loaded, which may be null
+	 */
+	void reset(ArrayList<Task> tasks);
+
+	int size();
+
+	/**
+	 * @return all tasks in file order
+	 */
+	ArrayList<Task> getAll();
+
+	Task get(int position);
+
+	/**
+	 * @return the position of the task, or -1 if it is not in the store
+	 */
+	int find(Task task);
+
+	void add(Task task);
+
+	/**
+	 * Replaces the task at the position with the given one
+	 * 
+	 * @return the task now stored there
+	 */
+	Task set(int position, Task task);
+
+	void remove(int position);
+
+	List<Task> getTasks(Filter<Task> filter, Comparator<Task> comparator);
+
+	List<Task> search(SearchSession session, Comparator<Task> comparator);
+
+	List<Priority> getPriorities();
+
+	/**
+	 * @return the contexts in use, sorted
+	 */
+	List<String> getContexts();
+
+	/**
+	 * @return the projects in use, sorted
+	 */
+	List<String> getProjects();
+
+	/**
+	 * @return the number of tasks with each of the projects, where "-" counts
+	 *         the tasks without any
+	 */
+	int[] countProjects(List<String> projects);
+
+	/**
+	 * @return the number of tasks with each of the contexts, where "-" counts
+	 *         the tasks without any
+	 */
+	int[] countContexts(List<String> contexts);
+
+	int[] countPriorities(List<Priority> priorities);
+}
@@ -0,0 +1,654 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.todotxt.todotxttouch.util.Dates;
+
+/**
+ * Column-oriented storage for a large number of tasks. Every task is a row
+ * spread over primitive arrays, and the task lines share one char arena.
+ * Task objects are only created by {@link #getTask(int)} when a caller needs
+ * one.
+ * 
+ * Rows are kept in insertion order. Each row also has a key that never
+ * changes and is never reused, so a row can be found again after others were
+ * removed. Rows are chained by the hash of their text and priority, so
+ * {@link #find(String, Priority, long)} only compares the rows in one chain.
+ */
+class TaskTable {
+	static final byte COMPLETED = 1;
+	static final byte DELETED = 2;
+	// the date string is not what formatting its epoch day gives
+	private static final byte COMPLETION_DATE = 4;
+	private static final byte PREPENDED_DATE = 8;
+
+	private static final Priority[] PRIORITIES = Priority.values();
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int MIN_COMPACT_GARBAGE = 4096;
+
+	private int size;
+	private int nextKey;
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private byte[] priorities = new byte[INITIAL_CAPACITY];
+	private byte[] flags = new byte[INITIAL_CAPACITY];
+	private int[] prependedDays = new int[INITIAL_CAPACITY];
+	private int[] completionDays = new int[INITIAL_CAPACITY];
+	private int[][] contextIds = new int[INITIAL_CAPACITY][];
+	private int[][] projectIds = new int[INITIAL_CAPACITY][];
+	// offsets into the arena
+	private int[] lineStarts = new int[INITIAL_CAPACITY];
+	private int[] lineEnds = new int[INITIAL_CAPACITY];
+	private int[] textStarts = new int[INITIAL_CAPACITY];
+	private int[] textEnds = new int[INITIAL_CAPACITY];
+	// of text and priority, and the key after the row's in its chain plus one
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int[] chained = new int[INITIAL_CAPACITY];
+	// first key of each chain plus one, 0 for none
+	private int[] buckets = new int[INITIAL_CAPACITY];
+
+	private char[] arena = new char[INITIAL_CAPACITY * 64];
+	private int arenaSize;
+	// chars of replaced or removed lines still held in the arena
+	private int garbage;
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+		arenaSize = 0;
+		garbage = 0;
+		buckets = new int[INITIAL_CAPACITY];
+		for (int i = 0; i < contextIds.length; i++) {
+			contextIds[i] = null;
+			projectIds[i] = null;
+		}
+	}
+
+	/**
+	 * Appends the task as a new row and returns the row's key.
+	 */
+	public int add(Task task) {
+		ensureCapacity(size + 1);
+		int row = size++;
+		keys[row] = nextKey++;
+		write(row, task);
+		link(row);
+		return keys[row];
+	}
+
+	public void addAll(List<Task> tasks) {
+		ensureCapacity(size + tasks.size());
+		for (Task task : tasks) {
+			add(task);
+		}
+	}
+
+	/**
+	 * Replaces the contents of the row, keeping its key.
+	 */
+	public void set(int row, Task task) {
+		checkRow(row);
+		garbage += lineEnds[row] - lineStarts[row];
+		unlink(row);
+		write(row, task);
+		link(row);
+		compactIfNeeded();
+	}
+
+	public void remove(int row) {
+		checkRow(row);
+		garbage += lineEnds[row] - lineStarts[row];
+		unlink(row);
+		int moved = size - row - 1;
+		if (moved > 0) {
+			System.arraycopy(keys, row + 1, keys, row, moved);
+			System.arraycopy(ids, row + 1, ids, row, moved);
+			System.arraycopy(priorities, row + 1, priorities, row, moved);
+			System.arraycopy(flags, row + 1, flags, row, moved);
+			System.arraycopy(prependedDays, row + 1, prependedDays, row, moved);
+			System.arraycopy(completionDays, row + 1, completionDays, row,
+					moved);
+			System.arraycopy(contextIds, row + 1, contextIds, row, moved);
+			System.arraycopy(projectIds, row + 1, projectIds, row, moved);
+			System.arraycopy(lineStarts, row + 1, lineStarts, row, moved);
+			System.arraycopy(lineEnds, row + 1, lineEnds, row, moved);
+			System.arraycopy(textStarts, row + 1, textStarts, row, moved);
+			System.arraycopy(textEnds, row + 1, textEnds, row, moved);
+			System.arraycopy(hashes, row + 1, hashes, row, moved);
+			System.arraycopy(chained, row + 1, chained, row, moved);
+		}
+		size--;
+		contextIds[size] = null;
+		projectIds[size] = null;
+		compactIfNeeded();
+	}
+
+	/**
+	 * Returns the row holding the key, or -1 when it has been removed.
+	 */
+	public int rowOfKey(int key) {
+		// keys only ever grow and rows keep their order
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < key) {
+				low = mid + 1;
+			} else if (keys[mid] > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public int getKey(int row) {
+		checkRow(row);
+		return keys[row];
+	}
+
+	/**
+	 * Returns the first row whose text and priority are the given ones, or -1.
+	 */
+	public int find(String text, Priority priority) {
+		return find(text, priority, -1);
+	}
+
+	/**
+	 * Returns the row whose text and priority are the given ones, or -1.
+	 * Among duplicate lines, the one with the given id is preferred, then the
+	 * first.
+	 */
+	public int find(String text, Priority priority, long id) {
+		int hash = hash(text, priority);
+		int length = text.length();
+		byte ordinal = (byte) priority.ordinal();
+		int found = -1;
+		for (int entry = buckets[hash & (buckets.length - 1)]; entry != 0;) {
+			int row = rowOfKey(entry - 1);
+			if (hashes[row] == hash && priorities[row] == ordinal
+					&& textEnds[row] - textStarts[row] == length
+					&& regionEquals(textStarts[row], text)) {
+				if (ids[row] == id) {
+					return row;
+				}
+				if (found < 0 || row < found) {
+					found = row;
+				}
+			}
+			entry = chained[row];
+		}
+		return found;
+	}
+
+	/**
+	 * Creates a Task for the row from its columns, without parsing its line
+	 * unless a date in it is irregular. Each call returns a new instance.
+	 */
+	public Task getTask(int row) {
+		checkRow(row);
+		byte rowFlags = flags[row];
+		if ((rowFlags & (COMPLETION_DATE | PREPENDED_DATE)) != 0) {
+			return new Task(ids[row], new String(arena, lineStarts[row],
+					lineEnds[row] - lineStarts[row]));
+		}
+		return new Task(ids[row], PRIORITIES[priorities[row]],
+				(rowFlags & COMPLETED) != 0, (rowFlags & DELETED) != 0,
+				getText(row), Dates.format(completionDays[row]),
+				completionDays[row], Dates.format(prependedDays[row]),
+				prependedDays[row], contextIds[row], projectIds[row]);
+	}
+
+	public ArrayList<Task> getTasks() {
+		ArrayList<Task> tasks = new ArrayList<Task>(size);
+		for (int row = 0; row < size; row++) {
+			tasks.add(getTask(row));
+		}
+		return tasks;
+	}
+
+	public long getId(int row) {
+		checkRow(row);
+		return ids[row];
+	}
+
+	public Priority getPriority(int row) {
+		checkRow(row);
+		return PRIORITIES[priorities[row]];
+	}
+
+	public boolean isCompleted(int row) {
+		checkRow(row);
+		return (flags[row] & COMPLETED) != 0;
+	}
+
+	public boolean isDeleted(int row) {
+		checkRow(row);
+		return (flags[row] & DELETED) != 0;
+	}
+
+	public int getPrependedDay(int row) {
+		checkRow(row);
+		return prependedDays[row];
+	}
+
+	public int getCompletionDay(int row) {
+		checkRow(row);
+		return completionDays[row];
+	}
+
+	/**
+	 * The TagDictionary ids of the row's contexts. Must not be modified.
+	 */
+	public int[] getContextIds(int row) {
+		checkRow(row);
+		return contextIds[row];
+	}
+
+	/**
+	 * The TagDictionary ids of the row's projects. Must not be modified.
+	 */
+	public int[] getProjectIds(int row) {
+		checkRow(row);
+		return projectIds[row];
+	}
+
+	public String getText(int row) {
+		checkRow(row);
+		return new String(arena, textStarts[row], textEnds[row]
+				- textStarts[row]);
+	}
+
+	/**
+	 * Applies the filter to the row, without creating a Task if the filter
+	 * can work on the columns directly.
+	 */
+	public boolean matches(Filter<Task> filter, int row) {
+		if (filter instanceof TableFilter) {
+			return ((TableFilter) filter).apply(this, row);
+		}
+		return filter.apply(getTask(row));
+	}
+
+	/**
+	 * Returns the rows matching the filter, in row order. A null filter
+	 * matches every row.
+	 */
+	public int[] select(Filter<Task> filter) {
+		int[] rows = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (filter == null || matches(filter, row)) {
+				rows[count++] = row;
+			}
+		}
+		if (count == rows.length) {
+			return rows;
+		}
+		int[] result = new int[count];
+		System.arraycopy(rows, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Sorts the rows stably by the comparator. The comparators of
+	 * {@link Sort} are evaluated over the columns, any other comparator is
+	 * given Task instances.
+	 */
+	public void sort(int[] rows, final Comparator<Task> comparator) {
+		RowComparator rowComparator = rowComparator(comparator);
+		if (rowComparator != null) {
+			int[] buffer = rows.clone();
+			mergeSort(buffer, rows, 0, rows.length, rowComparator);
+			return;
+		}
+		List<Task> tasks = new ArrayList<Task>(rows.length);
+		final List<Integer> order = new ArrayList<Integer>(rows.length);
+		for (int i = 0; i < rows.length; i++) {
+			tasks.add(getTask(rows[i]));
+			order.add(i);
+		}
+		final List<Task> unsorted = tasks;
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return comparator.compare(unsorted.get(a), unsorted.get(b));
+			}
+		});
+		int[] copy = rows.clone();
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = copy[order.get(i)];
+		}
+	}
+
+	private RowComparator rowComparator(Comparator<Task> comparator) {
+		if (comparator == Sort.PRIORITY_DESC.getComparator()) {
+			return new RowComparator() {
+				@Override
+				public int compare(int a, int b) {
+					boolean completedA = (flags[a] & COMPLETED) != 0;
+					boolean completedB = (flags[b] & COMPLETED) != 0;
+					if (completedA && completedB) {
+						return compareIds(a, b);
+					}
+					if (completedA || completedB) {
+						return completedA ? 1 : -1;
+					}
+					int none = Priority.NONE.ordinal();
+					if (priorities[a] == none && priorities[b] == none) {
+						return compareIds(a, b);
+					}
+					if (priorities[a] == none || priorities[b] == none) {
+						return priorities[a] == none ? 1 : -1;
+					}
+					int result = priorities[a] - priorities[b];
+					if (result == 0) {
+						result = compareIds(a, b);
+					}
+					return result;
+				}
+			};
+		} else if (comparator == Sort.ID_ASC.getComparator()) {
+			return new RowComparator() {
+				@Override
+				public int compare(int a, int b) {
+					return compareIds(a, b);
+				}
+			};
+		} else if (comparator == Sort.ID_DESC.getComparator()) {
+			return new RowComparator() {
+				@Override
+				public int compare(int a, int b) {
+					return compareIds(b, a);
+				}
+			};
+		} else if (comparator == Sort.TEXT_ASC.getComparator()) {
+			return new RowComparator() {
+				@Override
+				public int compare(int a, int b) {
+					int result = compareTextIgnoreCase(a, b);
+					if (result == 0) {
+						result = compareIds(a, b);
+					}
+					return result;
+				}
+			};
+		}
+		return null;
+	}
+
+	private int compareIds(int a, int b) {
+		return ids[a] < ids[b] ? -1 : (ids[a] == ids[b] ? 0 : 1);
+	}
+
+	// same ordering as String.compareToIgnoreCase()
+	private int compareTextIgnoreCase(int a, int b) {
+		int lengthA = textEnds[a] - textStarts[a];
+		int lengthB = textEnds[b] - textStarts[b];
+		int n = Math.min(lengthA, lengthB);
+		for (int i = 0; i < n; i++) {
+			char c1 = arena[textStarts[a] + i];
+			char c2 = arena[textStarts[b] + i];
+			if (c1 != c2) {
+				c1 = Character.toUpperCase(c1);
+				c2 = Character.toUpperCase(c2);
+				if (c1 != c2) {
+					c1 = Character.toLowerCase(c1);
+					c2 = Character.toLowerCase(c2);
+					if (c1 != c2) {
+						return c1 - c2;
+					}
+				}
+			}
+		}
+		return lengthA - lengthB;
+	}
+
+	private interface RowComparator {
+		int compare(int a, int b);
+	}
+
+	// stable top-down merge sort, sorts src[from, to) into dest
+	private static void mergeSort(int[] src, int[] dest, int from, int to,
+			RowComparator comparator) {
+		int length = to - from;
+		if (length < 7) {
+			for (int i = from; i < to; i++) {
+				for (int j = i; j > from
+						&& comparator.compare(dest[j - 1], dest[j]) > 0; j--) {
+					int swap = dest[j];
+					dest[j] = dest[j - 1];
+					dest[j - 1] = swap;
+				}
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, comparator);
+		mergeSort(dest, src, mid, to, comparator);
+		if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+			System.arraycopy(src, from, dest, from, length);
+			return;
+		}
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || p < mid && comparator.compare(src[p], src[q]) <= 0) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+
+	private void write(int row, Task task) {
+		String line = task.inFileFormat();
+		// columns are filled from the line, so they agree with getTask(row)
+		TaskLineScanner.ScanResult scan = TaskLineScanner.getInstance().scan(
+				line);
+		int start = append(line);
+		ids[row] = task.getId();
+		priorities[row] = (byte) scan.priority.ordinal();
+		byte rowFlags = 0;
+		if (scan.completed) {
+			rowFlags |= COMPLETED;
+		}
+		if (scan.textStart == scan.textEnd) {
+			rowFlags |= DELETED;
+		}
+		prependedDays[row] = Dates.parse(line, scan.prependedDateStart);
+		completionDays[row] = Dates.parse(line, scan.completionDateStart);
+		if (!Dates.format(completionDays[row]).equals(
+				scan.getCompletionDate())) {
+			rowFlags |= COMPLETION_DATE;
+		}
+		if (!Dates.format(prependedDays[row]).equals(scan.getPrependedDate())) {
+			rowFlags |= PREPENDED_DATE;
+		}
+		flags[row] = rowFlags;
+		contextIds[row] = scan.getContextIds();
+		projectIds[row] = scan.getProjectIds();
+		lineStarts[row] = start;
+		lineEnds[row] = start + line.length();
+		textStarts[row] = start + scan.textStart;
+		textEnds[row] = start + scan.textEnd;
+		hashes[row] = hash(line, scan.textStart, scan.textEnd, scan.priority);
+	}
+
+	/**
+	 * Puts the row first in the chain of its hash
+	 */
+	private void link(int row) {
+		if (size * 2 > buckets.length) {
+			// chains all rows, this one included
+			rehash();
+			return;
+		}
+		int bucket = hashes[row] & (buckets.length - 1);
+		chained[row] = buckets[bucket];
+		buckets[bucket] = keys[row] + 1;
+	}
+
+	private void unlink(int row) {
+		int key = keys[row] + 1;
+		int bucket = hashes[row] & (buckets.length - 1);
+		if (buckets[bucket] == key) {
+			buckets[bucket] = chained[row];
+			return;
+		}
+		for (int before = rowOfKey(buckets[bucket] - 1);;) {
+			if (chained[before] == key) {
+				chained[before] = chained[row];
+				return;
+			}
+			before = rowOfKey(chained[before] - 1);
+		}
+	}
+
+	private void rehash() {
+		buckets = new int[buckets.length * 2];
+		int mask = buckets.length - 1;
+		for (int row = 0; row < size; row++) {
+			int bucket = hashes[row] & mask;
+			chained[row] = buckets[bucket];
+			buckets[bucket] = keys[row] + 1;
+		}
+	}
+
+	private static int hash(String text, Priority priority) {
+		return hash(text, 0, text.length(), priority);
+	}
+
+	// spread, since the low bits pick the chain
+	private static int hash(String line, int start, int end, Priority priority) {
+		int h = priority.ordinal();
+		for (int i = start; i < end; i++) {
+			h = 31 * h + line.charAt(i);
+		}
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+
+	private int append(String line) {
+		int length = line.length();
+		if (arenaSize + length > arena.length) {
+			char[] grown = new char[Math.max(arena.length * 2, arenaSize
+					+ length)];
+			System.arraycopy(arena, 0, grown, 0, arenaSize);
+			arena = grown;
+		}
+		line.getChars(0, length, arena, arenaSize);
+		int start = arenaSize;
+		arenaSize += length;
+		return start;
+	}
+
+	private boolean regionEquals(int start, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (arena[start + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void compactIfNeeded() {
+		if (garbage < MIN_COMPACT_GARBAGE || garbage * 2 < arenaSize) {
+			return;
+		}
+		char[] compacted = new char[Math.max(INITIAL_CAPACITY * 64,
+				(arenaSize - garbage) * 3 / 2)];
+		int position = 0;
+		for (int row = 0; row < size; row++) {
+			int length = lineEnds[row] - lineStarts[row];
+			int shift = lineStarts[row] - position;
+			System.arraycopy(arena, lineStarts[row], compacted, position,
+					length);
+			lineStarts[row] -= shift;
+			lineEnds[row] -= shift;
+			textStarts[row] -= shift;
+			textEnds[row] -= shift;
+			position += length;
+		}
+		arena = compacted;
+		arenaSize = position;
+		garbage = 0;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= keys.length) {
+			return;
+		}
+		int length = Math.max(keys.length * 2, capacity);
+		keys = copyOf(keys, length);
+		ids = copyOf(ids, length);
+		priorities = copyOf(priorities, length);
+		flags = copyOf(flags, length);
+		prependedDays = copyOf(prependedDays, length);
+		completionDays = copyOf(completionDays, length);
+		int[][] grownContexts = new int[length][];
+		System.arraycopy(contextIds, 0, grownContexts, 0, size);
+		contextIds = grownContexts;
+		int[][] grownProjects = new int[length][];
+		System.arraycopy(projectIds, 0, grownProjects, 0, size);
+		projectIds = grownProjects;
+		lineStarts = copyOf(lineStarts, length);
+		lineEnds = copyOf(lineEnds, length);
+		textStarts = copyOf(textStarts, length);
+		textEnds = copyOf(textEnds, length);
+		hashes = copyOf(hashes, length);
+		chained = copyOf(chained, length);
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: "
+					+ size);
+		}
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static long[] copyOf(long[] array, int length) {
+		long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static byte[] copyOf(byte[] array, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+}
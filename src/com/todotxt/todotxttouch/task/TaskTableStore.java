@@ -0,0 +1,253 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+import android.util.SparseArray;
+
+/**
+ * Keeps the tasks in a {@link TaskTable}, so they cost a few columns instead of
+ * an object graph each. Tasks are built from the columns when they are handed
+ * out. The ones handed out last are kept, so asking again gives the same
+ * instances, and they are found by identity. Filters and counts go through
+ * {@link TaskPostings}, as in {@link TaskListStore}.
+ */
+class TaskTableStore implements TaskStore {
+	private final TaskTable table = new TaskTable();
+	// the Tasks handed out by row key, and their keys by identity
+	private SparseArray<Task> handedOut = new SparseArray<Task>();
+	private IdentityHashMap<Task, Integer> keys = new IdentityHashMap<Task, Integer>();
+	private final TaskPostings taskPostings = new TaskPostings();
+	// changes with every change to the table, see SearchSession
+	private int version;
+
+	@Override
+	public void reset(ArrayList<Task> tasks) {
+		table.clear();
+		handedOut.clear();
+		keys.clear();
+		if (tasks != null) {
+			table.addAll(tasks);
+		}
+		taskPostings.reset(new Rows(table));
+		version++;
+	}
+
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	@Override
+	public ArrayList<Task> getAll() {
+		return table.getTasks();
+	}
+
+	@Override
+	public Task get(int position) {
+		int key = table.getKey(position);
+		Task task = handedOut.get(key);
+		if (task == null) {
+			task = table.getTask(position);
+			keep(key, task);
+		}
+		return task;
+	}
+
+	@Override
+	public int find(Task task) {
+		Integer key = keys.get(task);
+		if (key != null) {
+			int row = table.rowOfKey(key);
+			if (row >= 0) {
+				return row;
+			}
+		}
+		int row = table.find(task.getOriginalText(),
+				task.getOriginalPriority(), task.getId());
+		if (row < 0) {
+			// a loaded task that was changed in place before the bag reloaded
+			row = table.find(task.getText(), task.getPriority(), task.getId());
+		}
+		return row;
+	}
+
+	@Override
+	public void add(Task task) {
+		keep(table.add(task), task);
+		taskPostings.added(task);
+		version++;
+	}
+
+	@Override
+	public Task set(int position, Task task) {
+		int[] contextIds = table.getContextIds(position);
+		int[] projectIds = table.getProjectIds(position);
+		Priority priority = table.getPriority(position);
+		table.set(position, task);
+		int key = table.getKey(position);
+		Task old = handedOut.get(key);
+		if (old != task) {
+			keys.remove(old);
+			keep(key, task);
+		}
+		taskPostings.changed(position, contextIds, projectIds, priority,
+				task);
+		version++;
+		return task;
+	}
+
+	@Override
+	public void remove(int position) {
+		int key = table.getKey(position);
+		Task old = handedOut.get(key);
+		if (old != null) {
+			handedOut.remove(key);
+			keys.remove(old);
+		}
+		table.remove(position);
+		taskPostings.removed(position);
+		version++;
+	}
+
+	@Override
+	public List<Task> getTasks(Filter<Task> filter, Comparator<Task> comparator) {
+		int[] rows = filter instanceof PostingFilter ? taskPostings
+				.select((PostingFilter) filter) : null;
+		if (rows == null) {
+			rows = table.select(filter);
+		}
+		return handOut(rows, comparator);
+	}
+
+	@Override
+	public List<Task> search(SearchSession session,
+			Comparator<Task> comparator) {
+		// the session keeps what it returns
+		int[] rows = session.select(taskPostings, version).clone();
+		return handOut(rows, comparator);
+	}
+
+	/**
+	 * Sorts the rows over the columns and hands out their Tasks, reusing the
+	 * ones handed out before. Only these are kept from now on.
+	 */
+	private List<Task> handOut(int[] rows, Comparator<Task> comparator) {
+		if (comparator == null) {
+			comparator = Sort.PRIORITY_DESC.getComparator();
+		}
+
+		table.sort(rows, comparator);
+
+		SparseArray<Task> previous = handedOut;
+		handedOut = new SparseArray<Task>();
+		keys = new IdentityHashMap<Task, Integer>(rows.length);
+		ArrayList<Task> localTasks = new ArrayList<Task>(rows.length);
+		for (int row : rows) {
+			int key = table.getKey(row);
+			Task task = previous.get(key);
+			if (task == null) {
+				task = table.getTask(row);
+			}
+			keep(key, task);
+			localTasks.add(task);
+		}
+		return localTasks;
+	}
+
+	private void keep(int key, Task task) {
+		handedOut.put(key, task);
+		keys.put(task, key);
+	}
+
+	@Override
+	public List<Priority> getPriorities() {
+		return taskPostings.getPriorities();
+	}
+
+	@Override
+	public List<String> getContexts() {
+		return taskPostings.getContexts();
+	}
+
+	@Override
+	public List<String> getProjects() {
+		return taskPostings.getProjects();
+	}
+
+	@Override
+	public int[] countProjects(List<String> projects) {
+		int[] counts = new int[projects.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = taskPostings.countProject(projects.get(i));
+		}
+		return counts;
+	}
+
+	@Override
+	public int[] countContexts(List<String> contexts) {
+		int[] counts = new int[contexts.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = taskPostings.countContext(contexts.get(i));
+		}
+		return counts;
+	}
+
+	@Override
+	public int[] countPriorities(List<Priority> priorities) {
+		int[] counts = new int[priorities.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = taskPostings.countPriority(priorities.get(i));
+		}
+		return counts;
+	}
+
+	/**
+	 * The rows as Tasks built from the columns, for the postings, which read
+	 * each once while indexing and then only the few they select
+	 */
+	private static class Rows extends AbstractList<Task> implements
+			RandomAccess {
+		private final TaskTable table;
+
+		Rows(TaskTable table) {
+			this.table = table;
+		}
+
+		@Override
+		public Task get(int row) {
+			return table.getTask(row);
+		}
+
+		@Override
+		public int size() {
+			return table.size();
+		}
+	}
+}
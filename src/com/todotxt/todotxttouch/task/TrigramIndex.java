@@ -0,0 +1,284 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+
+/**
+ * Posting lists from each sequence of three characters to the positions of
+ * the task texts containing it. A search term can only be in the texts that
+ * have all of its trigrams, so those are the only ones left to check.
+ * 
+ * Like {@link TaskPostings}, removed positions are collected and the lists
+ * renumbered in one pass on their next use. Lists left empty are dropped.
+ */
+class TrigramIndex {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// open addressing, a slot is free while its list is null
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private PostingList[] lists = new PostingList[INITIAL_CAPACITY];
+	private int count;
+	// the text each position was indexed with, to take it out again
+	private final ArrayList<String> texts = new ArrayList<String>();
+	// taken out since the lists were last renumbered
+	private final RemovedPositions removed = new RemovedPositions();
+	// reused between queries
+	private PostingList[] matched = new PostingList[16];
+	private int[] scratch = new int[0];
+
+	public void clear() {
+		keys = new long[INITIAL_CAPACITY];
+		lists = new PostingList[INITIAL_CAPACITY];
+		count = 0;
+		texts.clear();
+		removed.clear();
+	}
+
+	/**
+	 * Indexes the text of the task appended to the list
+	 */
+	public void added(String text) {
+		renumber();
+		texts.add(text);
+		index(texts.size() - 1, text);
+	}
+
+	public void changed(int position, String text) {
+		String old = texts.set(position, text);
+		if (!old.equals(text)) {
+			renumber();
+			unindex(position, old);
+			index(position, text);
+		}
+	}
+
+	public void removed(int position) {
+		texts.remove(position);
+		removed.add(position);
+	}
+
+	/**
+	 * @return the number of distinct trigrams in the texts
+	 */
+	public int size() {
+		renumber();
+		return count;
+	}
+
+	/**
+	 * @return the positions of the texts that have all trigrams of the terms
+	 *         in ascending order, or null if no term is long enough to have
+	 *         any
+	 */
+	public int[] candidates(String[] terms) {
+		renumber();
+		int n = 0;
+		for (String term : terms) {
+			for (int i = 0; i + 3 <= term.length(); i++) {
+				PostingList list = get(trigram(term, i));
+				if (list == null) {
+					return new int[0];
+				}
+				if (n == matched.length) {
+					PostingList[] grown = new PostingList[n * 2];
+					System.arraycopy(matched, 0, grown, 0, n);
+					matched = grown;
+				}
+				matched[n++] = list;
+			}
+		}
+		if (n == 0) {
+			return null;
+		}
+		// shortest first, so the intersection shrinks as fast as it can
+		for (int i = 1; i < n; i++) {
+			PostingList list = matched[i];
+			int j = i;
+			while (j > 0 && matched[j - 1].size > list.size) {
+				matched[j] = matched[j - 1];
+				j--;
+			}
+			matched[j] = list;
+		}
+		PostingList shortest = matched[0];
+		if (scratch.length < shortest.size) {
+			scratch = new int[shortest.size];
+		}
+		System.arraycopy(shortest.positions, 0, scratch, 0, shortest.size);
+		int size = shortest.size;
+		for (int i = 1; i < n && size > 0; i++) {
+			size = retain(scratch, size, matched[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			matched[i] = null;
+		}
+		int[] result = new int[size];
+		System.arraycopy(scratch, 0, result, 0, size);
+		return result;
+	}
+
+	/**
+	 * Keeps the positions that are also in the list, in place
+	 * 
+	 * @return the number kept
+	 */
+	private static int retain(int[] positions, int size, PostingList list) {
+		int[] other = list.positions;
+		int i = 0, j = 0, n = 0;
+		while (i < size && j < list.size) {
+			if (positions[i] < other[j]) {
+				i++;
+			} else if (positions[i] > other[j]) {
+				j++;
+			} else {
+				positions[n++] = positions[i++];
+				j++;
+			}
+		}
+		return n;
+	}
+
+	private void index(int position, String text) {
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			long key = trigram(text, i);
+			PostingList list = get(key);
+			if (list == null) {
+				list = new PostingList();
+				put(key, list);
+			}
+			list.add(position);
+		}
+	}
+
+	private void unindex(int position, String text) {
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			long key = trigram(text, i);
+			int slot = slot(keys, lists, key);
+			if (lists[slot] != null && lists[slot].remove(position)) {
+				delete(slot);
+			}
+		}
+	}
+
+	/**
+	 * Takes the removed positions out of all lists, and brings the others
+	 * in line with the texts again
+	 */
+	private void renumber() {
+		if (removed.size() == 0) {
+			return;
+		}
+		PostingList gone = removed.sorted(texts.size());
+		boolean emptied = false;
+		for (PostingList list : lists) {
+			if (list != null && list.removeAll(gone)) {
+				emptied = true;
+			}
+		}
+		removed.clear();
+		if (emptied) {
+			rebuild(lists.length);
+		}
+	}
+
+	private static long trigram(String text, int i) {
+		return (long) text.charAt(i) << 32 | (long) text.charAt(i + 1) << 16
+				| text.charAt(i + 2);
+	}
+
+	private PostingList get(long key) {
+		return lists[slot(keys, lists, key)];
+	}
+
+	private void put(long key, PostingList list) {
+		if ((count + 1) * 2 > lists.length) {
+			rehash();
+		}
+		int slot = slot(keys, lists, key);
+		keys[slot] = key;
+		lists[slot] = list;
+		count++;
+	}
+
+	private void rehash() {
+		rebuild(lists.length * 2);
+	}
+
+	/**
+	 * Moves the lists to a new table, leaving out the empty ones
+	 */
+	private void rebuild(int capacity) {
+		long[] oldKeys = keys;
+		PostingList[] oldLists = lists;
+		keys = new long[capacity];
+		lists = new PostingList[capacity];
+		count = 0;
+		for (int i = 0; i < oldLists.length; i++) {
+			if (oldLists[i] != null && oldLists[i].size > 0) {
+				int slot = slot(keys, lists, oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				lists[slot] = oldLists[i];
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * Frees the slot, moving up the entries after it that would no longer
+	 * be found past the gap
+	 */
+	private void delete(int slot) {
+		int mask = lists.length - 1;
+		int free = slot;
+		lists[free] = null;
+		for (int i = (free + 1) & mask; lists[i] != null; i = (i + 1) & mask) {
+			int home = home(keys[i], mask);
+			// the entry may fill the gap if its home is not after it
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				lists[free] = lists[i];
+				lists[i] = null;
+				free = i;
+			}
+		}
+		count--;
+	}
+
+	/**
+	 * @return the slot holding the key, or the free slot it would go in
+	 */
+	private static int slot(long[] keys, PostingList[] lists, long key) {
+		int mask = lists.length - 1;
+		int slot = home(key, mask);
+		while (lists[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int home(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & mask;
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Codec between the fixed width yyyy-MM-dd dates of todo.txt and epoch days,
+ * the number of days since 1970-01-01. Works on primitives only, so no
+ * SimpleDateFormat or Calendar is created per date.
+ */
+public final class Dates {
+	/**
+	 * Epoch day value for "no date"
+	 */
+	public static final int NONE = Integer.MIN_VALUE;
+
+	public static final int LENGTH = 10;
+
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	private static final int DAYS_PER_ERA = 146097;
+	private static final int DAYS_0000_TO_1970 = 719468;
+
+	private Dates() {
+	}
+
+	/**
+	 * Parses a yyyy-MM-dd date at the given offset. Out of range months and
+	 * days roll over the way a lenient SimpleDateFormat does.
+	 * 
+	 * @param s
+	 *            the string containing the date
+	 * @param offset
+	 *            the index of the first year digit
+	 * @return the epoch day or {@link #NONE} if there is no date at offset
+	 */
+	public static int parse(CharSequence s, int offset) {
+		if (s == null || offset < 0 || offset + LENGTH > s.length()
+				|| s.charAt(offset + 4) != '-' || s.charAt(offset + 7) != '-') {
+			return NONE;
+		}
+		int year = digits(s, offset, 4);
+		int month = digits(s, offset + 5, 2);
+		int day = digits(s, offset + 8, 2);
+		if (year < 0 || month < 0 || day < 0) {
+			return NONE;
+		}
+		return toEpochDay(year, month, day);
+	}
+
+	public static int parse(CharSequence s) {
+		if (s == null || s.length() != LENGTH) {
+			return NONE;
+		}
+		return parse(s, 0);
+	}
+
+	/**
+	 * Formats an epoch day as yyyy-MM-dd, or "" for {@link #NONE}
+	 */
+	public static String format(int epochDay) {
+		if (epochDay == NONE) {
+			return "";
+		}
+		char[] buf = new char[LENGTH];
+		format(epochDay, buf, 0);
+		return new String(buf);
+	}
+
+	/**
+	 * Writes an epoch day as yyyy-MM-dd into buf at offset
+	 */
+	public static void format(int epochDay, char[] buf, int offset) {
+		int ymd = toYearMonthDay(epochDay);
+		writeDigits(ymd / 10000, buf, offset, 4);
+		buf[offset + 4] = '-';
+		writeDigits(ymd / 100 % 100, buf, offset + 5, 2);
+		buf[offset + 7] = '-';
+		writeDigits(ymd % 100, buf, offset + 8, 2);
+	}
+
+	/**
+	 * Splits an epoch day into its calendar fields
+	 * 
+	 * @return the date as a yyyyMMdd number, e.g. 20110228
+	 */
+	public static int toYearMonthDay(int epochDay) {
+		// civil_from_days, see http://howardhinnant.github.io/date_algorithms.html
+		int z = epochDay + DAYS_0000_TO_1970;
+		int era = floorDiv(z, DAYS_PER_ERA);
+		int doe = z - era * DAYS_PER_ERA;
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		return year * 10000 + month * 100 + day;
+	}
+
+	public static int toEpochDay(int year, int month, int day) {
+		// days_from_civil, with month normalized first
+		int m0 = month - 1;
+		year += floorDiv(m0, 12);
+		month = m0 - floorDiv(m0, 12) * 12 + 1;
+
+		int y = month <= 2 ? year - 1 : year;
+		int era = floorDiv(y, 400);
+		int yoe = y - era * 400;
+		int mp = month > 2 ? month - 3 : month + 9;
+		int doy = (153 * mp + 2) / 5;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * DAYS_PER_ERA + doe - DAYS_0000_TO_1970 + day - 1;
+	}
+
+	/**
+	 * The epoch day of the given instant in the default time zone
+	 */
+	public static int toEpochDay(Date date) {
+		return toEpochDay(date.getTime(), TimeZone.getDefault());
+	}
+
+	public static int toEpochDay(long millis, TimeZone zone) {
+		long local = millis + zone.getOffset(millis);
+		return (int) floorDiv(local, MILLIS_PER_DAY);
+	}
+
+	private static int digits(CharSequence s, int offset, int count) {
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static void writeDigits(int value, char[] buf, int offset,
+			int count) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			buf[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static int floorDiv(int x, int y) {
+		int q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			q--;
+		}
+		return q;
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0)) {
+			q--;
+		}
+		return q;
+	}
+}
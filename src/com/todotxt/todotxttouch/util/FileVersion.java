@@ -0,0 +1,112 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * The size, modification time and content checksum of a file at one point
+ * in time. A different size tells that a file has changed, but the same
+ * size and time do not tell that it has not: FAT, as found on SD cards,
+ * keeps the time to two seconds only, so only the checksum can tell.
+ */
+public final class FileVersion {
+	private final long length;
+	private final long lastModified;
+	private final long checksum;
+
+	public FileVersion(long length, long lastModified, long checksum) {
+		this.length = length;
+		this.lastModified = lastModified;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * Takes the version of the file as it is now, reading it through once
+	 * 
+	 * @return the version, or null if the file does not exist
+	 */
+	public static FileVersion of(File file) throws IOException {
+		long lastModified = file.lastModified();
+		if (lastModified == 0 && !file.exists()) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		long length = 0;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[16 * 1024];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				crc.update(buffer, 0, read);
+				length += read;
+			}
+		} finally {
+			Util.closeStream(in);
+		}
+		return new FileVersion(length, lastModified, crc.getValue());
+	}
+
+	/**
+	 * Checks whether the file still holds this version. Unless the size
+	 * differs, the file is read through to compare its checksum.
+	 * 
+	 * @return this if the file is unchanged, the version with the new
+	 *         modification time if only that has changed, or null if the
+	 *         content differs
+	 */
+	public FileVersion check(File file) throws IOException {
+		if (file.length() != length) {
+			return null;
+		}
+		FileVersion current = of(file);
+		if (current == null || current.length != length
+				|| current.checksum != checksum) {
+			return null;
+		}
+		return current.lastModified == lastModified ? this : current;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public long lastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the CRC32 of the content
+	 */
+	public long checksum() {
+		return checksum;
+	}
+
+	@Override
+	public String toString() {
+		return length + " " + lastModified + " " + Long.toHexString(checksum);
+	}
+}
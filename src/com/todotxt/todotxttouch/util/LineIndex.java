@@ -0,0 +1,163 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.File;
+
+/**
+ * Where each task line of a todo file starts and ends, counted in bytes. The
+ * end of a line takes in its line break. Blank lines are not indexed, they
+ * sit in the gaps between the task lines, and whatever follows the last task
+ * line is the trailer.
+ * 
+ * The index remembers the size and modification time of the file it was
+ * taken from and is only good for as long as both still match. It also
+ * keeps the checksum of the content, taken while reading or writing it, so
+ * the file's {@link FileVersion} comes without reading it again.
+ */
+public class LineIndex {
+	// start and end of line i at 2 * i and 2 * i + 1
+	private long[] offsets = new long[128];
+	private int size;
+	private long length = -1;
+	private long lastModified;
+	private long checksum;
+
+	/**
+	 * Forgets all lines and the file they were taken from
+	 */
+	public void clear() {
+		size = 0;
+		length = -1;
+		checksum = 0;
+	}
+
+	/**
+	 * Takes the current size and modification time of the file, before
+	 * reading it or after writing it.
+	 */
+	public void stat(File file) {
+		length = file.length();
+		lastModified = file.lastModified();
+	}
+
+	/**
+	 * Takes the size, modification time and checksum of a version the file
+	 * was just checked to have
+	 */
+	public void setVersion(FileVersion version) {
+		length = version.length();
+		lastModified = version.lastModified();
+		checksum = version.checksum();
+	}
+
+	/**
+	 * Takes the CRC-32 of the file content, as it was read or written
+	 */
+	public void setChecksum(long checksum) {
+		this.checksum = checksum;
+	}
+
+	public void add(long start, long end) {
+		if (2 * size == offsets.length) {
+			long[] grown = new long[offsets.length * 2];
+			System.arraycopy(offsets, 0, grown, 0, offsets.length);
+			offsets = grown;
+		}
+		offsets[2 * size] = start;
+		offsets[2 * size + 1] = end;
+		size++;
+	}
+
+	/**
+	 * Forgets the lines from the given one on
+	 */
+	public void truncate(int lines) {
+		if (lines < size) {
+			size = lines;
+		}
+	}
+
+	/**
+	 * @return the number of task lines
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long start(int line) {
+		check(line);
+		return offsets[2 * line];
+	}
+
+	public long end(int line) {
+		check(line);
+		return offsets[2 * line + 1];
+	}
+
+	/**
+	 * @return where the gap before the line starts, the end of the line
+	 *         before it
+	 */
+	public long gapStart(int line) {
+		return line == 0 ? 0 : end(line - 1);
+	}
+
+	/**
+	 * @return where the trailer starts
+	 */
+	public long trailerStart() {
+		return size == 0 ? 0 : offsets[2 * size - 1];
+	}
+
+	/**
+	 * @return the size of the file when the index was taken
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return the version of the file the index was taken from, or null if
+	 *         there is none
+	 */
+	public FileVersion version() {
+		return length < 0 ? null : new FileVersion(length, lastModified,
+				checksum);
+	}
+
+	/**
+	 * @return true if the file has not changed since the index was taken
+	 */
+	public boolean matches(File file) {
+		return length >= 0 && length == file.length()
+				&& lastModified == file.lastModified();
+	}
+
+	private void check(int line) {
+		if (line < 0 || line >= size) {
+			throw new IndexOutOfBoundsException("line " + line + ", size "
+					+ size);
+		}
+	}
+}
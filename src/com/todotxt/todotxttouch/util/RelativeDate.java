@@ -5,50 +5,68 @@
  */
 package com.todotxt.todotxttouch.util;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import android.content.Context;
+import android.util.SparseArray;
 
 import com.todotxt.todotxttouch.R;
-import com.todotxt.todotxttouch.TodoApplication;
 
 public class RelativeDate {
 
-	private static SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-	private static Context context = TodoApplication.getAppContetxt();
-	
-	
 	/**
-	 * This method computes the relative date according to the Calendar being
-	 * passed in and the number of years, months, days, etc. that differ. This
+	 * Source of the current time, replaceable for testing
+	 */
+	public interface Clock {
+		long currentTimeMillis();
+	}
+
+	public static final Clock SYSTEM_CLOCK = new Clock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+
+	private final Context context;
+	private final Clock clock;
+	private final SparseArray<String> cache = new SparseArray<String>();
+	private int today = Dates.NONE;
+
+	public RelativeDate(Context context) {
+		this(context, SYSTEM_CLOCK);
+	}
+
+	public RelativeDate(Context context, Clock clock) {
+		this.context = context;
+		this.clock = clock;
+	}
+
+	/**
+	 * This method computes the relative date according to the date being
+	 * passed in and the number of years, months and days that differ. This
 	 * will compute both past and future relative dates. E.g., "one day ago" and
 	 * "one day from now".
 	 * <p>
-	 * <strong>NOTE:</strong> If the calendar date relative to "now" is older
-	 * than one day, we display the actual date in its default format as
-	 * specified by this class. The date format may be changed by calling
-	 * {@link RelativeDate#setDateFormat(SimpleDateFormat)} If you don't want to
-	 * show the actual date, but you want to show the relative date for days,
-	 * months, and years, you can add the other cases in by copying the logic
-	 * for hours, minutes, seconds.
+	 * <strong>NOTE:</strong> If the date relative to "now" is older than one
+	 * day, we display the actual date in yyyy-MM-dd format. If you don't want
+	 * to show the actual date, but you want to show the relative date for
+	 * days, months, and years, you can add the other cases in by copying the
+	 * logic for days and months.
 	 * 
-	 * @param calendar
+	 * @param epochDay
 	 * @param years
 	 * @param months
 	 * @param days
-	 * @param hours
-	 * @param minutes
-	 * @param seconds
+	 * @param nowMonth
+	 *            the current month, 0 based like Calendar.MONTH
 	 * @return String representing the relative date
 	 */
 
-	private static String computeRelativeDate(Calendar calendar, int years,
-			int months, int days, int hours, int minutes, int seconds) {
-		
-		String date = sdf.format(calendar.getTime());
+	private String computeRelativeDate(int epochDay, int years, int months,
+			int days, int nowMonth) {
+
+		String date = Dates.format(epochDay);
 
 		if (years == 0 && months == 0) {
 			if (days < -1)
@@ -56,10 +74,10 @@ public class RelativeDate {
 			else if (days == -1)
 				return context.getString(R.string.dates_one_day_ago);
 			else if (days == 0)
-				return context.getString(R.string.dates_today);		} else if (years == 0 || years == -1) {
+				return context.getString(R.string.dates_today);
+		} else if (years == 0 || years == -1) {
 			if (years == -1) {
-				months = 11 - months
-						+ Calendar.getInstance().get(Calendar.MONTH);
+				months = 11 - months + nowMonth;
 				if (months == 1)
 					return context.getString(R.string.dates_one_month_ago);
 				else
@@ -79,58 +97,36 @@ public class RelativeDate {
 
 	/**
 	 * This method returns a String representing the relative date by comparing
-	 * the Calendar being passed in to the date / time that it is right now.
+	 * the day being passed in to the current day. Results are cached until the
+	 * current day changes, so this is cheap enough to call while rendering.
 	 * 
-	 * @param calendar
+	 * @param epochDay
+	 *            days since 1970-01-01, see {@link Dates}
 	 * @return String representing the relative date
 	 */
 
-	public static String getRelativeDate(Calendar calendar) {
-
-		Calendar now = GregorianCalendar.getInstance();
-
-		int years = calendar.get(Calendar.YEAR) - now.get(Calendar.YEAR);
-		int months = calendar.get(Calendar.MONTH) - now.get(Calendar.MONTH);
-		int days = calendar.get(Calendar.DAY_OF_MONTH)
-				- now.get(Calendar.DAY_OF_MONTH);
-		int hours = calendar.get(Calendar.HOUR_OF_DAY)
-				- now.get(Calendar.HOUR_OF_DAY);
-		int minutes = calendar.get(Calendar.MINUTE) - now.get(Calendar.MINUTE);
-		int seconds = calendar.get(Calendar.SECOND) - now.get(Calendar.SECOND);
-
-		return computeRelativeDate(calendar, years, months, days, hours,
-				minutes, seconds);
-
-	}
-
-	/**
-	 * This method returns a String representing the relative date by comparing
-	 * the Date being passed in to the date / time that it is right now.
-	 * 
-	 * @param date
-	 * @return String representing the relative date
-	 */
+	public synchronized String getRelativeDate(int epochDay) {
+		int now = Dates.toEpochDay(clock.currentTimeMillis(),
+				TimeZone.getDefault());
+		if (now != today) {
+			cache.clear();
+			today = now;
+		}
 
-	public static String getRelativeDate(Date date) {
-		Calendar converted = GregorianCalendar.getInstance();
-		converted.setTime(date);
-		return getRelativeDate(converted);
-	}
+		String relativeDate = cache.get(epochDay);
+		if (relativeDate == null) {
+			int then = Dates.toYearMonthDay(epochDay);
+			int current = Dates.toYearMonthDay(now);
 
-	/**
-	 * This method sets the date format. This is used when the relative date is
-	 * beyond one day. E.g., if the relative date is > 1 day, we will display
-	 * the date in the format: h:mm a MMM dd, yyyy
-	 * <p>
-	 * This can be changed by passing in a new simple date format and then
-	 * calling {@link RelativeDate#getRelativeDate(Calendar)} or
-	 * {@link RelativeDate#getRelativeDate(Date)}.
-	 * 
-	 * @param dateFormat
-	 */
+			int years = then / 10000 - current / 10000;
+			int months = then / 100 % 100 - current / 100 % 100;
+			int days = then % 100 - current % 100;
 
-	public static void setDateFormat(SimpleDateFormat dateFormat) {
-		sdf = dateFormat;
+			relativeDate = computeRelativeDate(epochDay, years, months, days,
+					current / 100 % 100 - 1);
+			cache.put(epochDay, relativeDate);
+		}
+		return relativeDate;
 	}
 
-}
\ No newline at end of file
+}
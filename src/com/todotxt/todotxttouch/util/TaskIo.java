@@ -22,15 +22,17 @@
  */
 package com.todotxt.todotxttouch.util;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import android.util.Log;
 
@@ -44,82 +46,220 @@ import com.todotxt.todotxttouch.task.Task;
 public class TaskIo {
 	private final static String TAG = TaskIo.class.getSimpleName();
 
+	/**
+	 * Inputs with fewer non-blank lines than this are always parsed on the
+	 * calling thread
+	 */
+	static final int PARALLEL_THRESHOLD = 2048;
+	private static final int BATCH_SIZE = 1024;
+
 	public static ArrayList<Task> loadTasksFromStream(InputStream is)
 			throws IOException {
-		ArrayList<Task> items = new ArrayList<Task>();
-		BufferedReader in = null;
+		return loadTasksFromStream(is, true);
+	}
+
+	/**
+	 * @param parallel
+	 *            parse large inputs on all available cores, the tasks are
+	 *            returned in line order either way
+	 */
+	public static ArrayList<Task> loadTasksFromStream(InputStream is,
+			boolean parallel) throws IOException {
+		TaskReader reader = new TaskReader(is);
 		try {
-			in = new BufferedReader(new InputStreamReader(is));
-			String line;
-			long counter = 0L;
-			while ((line = in.readLine()) != null) {
-				line = line.trim();
-				if (line.length() > 0) {
-					items.add(new Task(counter, line));
-				}
-				counter++;
-			}
+			return load(reader, parallel, null);
 		} finally {
-			Util.closeStream(in);
+			reader.close();
 			Util.closeStream(is);
 		}
-		return items;
 	}
 
 	public static ArrayList<Task> loadTasksFromFile(File file)
 			throws IOException {
-		ArrayList<Task> items = new ArrayList<Task>();
-		BufferedReader in = null;
+		return loadTasksFromFile(file, true);
+	}
+
+	public static ArrayList<Task> loadTasksFromFile(File file, boolean parallel)
+			throws IOException {
+		return loadTasksFromFile(file, parallel, null);
+	}
+
+	/**
+	 * Also records where each task line ends in the file, and its checksum
+	 * 
+	 * @param index
+	 *            cleared, then filled while reading
+	 */
+	public static ArrayList<Task> loadTasksFromFile(File file, LineIndex index)
+			throws IOException {
+		return loadTasksFromFile(file, true, index);
+	}
+
+	private static ArrayList<Task> loadTasksFromFile(File file,
+			boolean parallel, LineIndex index) throws IOException {
+		if (index != null) {
+			index.clear();
+			index.stat(file);
+		}
 		if (!file.exists()) {
 			Log.w(TAG, file.getAbsolutePath() + " does not exist!");
-		} else {
-			InputStream is = new FileInputStream(file);
-			try {
-				in = new BufferedReader(new InputStreamReader(is));
-				String line;
-				long counter = 0L;
-				while ((line = in.readLine()) != null) {
-					line = line.trim();
-					if (line.length() > 0) {
-						items.add(new Task(counter, line));
-					}
-					counter++;
-				}
-			} finally {
-				Util.closeStream(in);
-				Util.closeStream(is);
+			return new ArrayList<Task>();
+		}
+		TaskReader reader = new TaskReader(file);
+		try {
+			if (index == null) {
+				return load(reader, parallel, null);
 			}
+			reader.trackChecksum();
+			ArrayList<Task> tasks = load(reader, parallel, index);
+			index.setChecksum(reader.getChecksum());
+			return tasks;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Hands the tasks to the handler one at a time, without keeping them,
+	 * until the input ends or the handler returns <code>false</code>. The
+	 * stream is closed afterwards.
+	 */
+	public static void readTasks(InputStream is, TaskReader.Handler handler)
+			throws IOException {
+		TaskReader reader = new TaskReader(is);
+		try {
+			read(reader, handler);
+		} finally {
+			reader.close();
+			Util.closeStream(is);
+		}
+	}
+
+	public static void readTasks(File file, TaskReader.Handler handler)
+			throws IOException {
+		if (!file.exists()) {
+			Log.w(TAG, file.getAbsolutePath() + " does not exist!");
+			return;
+		}
+		TaskReader reader = new TaskReader(file);
+		try {
+			read(reader, handler);
+		} finally {
+			reader.close();
 		}
-		return items;
 	}
 
-	public static void writeToFile(List<Task> tasks, File file,
-			boolean useWindowsBreaks) {
-		writeToFile(tasks, file, false, useWindowsBreaks);
+	private static void read(TaskReader reader, TaskReader.Handler handler)
+			throws IOException {
+		Task task;
+		while ((task = reader.read()) != null) {
+			if (!handler.handle(task)) {
+				break;
+			}
+		}
+	}
+
+	private static ArrayList<Task> load(TaskReader reader, boolean parallel,
+			LineIndex index) throws IOException {
+		return parallel ? readParallel(reader, index) : readAll(reader, index);
+	}
+
+	private static ArrayList<Task> readAll(TaskReader reader, LineIndex index)
+			throws IOException {
+		ArrayList<Task> items = new ArrayList<Task>();
+		Task task;
+		while ((task = reader.read()) != null) {
+			items.add(task);
+			if (index != null) {
+				index.add(reader.getLineStart(), reader.getLineEnd());
+			}
+		}
+		return items;
 	}
 
-	public static void writeToFile(List<Task> tasks, File file,
-			boolean append, boolean useWindowsBreaks) {
+	/**
+	 * Reads the first lines and parses them on the calling thread if the
+	 * input ends below the threshold. Otherwise batches are handed to a pool
+	 * while the rest is still being read.
+	 */
+	private static ArrayList<Task> readParallel(TaskReader reader,
+			LineIndex index) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Batch first = Batch.read(reader, PARALLEL_THRESHOLD, index);
+		if (threads < 2 || first.size < PARALLEL_THRESHOLD) {
+			ArrayList<Task> items = first.parse();
+			items.addAll(readAll(reader, index));
+			return items;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
 		try {
-			if (!Util.isDeviceWritable()) {
-				throw new IOException("Device is not writable!");
+			List<Future<ArrayList<Task>>> batches = new ArrayList<Future<ArrayList<Task>>>();
+			batches.add(executor.submit(first));
+			Batch batch;
+			while ((batch = Batch.read(reader, BATCH_SIZE, index)).size > 0) {
+				batches.add(executor.submit(batch));
+			}
+			ArrayList<Task> items = new ArrayList<Task>();
+			for (Future<ArrayList<Task>> future : batches) {
+				items.addAll(future.get());
+			}
+			return items;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while parsing tasks");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
 			}
-			Util.createParentDirectory(file);
-			FileWriter fw = new FileWriter(file, append);
-			for (int i = 0; i < tasks.size(); ++i) {
-				String fileFormat = tasks.get(i).inFileFormat();
-				fw.write(fileFormat);
-				if (useWindowsBreaks) {
-					// Log.v(TAG, "Using Windows line breaks");
-					fw.write("\r\n");
-				} else {
-					// Log.v(TAG, "NOT using Windows line breaks");
-					fw.write("\n");
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Error parsing tasks", cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Consecutive non-blank lines with their line numbers
+	 */
+	private static class Batch implements Callable<ArrayList<Task>> {
+		final String[] lines;
+		final long[] lineNumbers;
+		int size;
+
+		private Batch(int capacity) {
+			lines = new String[capacity];
+			lineNumbers = new long[capacity];
+		}
+
+		static Batch read(TaskReader reader, int capacity, LineIndex index)
+				throws IOException {
+			Batch batch = new Batch(capacity);
+			String line;
+			while (batch.size < capacity && (line = reader.readLine()) != null) {
+				batch.lines[batch.size] = line;
+				batch.lineNumbers[batch.size] = reader.getLineNumber();
+				batch.size++;
+				if (index != null) {
+					index.add(reader.getLineStart(), reader.getLineEnd());
 				}
 			}
-			fw.close();
-		} catch (Exception e) {
-			Log.e(TAG, e.getMessage());
+			return batch;
+		}
+
+		ArrayList<Task> parse() {
+			ArrayList<Task> items = new ArrayList<Task>(size);
+			for (int i = 0; i < size; i++) {
+				items.add(new Task(lineNumbers[i], lines[i]));
+			}
+			return items;
+		}
+
+		@Override
+		public ArrayList<Task> call() {
+			return parse();
 		}
 	}
 }
@@ -0,0 +1,158 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import com.todotxt.todotxttouch.task.Task;
+
+/**
+ * Reads tasks one line at a time, so files of any size can be processed in
+ * constant memory. Blank lines are skipped, but still counted for the task
+ * ids, which are line numbers starting at 0.
+ */
+public class TaskReader implements Closeable {
+	// exactly one of these is set
+	private final Utf8LineReader bytes;
+	private final BufferedReader chars;
+	private long lineNumber = -1;
+	private long lineStart = -1;
+
+	/**
+	 * Reads UTF-8 encoded tasks from the stream
+	 */
+	public TaskReader(InputStream is) {
+		this.bytes = new Utf8LineReader(is);
+		this.chars = null;
+	}
+
+	/**
+	 * Reads UTF-8 encoded tasks from the file
+	 */
+	public TaskReader(File file) throws IOException {
+		this.bytes = new Utf8LineReader(file);
+		this.chars = null;
+	}
+
+	public TaskReader(Reader reader) {
+		this.bytes = null;
+		this.chars = reader instanceof BufferedReader ? (BufferedReader) reader
+				: new BufferedReader(reader);
+	}
+
+	/**
+	 * @return the next task, or null at the end of the input
+	 */
+	public Task read() throws IOException {
+		String line = readLine();
+		return line == null ? null : new Task(lineNumber, line);
+	}
+
+	/**
+	 * @return the next non-blank line, trimmed, or null at the end of the
+	 *         input
+	 */
+	public String readLine() throws IOException {
+		while (true) {
+			if (bytes != null) {
+				lineStart = bytes.getOffset();
+			}
+			String line = nextLine();
+			if (line == null) {
+				return null;
+			}
+			lineNumber++;
+			if (line.length() > 0) {
+				return line;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of the line last returned, which is the id its task
+	 *         gets
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return the byte offset of the line last returned, or -1 when reading
+	 *         from a Reader
+	 */
+	public long getLineStart() {
+		return lineStart;
+	}
+
+	/**
+	 * @return the byte offset just past the line last returned and its line
+	 *         break, or -1 when reading from a Reader
+	 */
+	public long getLineEnd() {
+		return bytes == null ? -1 : bytes.getOffset();
+	}
+
+	/**
+	 * Makes {@link #getChecksum()} available when reading bytes, must be
+	 * called before the first task is read
+	 */
+	public void trackChecksum() {
+		bytes.trackChecksum();
+	}
+
+	/**
+	 * @return the CRC-32 of the input, once it has been read through
+	 */
+	public long getChecksum() {
+		return bytes.getChecksum();
+	}
+
+	@Override
+	public void close() {
+		Util.closeStream(bytes);
+		Util.closeStream(chars);
+	}
+
+	private String nextLine() throws IOException {
+		if (bytes != null) {
+			return bytes.readLine();
+		}
+		String line = chars.readLine();
+		return line == null ? null : line.trim();
+	}
+
+	/**
+	 * Receives tasks from {@link TaskIo#readTasks(InputStream, Handler)}
+	 */
+	public interface Handler {
+		/**
+		 * @return <code>false</code> to stop reading
+		 */
+		boolean handle(Task task);
+	}
+}
@@ -0,0 +1,496 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+import com.todotxt.todotxttouch.task.Task;
+
+/**
+ * Writes tasks as UTF-8 lines. All lines are encoded into one reusable buffer
+ * and written with a single call. Replacing a file goes through a temporary
+ * file that is renamed over the target, so an interrupted write leaves
+ * either the old or the new list, never a truncated one.
+ * 
+ * A file can also be patched in place from its first changed line on, see
+ * {@link #patch(File, LineIndex, FileVersion, List, int[])}.
+ */
+public class TaskWriter {
+	private final static String TAG = TaskWriter.class.getSimpleName();
+
+	/**
+	 * What is flushed to the storage device before a write returns
+	 */
+	public enum Sync {
+		/** leave it to the kernel */
+		NONE,
+		/** the file contents */
+		FILE;
+
+		/**
+		 * @return the named mode, or the default FILE for unknown names
+		 */
+		public static Sync fromName(String name) {
+			for (Sync sync : values()) {
+				if (sync.name().equalsIgnoreCase(name)) {
+					return sync;
+				}
+			}
+			return FILE;
+		}
+	}
+
+	/**
+	 * Told about the new content of a file before the file is replaced or
+	 * patched with it
+	 */
+	public interface Commit {
+		void committing(long length, long checksum) throws IOException;
+	}
+
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String PATCH_SUFFIX = ".patch";
+
+	private final boolean useWindowsBreaks;
+	private final Sync sync;
+	private byte[] buffer = new byte[8 * 1024];
+	private int length;
+
+	public TaskWriter(boolean useWindowsBreaks, Sync sync) {
+		this.useWindowsBreaks = useWindowsBreaks;
+		this.sync = sync;
+	}
+
+	/**
+	 * Replaces the contents of the file with the tasks.
+	 */
+	public synchronized void write(List<Task> tasks, File file)
+			throws IOException {
+		write(tasks, file, null);
+	}
+
+	/**
+	 * Replaces the contents of the file with the tasks.
+	 * 
+	 * @param index
+	 *            cleared, then filled with the lines written and their
+	 *            checksum
+	 */
+	public synchronized void write(List<Task> tasks, File file,
+			LineIndex index) throws IOException {
+		write(tasks, file, index, null);
+	}
+
+	/**
+	 * Replaces the contents of the file with the tasks.
+	 * 
+	 * @param index
+	 *            cleared, then filled with the lines written and their
+	 *            checksum
+	 * @param commit
+	 *            told the size and checksum of the new contents just before
+	 *            the file is replaced, may be null
+	 */
+	public synchronized void write(List<Task> tasks, File file,
+			LineIndex index, Commit commit) throws IOException {
+		checkWritable(file);
+		if (index != null) {
+			index.clear();
+		}
+		encode(tasks, index);
+		File temp = new File(file.getParentFile(), file.getName()
+				+ TEMP_SUFFIX);
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(buffer, 0, length);
+			if (sync != Sync.NONE) {
+				out.getFD().sync();
+			}
+		} catch (IOException e) {
+			Util.closeStream(out);
+			temp.delete();
+			throw e;
+		}
+		out.close();
+		CRC32 crc = new CRC32();
+		crc.update(buffer, 0, length);
+		try {
+			if (commit != null) {
+				commit.committing(length, crc.getValue());
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Could not rename " + temp + " to " + file);
+		}
+		if (index != null) {
+			index.stat(file);
+			index.setChecksum(crc.getValue());
+		}
+	}
+
+	/**
+	 * Adds the tasks to the end of the file.
+	 */
+	public synchronized void append(List<Task> tasks, File file)
+			throws IOException {
+		checkWritable(file);
+		encode(tasks, null);
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(buffer, 0, length);
+			if (sync != Sync.NONE) {
+				out.getFD().sync();
+			}
+		} finally {
+			Util.closeStream(out);
+		}
+	}
+
+	/**
+	 * Changes the file to hold the given lines, rewriting it only from the
+	 * first line that differs. Lines added at the end are simply appended.
+	 * Unchanged lines are copied byte for byte, and the blank lines before a
+	 * line that is kept or changed stay where they are, as do those at the
+	 * end of the file.
+	 * 
+	 * The new bytes go to a patch file before the file is touched, so that
+	 * {@link #recover(File)} can finish an interrupted patch.
+	 * 
+	 * The whole file is read to make sure it still holds the given version,
+	 * since the line index alone cannot tell a file rewritten to the same
+	 * size within the same second.
+	 * 
+	 * @param index
+	 *            of the file as it is now, it describes the patched file
+	 *            afterwards
+	 * @param version
+	 *            the file the index and lines belong to
+	 * @param lines
+	 *            the new text of each line, or null where the line is an
+	 *            unchanged copy of its origin
+	 * @param origins
+	 *            for each line, the index of the file line it comes from, or
+	 *            -1 if it is new
+	 * @return the version of the patched file, the given one if nothing had
+	 *         to be written, or null if the file no longer held the given
+	 *         version and was left alone
+	 */
+	public synchronized FileVersion patch(File file, LineIndex index,
+			FileVersion version, List<String> lines, int[] origins)
+			throws IOException {
+		return patch(file, index, version, lines, origins, null);
+	}
+
+	/**
+	 * Like {@link #patch(File, LineIndex, FileVersion, List, int[])}
+	 * 
+	 * @param commit
+	 *            told the size and checksum of the patched file before the
+	 *            file is touched, not at all if nothing has to be written;
+	 *            may be null
+	 */
+	public synchronized FileVersion patch(File file, LineIndex index,
+			FileVersion version, List<String> lines, int[] origins,
+			Commit commit) throws IOException {
+		int count = lines.size();
+		int indexed = index.size();
+		int first = 0;
+		while (first < count && first < indexed && origins[first] == first
+				&& lines.get(first) == null) {
+			first++;
+		}
+		if (first == count && first == indexed) {
+			return version;
+		}
+		checkWritable(file);
+		long fileLength = index.length();
+		long offset = first < indexed ? index.gapStart(first) : index
+				.trailerStart();
+		// from the byte before the patch on, to see whether it ends a line
+		long readFrom = Math.max(0, offset - 1);
+		byte[] old = new byte[(int) (fileLength - readFrom)];
+		// of the file as it is, and of the part before the patch
+		CRC32 before = new CRC32();
+		CRC32 after = new CRC32();
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if (in.length() != fileLength || fileLength != version.length()) {
+				return null;
+			}
+			byte[] chunk = new byte[16 * 1024];
+			for (long position = 0; position < readFrom;) {
+				int read = (int) Math.min(chunk.length, readFrom - position);
+				in.readFully(chunk, 0, read);
+				before.update(chunk, 0, read);
+				after.update(chunk, 0, read);
+				position += read;
+			}
+			in.readFully(old);
+		} finally {
+			Util.closeStream(in);
+		}
+		before.update(old);
+		if (before.getValue() != version.checksum()) {
+			return null;
+		}
+		after.update(old, 0, (int) (offset - readFrom));
+		boolean open = offset > 0 && !isLineBreak(old[0]);
+		long[] starts = new long[count - first];
+		long[] ends = new long[count - first];
+		length = 0;
+		for (int i = first; i < count; i++) {
+			if (open) {
+				putLineBreak();
+				open = false;
+			}
+			int origin = origins[i];
+			String line = lines.get(i);
+			if (origin >= 0) {
+				put(old, (int) (index.gapStart(origin) - readFrom),
+						(int) (index.start(origin) - readFrom));
+			}
+			starts[i - first] = offset + length;
+			if (line == null) {
+				int to = (int) (index.end(origin) - readFrom);
+				put(old, (int) (index.start(origin) - readFrom), to);
+				// only the last line of a file can lack a line break
+				open = !isLineBreak(old[to - 1]);
+			} else {
+				encode(line);
+				putLineBreak();
+			}
+			ends[i - first] = offset + length;
+		}
+		int trailer = (int) (index.trailerStart() - readFrom);
+		if (trailer < old.length) {
+			if (open) {
+				putLineBreak();
+			}
+			put(old, trailer, old.length);
+		}
+
+		after.update(buffer, 0, length);
+		if (commit != null) {
+			commit.committing(offset + length, after.getValue());
+		}
+		File patchFile = new File(file.getParentFile(), file.getName()
+				+ PATCH_SUFFIX);
+		writePatch(patchFile, offset);
+		apply(file, offset, buffer, length);
+		patchFile.delete();
+
+		index.truncate(first);
+		for (int i = 0; i < starts.length; i++) {
+			index.add(starts[i], ends[i]);
+		}
+		index.stat(file);
+		index.setChecksum(after.getValue());
+		return index.version();
+	}
+
+	/**
+	 * Finishes a patch of the file that was interrupted after its patch file
+	 * was complete. An incomplete patch file is dropped, the file has not
+	 * been touched yet in that case.
+	 * 
+	 * @return true if the file was patched
+	 */
+	public synchronized boolean recover(File file) throws IOException {
+		File patchFile = new File(file.getParentFile(), file.getName()
+				+ PATCH_SUFFIX);
+		if (!patchFile.exists()) {
+			return false;
+		}
+		long offset = -1;
+		byte[] bytes = null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(patchFile)));
+		try {
+			offset = in.readLong();
+			int size = in.readInt();
+			if (offset >= 0 && size >= 0 && size <= patchFile.length()) {
+				bytes = new byte[size];
+				in.readFully(bytes);
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				if (crc.getValue() != in.readLong()) {
+					bytes = null;
+				}
+			}
+		} catch (EOFException e) {
+			bytes = null;
+		} finally {
+			Util.closeStream(in);
+		}
+		if (bytes != null) {
+			Log.w(TAG, "Finishing interrupted patch of " + file);
+			apply(file, offset, bytes, bytes.length);
+		} else {
+			Log.w(TAG, "Dropping incomplete patch of " + file);
+		}
+		patchFile.delete();
+		return bytes != null;
+	}
+
+	// offset, size, the encoded bytes and their CRC-32
+	private void writePatch(File patchFile, long offset) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(buffer, 0, length);
+		FileOutputStream stream = new FileOutputStream(patchFile);
+		try {
+			DataOutputStream out = new DataOutputStream(stream);
+			out.writeLong(offset);
+			out.writeInt(length);
+			out.write(buffer, 0, length);
+			out.writeLong(crc.getValue());
+			out.flush();
+			if (sync != Sync.NONE) {
+				stream.getFD().sync();
+			}
+		} finally {
+			Util.closeStream(stream);
+		}
+	}
+
+	private void apply(File file, long offset, byte[] bytes, int size)
+			throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.seek(offset);
+			out.write(bytes, 0, size);
+			out.setLength(offset + size);
+			if (sync != Sync.NONE) {
+				out.getFD().sync();
+			}
+		} finally {
+			Util.closeStream(out);
+		}
+	}
+
+	private static boolean isLineBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	private static void checkWritable(File file) throws IOException {
+		if (!Util.isDeviceWritable()) {
+			throw new IOException("Device is not writable!");
+		}
+		Util.createParentDirectory(file);
+	}
+
+	private void encode(List<Task> tasks, LineIndex index) {
+		length = 0;
+		for (int i = 0; i < tasks.size(); ++i) {
+			int start = length;
+			encode(tasks.get(i).inFileFormat());
+			putLineBreak();
+			if (index != null) {
+				index.add(start, length);
+			}
+		}
+	}
+
+	private void putLineBreak() {
+		if (useWindowsBreaks) {
+			put((byte) '\r');
+		}
+		put((byte) '\n');
+	}
+
+	// UTF-8, unpaired surrogates become '?' as with String.getBytes()
+	private void encode(String s) {
+		int n = s.length();
+		ensureCapacity(length + n);
+		int i = 0;
+		// ASCII fast path
+		while (i < n) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				break;
+			}
+			buffer[length++] = (byte) c;
+			i++;
+		}
+		for (; i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				put((byte) c);
+			} else if (c < 0x800) {
+				ensureCapacity(length + 2);
+				buffer[length++] = (byte) (0xc0 | (c >> 6));
+				buffer[length++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				ensureCapacity(length + 4);
+				buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+			} else if (c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE) {
+				put((byte) '?');
+			} else {
+				ensureCapacity(length + 3);
+				buffer[length++] = (byte) (0xe0 | (c >> 12));
+				buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	private void put(byte b) {
+		ensureCapacity(length + 1);
+		buffer[length++] = b;
+	}
+
+	private void put(byte[] bytes, int from, int to) {
+		ensureCapacity(length + to - from);
+		System.arraycopy(bytes, from, buffer, length, to - from);
+		length += to - from;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			byte[] grown = new byte[Math.max(buffer.length * 2, capacity)];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+	}
+}
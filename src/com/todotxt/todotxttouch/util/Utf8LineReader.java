@@ -0,0 +1,246 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.CRC32;
+
+/**
+ * Splits UTF-8 encoded bytes into trimmed lines without going through a
+ * Reader. Lines end at "\n", "\r\n" or "\r", as with
+ * {@link java.io.BufferedReader#readLine()}. Leading and trailing whitespace
+ * is cut off the bytes before decoding, and lines that are pure ASCII are
+ * decoded without a CharsetDecoder.
+ * 
+ * Large files are memory-mapped, streams are read through one reusable
+ * buffer.
+ */
+class Utf8LineReader implements Closeable {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// smaller files are cheaper to read than to map
+	private static final long MAP_THRESHOLD = 256 * 1024;
+
+	private final Closeable source;
+	private final InputStream in;
+	private ByteBuffer buffer;
+	private int position;
+	private int limit;
+	// offset of the first buffered byte in the input
+	private long base;
+	private char[] chars = new char[128];
+	private CharsetDecoder decoder;
+	// of the bytes read from the stream so far, if asked for
+	private CRC32 checksum;
+
+	Utf8LineReader(InputStream in) {
+		this.source = in;
+		this.in = in;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	Utf8LineReader(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		FileChannel channel = stream.getChannel();
+		long size = channel.size();
+		if (size >= MAP_THRESHOLD && size <= Integer.MAX_VALUE) {
+			this.source = stream;
+			this.in = null;
+			try {
+				this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+						size);
+			} catch (IOException e) {
+				Util.closeStream(stream);
+				throw e;
+			}
+			this.limit = (int) size;
+		} else {
+			this.source = stream;
+			this.in = stream;
+			this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * @return the next line with surrounding whitespace removed, or null at
+	 *         the end of the input
+	 */
+	public String readLine() throws IOException {
+		int scan = position;
+		while (true) {
+			for (int i = scan; i < limit; i++) {
+				byte b = buffer.get(i);
+				if (b == '\n' || b == '\r') {
+					String line = decode(position, i);
+					position = i + 1;
+					if (b == '\r' && (position < limit || fill())
+							&& buffer.get(position) == '\n') {
+						position++;
+					}
+					return line;
+				}
+			}
+			int scanned = limit - position;
+			if (!fill()) {
+				if (position == limit) {
+					return null;
+				}
+				String line = decode(position, limit);
+				position = limit;
+				return line;
+			}
+			scan = position + scanned;
+		}
+	}
+
+	/**
+	 * @return the byte offset just past the last line read, including its
+	 *         line break
+	 */
+	public long getOffset() {
+		return base + position;
+	}
+
+	/**
+	 * Makes {@link #getChecksum()} available, must be called before the
+	 * first line is read
+	 */
+	public void trackChecksum() {
+		checksum = new CRC32();
+	}
+
+	/**
+	 * @return the CRC-32 of the input, once it has been read through
+	 */
+	public long getChecksum() {
+		if (in != null) {
+			return checksum.getValue();
+		}
+		// mapped, so it is all there already
+		CRC32 crc = new CRC32();
+		ByteBuffer mapped = buffer.duplicate();
+		mapped.position(0);
+		byte[] chunk = new byte[BUFFER_SIZE];
+		for (int i = 0; i < limit; i += chunk.length) {
+			int length = Math.min(chunk.length, limit - i);
+			mapped.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+		return crc.getValue();
+	}
+
+	@Override
+	public void close() {
+		Util.closeStream(source);
+	}
+
+	/**
+	 * Moves the unread bytes to the front of the buffer and reads more.
+	 * 
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		if (in == null) {
+			return false;
+		}
+		byte[] bytes = buffer.array();
+		int remaining = limit - position;
+		if (remaining == bytes.length) {
+			// a line longer than the buffer
+			ByteBuffer grown = ByteBuffer.allocate(bytes.length * 2);
+			System.arraycopy(bytes, position, grown.array(), 0, remaining);
+			buffer = grown;
+			bytes = grown.array();
+		} else if (position > 0) {
+			System.arraycopy(bytes, position, bytes, 0, remaining);
+		}
+		base += position;
+		position = 0;
+		limit = remaining;
+		int read;
+		do {
+			read = in.read(bytes, limit, bytes.length - limit);
+		} while (read == 0);
+		if (read < 0) {
+			return false;
+		}
+		if (checksum != null) {
+			checksum.update(bytes, limit, read);
+		}
+		limit += read;
+		return true;
+	}
+
+	private String decode(int start, int end) {
+		// same as String.trim(), UTF-8 never encodes a non-ASCII char with
+		// bytes in this range
+		while (start < end && isWhitespace(buffer.get(start))) {
+			start++;
+		}
+		while (end > start && isWhitespace(buffer.get(end - 1))) {
+			end--;
+		}
+		int length = end - start;
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(start + i);
+			if (b < 0) {
+				return decodeUtf8(start, end);
+			}
+			chars[i] = (char) b;
+		}
+		return new String(chars, 0, length);
+	}
+
+	private String decodeUtf8(int start, int end) {
+		if (decoder == null) {
+			decoder = UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(end);
+		slice.position(start);
+		try {
+			return decoder.decode(slice).toString();
+		} catch (IOException e) {
+			// cannot happen with REPLACE
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b >= 0 && b <= ' ';
+	}
+}
@@ -117,4 +117,23 @@ public class ByContextFilterTest extends TestCase {
 		assertFalse("apply was not false",
 				filter.apply(new Task(1, "hello world @xyz")));
 	}
+
+	public void testFilter_doesNotInternNames() {
+		TagDictionary dictionary = TagDictionary.getInstance();
+		new ByContextFilter(Arrays.asList("neverUsedContext", "-"));
+		assertEquals(-1, dictionary.lookup("neverUsedContext"));
+		assertEquals(-1, dictionary.lookup("-"));
+	}
+
+	public void testFilter_unknownNameMatchesNothing() {
+		ByContextFilter filter = new ByContextFilter(
+				Arrays.asList("unknownContext"));
+		assertFalse("apply was not false",
+				filter.apply(new Task(1, "hello world")));
+		assertFalse("apply was not false",
+				filter.apply(new Task(1, "hello world @xyz")));
+		// known once a task has it
+		assertTrue("apply was not true",
+				filter.apply(new Task(1, "hello world @unknownContext")));
+	}
 }
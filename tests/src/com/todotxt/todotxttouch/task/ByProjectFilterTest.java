@@ -117,4 +117,23 @@ public class ByProjectFilterTest extends TestCase {
 		assertFalse("apply was not false",
 				filter.apply(new Task(1, "hello world +Test")));
 	}
+
+	public void testFilter_doesNotInternNames() {
+		TagDictionary dictionary = TagDictionary.getInstance();
+		new ByProjectFilter(Arrays.asList("neverUsedProject", "-"));
+		assertEquals(-1, dictionary.lookup("neverUsedProject"));
+		assertEquals(-1, dictionary.lookup("-"));
+	}
+
+	public void testFilter_unknownNameMatchesNothing() {
+		ByProjectFilter filter = new ByProjectFilter(
+				Arrays.asList("unknownProject"));
+		assertFalse("apply was not false",
+				filter.apply(new Task(1, "hello world")));
+		assertFalse("apply was not false",
+				filter.apply(new Task(1, "hello world +xyz")));
+		// known once a task has it
+		assertTrue("apply was not true",
+				filter.apply(new Task(1, "hello world +unknownProject")));
+	}
 }
@@ -0,0 +1,190 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+
+import android.os.FileObserver;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+public class LocalFileTaskRepositoryTest extends AndroidTestCase {
+	private static final File[] FILES = {
+			LocalFileTaskRepository.TODO_TXT_FILE,
+			LocalFileTaskRepository.DONE_TXT_FILE,
+			LocalFileTaskRepository.JOURNAL_FILE,
+			LocalFileTaskRepository.SNAPSHOT_FILE };
+
+	private LocalFileTaskRepository repository;
+	private volatile int changes;
+
+	protected void setUp() throws Exception {
+		// keep whatever the app has stored
+		for (File file : FILES) {
+			if (file.exists()) {
+				assertTrue(file.renameTo(backup(file)));
+			}
+		}
+		repository = new LocalFileTaskRepository(new TaskBagImpl.Preferences(
+				PreferenceManager.getDefaultSharedPreferences(getContext())));
+		repository.setOnChangeListener(
+				new LocalFileTaskRepository.OnChangeListener() {
+					@Override
+					public void onTodoFileChanged() {
+						changes++;
+					}
+				});
+		repository.init();
+		write("(A) first\nsecond\n", 10000);
+		repository.load();
+	}
+
+	protected void tearDown() throws Exception {
+		repository.purge();
+		for (File file : FILES) {
+			file.delete();
+			backup(file).renameTo(file);
+		}
+	}
+
+	private static File backup(File file) {
+		return new File(file.getPath() + ".testbackup");
+	}
+
+	private static void write(String text, long modified) throws IOException {
+		File file = LocalFileTaskRepository.TODO_TXT_FILE;
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+		assertTrue(file.setLastModified(modified));
+	}
+
+	/**
+	 * Delivers an event the way the observer thread would, and waits for
+	 * the writer thread to have looked at it
+	 */
+	private void event(int event, String path) throws Exception {
+		deliver(event, path);
+		awaitWriter();
+	}
+
+	private void deliver(int event, String path) throws Exception {
+		Field field = LocalFileTaskRepository.class
+				.getDeclaredField("observer");
+		field.setAccessible(true);
+		((FileObserver) field.get(repository)).onEvent(event, path);
+	}
+
+	private void awaitWriter() throws Exception {
+		Field field = LocalFileTaskRepository.class
+				.getDeclaredField("scheduler");
+		field.setAccessible(true);
+		((ExecutorService) field.get(repository)).submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}).get();
+	}
+
+	public void testTodoFileChanged_eventDoesNotWaitForLock()
+			throws Exception {
+		write("(B) first\nsecond\n", 20000);
+		Thread observerThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					deliver(FileObserver.CLOSE_WRITE, "todo.txt");
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		synchronized (repository) {
+			observerThread.start();
+			observerThread.join(5000);
+			assertFalse(observerThread.isAlive());
+			assertEquals(0, changes);
+		}
+		awaitWriter();
+		assertEquals(1, changes);
+	}
+
+	public void testTodoFileChanged_notAfterLoad() {
+		assertFalse(repository.todoFileChanged());
+		assertEquals(0, changes);
+	}
+
+	public void testTodoFileChanged_notAfterOwnWrite() throws Exception {
+		repository.store(repository.load());
+		event(FileObserver.CLOSE_WRITE, "todo.txt");
+		assertFalse(repository.todoFileChanged());
+		assertEquals(0, changes);
+	}
+
+	public void testTodoFileChanged_touchedFile() throws Exception {
+		LocalFileTaskRepository.TODO_TXT_FILE.setLastModified(20000);
+		event(FileObserver.CLOSE_WRITE, "todo.txt");
+		assertEquals(0, changes);
+		assertFalse(repository.todoFileChanged());
+	}
+
+	public void testTodoFileChanged_editedFile() throws Exception {
+		// same size, so only the checksum tells
+		write("(B) first\nsecond\n", 20000);
+		event(FileObserver.CLOSE_WRITE, "todo.txt");
+		assertEquals(1, changes);
+		// until loaded again
+		assertTrue(repository.todoFileChanged());
+		assertEquals("(B) first", repository.load().get(0).inFileFormat());
+		assertFalse(repository.todoFileChanged());
+	}
+
+	public void testTodoFileChanged_replacedFile() throws Exception {
+		write("(A) first\nsecond\nthird\n", 10000);
+		event(FileObserver.MOVED_TO, "todo.txt");
+		assertEquals(1, changes);
+	}
+
+	public void testTodoFileChanged_ignoresOtherFiles() throws Exception {
+		// the first check looks at the file, it may have been missed
+		assertFalse(repository.todoFileChanged());
+		write("(B) first\nsecond\n", 20000);
+		event(FileObserver.CLOSE_WRITE, "done.txt");
+		assertEquals(0, changes);
+		// nothing seen, so the file is not even looked at
+		assertFalse(repository.todoFileChanged());
+	}
+
+	public void testTodoFileChanged_checksFileWhenNotWatching()
+			throws Exception {
+		event(FileObserver.DELETE_SELF, null);
+		assertFalse(repository.todoFileChanged());
+		write("(B) first\nsecond\n", 20000);
+		assertTrue(repository.todoFileChanged());
+		assertEquals(0, changes);
+	}
+}
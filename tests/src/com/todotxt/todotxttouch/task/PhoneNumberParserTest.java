@@ -102,4 +102,30 @@ public class PhoneNumberParserTest extends TestCase {
 		assertTrue(numbers.contains("09364/54589"));
 		assertTrue(numbers.contains("09364/54590"));
 	}
+
+	public void test_tooFewDigits() {
+		Locale.setDefault(Locale.US);
+		String input = "call room 123 now";
+		List<String> numbers = PhoneNumberParser.getInstance().parse(input);
+		assertEquals(Collections.<String> emptyList(), numbers);
+	}
+
+	public void test_cachedResult() {
+		Locale.setDefault(Locale.US);
+		String input = "cached string with 408-555-1212";
+		List<String> first = PhoneNumberParser.getInstance().parse(input);
+		List<String> second = PhoneNumberParser.getInstance().parse(input);
+		assertEquals(1, first.size());
+		assertSame(first, second);
+	}
+
+	public void test_localeChangeInvalidatesCache() {
+		String input = "locale string with 09363/5987";
+		Locale.setDefault(Locale.GERMANY);
+		List<String> german = PhoneNumberParser.getInstance().parse(input);
+		Locale.setDefault(Locale.US);
+		List<String> us = PhoneNumberParser.getInstance().parse(input);
+		assertEquals(1, german.size());
+		assertFalse(german.equals(us));
+	}
 }
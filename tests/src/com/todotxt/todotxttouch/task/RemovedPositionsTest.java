@@ -0,0 +1,97 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RemovedPositionsTest extends TestCase {
+	private RemovedPositions removed;
+
+	@Override
+	protected void setUp() throws Exception {
+		removed = new RemovedPositions();
+	}
+
+	public void testSorted_fromTheBack() {
+		removed.add(7);
+		removed.add(4);
+		removed.add(0);
+		assertSorted(5, 0, 4, 7);
+	}
+
+	public void testSorted_fromTheFront() {
+		// the same position each time, the next task has moved up into it
+		removed.add(2);
+		removed.add(2);
+		removed.add(2);
+		assertSorted(3, 2, 3, 4);
+	}
+
+	public void testSorted_mixed() {
+		removed.add(3);
+		removed.add(0);
+		removed.add(5);
+		removed.add(1);
+		assertSorted(4, 0, 2, 3, 7);
+	}
+
+	public void testSorted_matchesRemovingOneByOne() {
+		Random random = new Random(42);
+		for (int run = 0; run < 50; run++) {
+			int n = 1 + random.nextInt(200);
+			ArrayList<Integer> list = new ArrayList<Integer>();
+			for (int i = 0; i < n; i++) {
+				list.add(i);
+			}
+			int k = random.nextInt(n + 1);
+			int[] expected = new int[k];
+			removed.clear();
+			for (int i = 0; i < k; i++) {
+				int position = random.nextInt(list.size());
+				expected[i] = list.remove(position);
+				removed.add(position);
+			}
+			Arrays.sort(expected);
+			assertSorted(list.size(), expected);
+		}
+	}
+
+	public void testClear() {
+		removed.add(1);
+		removed.add(1);
+		removed.clear();
+		assertEquals(0, removed.size());
+		removed.add(0);
+		assertSorted(1, 0);
+	}
+
+	private void assertSorted(int remaining, int... expected) {
+		PostingList sorted = removed.sorted(remaining);
+		assertEquals(Arrays.toString(expected), Arrays.toString(Arrays
+				.copyOf(sorted.positions, sorted.size)));
+	}
+}
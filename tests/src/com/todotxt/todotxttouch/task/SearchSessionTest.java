@@ -0,0 +1,117 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SearchSessionTest extends TestCase {
+	private static final List<Priority> NO_PRIORITIES = Collections
+			.emptyList();
+	private static final List<String> NONE = Collections.emptyList();
+
+	private ArrayList<Task> tasks;
+	private TaskPostings postings;
+	private SearchSession session;
+
+	@Override
+	protected void setUp() throws Exception {
+		tasks = new ArrayList<Task>();
+		tasks.add(new Task(0, "(A) plan meeting @work"));
+		tasks.add(new Task(1, "meet bob @home"));
+		tasks.add(new Task(2, "meeting notes @work"));
+		tasks.add(new Task(3, "read book"));
+		postings = new TaskPostings();
+		postings.reset(tasks);
+		session = new SearchSession();
+	}
+
+	public void testSelect() {
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meet");
+		assertSelected(1, 0, 1, 2);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meeting");
+		assertSelected(1, 0, 2);
+		session.setQuery(NO_PRIORITIES, Arrays.asList("work"), NONE,
+				"meeting");
+		assertSelected(1, 0, 2);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, null);
+		assertSelected(1, 0, 1, 2, 3);
+	}
+
+	public void testSelect_narrowsPreviousMatches() {
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meet");
+		assertSelected(1, 0, 1, 2);
+		// not told to the postings, so only a full search would see it
+		tasks.get(3).update("read meeting book");
+
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meeti");
+		assertSelected(1, 0, 2);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meeti plan");
+		assertSelected(1, 0);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meeti plan");
+		assertSelected(1, 0);
+	}
+
+	public void testSelect_widenedSearchesAgain() {
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meeting");
+		assertSelected(1, 0, 2);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meet");
+		assertSelected(1, 0, 1, 2);
+		session.setQuery(NO_PRIORITIES, Arrays.asList("home"), NONE, "meet");
+		assertSelected(1, 1);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meet");
+		assertSelected(1, 0, 1, 2);
+	}
+
+	public void testSelect_newVersionSearchesAgain() {
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meet");
+		assertSelected(1, 0, 1, 2);
+		Task task = tasks.get(3);
+		Priority priority = task.getPriority();
+		int[] contextIds = task.getContextIds();
+		int[] projectIds = task.getProjectIds();
+		task.update("read meeting book");
+		postings.changed(3, contextIds, projectIds, priority, task);
+		session.setQuery(NO_PRIORITIES, NONE, NONE, "meeting");
+		assertSelected(2, 0, 2, 3);
+	}
+
+	public void testNarrows() {
+		String[] meet = { "MEET" };
+		assertTrue(SearchSession.narrows(meet, new String[] { "MEETING" }));
+		assertTrue(SearchSession.narrows(meet, new String[] { "MEET", "BOB" }));
+		assertTrue(SearchSession.narrows(new String[] { "" }, meet));
+		assertFalse(SearchSession.narrows(meet, new String[] { "MEE" }));
+		assertFalse(SearchSession.narrows(new String[] { "MEET", "BOB" },
+				meet));
+	}
+
+	private void assertSelected(int version, int... expected) {
+		assertEquals(Arrays.toString(expected),
+				Arrays.toString(session.select(postings, version)));
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class TagDictionaryTest extends TestCase {
+
+	public void testIntern_sameNameSameId() {
+		TagDictionary dictionary = new TagDictionary();
+		int id = dictionary.intern("home");
+		assertEquals(id, dictionary.intern("home"));
+		assertEquals(id, dictionary.intern("at home now", 3, 7));
+		assertEquals(1, dictionary.size());
+		assertEquals("home", dictionary.get(id));
+	}
+
+	public void testIntern_denseIds() {
+		TagDictionary dictionary = new TagDictionary();
+		assertEquals(0, dictionary.intern("home"));
+		assertEquals(1, dictionary.intern("work"));
+		assertEquals(2, dictionary.intern("Home"));
+		assertEquals(3, dictionary.size());
+	}
+
+	public void testIntern_manyTags() {
+		TagDictionary dictionary = new TagDictionary();
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, dictionary.intern("tag" + i));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, dictionary.lookup("tag" + i));
+			assertEquals("tag" + i, dictionary.get(i));
+		}
+		assertEquals(1000, dictionary.size());
+	}
+
+	public void testLookup_unknown() {
+		TagDictionary dictionary = new TagDictionary();
+		dictionary.intern("home");
+		assertEquals(-1, dictionary.lookup("work"));
+		assertEquals(1, dictionary.size());
+	}
+
+	public void testGet_unknownId() {
+		TagDictionary dictionary = new TagDictionary();
+		try {
+			dictionary.get(0);
+			fail("expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	public void testAsList() {
+		TagDictionary dictionary = new TagDictionary();
+		int[] ids = dictionary.internAll(Arrays.asList("home", "work", "home"));
+		List<String> list = dictionary.asList(ids);
+		assertEquals(Arrays.asList("home", "work", "home"), list);
+		assertEquals(ids[0], ids[2]);
+		try {
+			list.add("phone");
+			fail("expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	public void testTask_sharesTagInstances() {
+		Task first = new Task(1, "call @phone");
+		Task second = new Task(2, "email @phone");
+		assertSame(first.getContexts().get(0), second.getContexts().get(0));
+		assertEquals(first.getContextIds()[0], second.getContextIds()[0]);
+	}
+
+	public void testSingleton_shared() {
+		TagDictionary dictionary = new TagDictionary();
+		int id = dictionary.intern("home");
+		int[] ids = dictionary.singleton(id);
+		assertEquals(1, ids.length);
+		assertEquals(id, ids[0]);
+		assertSame(ids, dictionary.singleton(id));
+		assertSame(ids, dictionary.internAll(Arrays.asList("home")));
+		assertSame(ids, dictionary.internSingleton("at home", 3, 7));
+	}
+
+	public void testIntern_concurrent() throws Exception {
+		final TagDictionary dictionary = new TagDictionary();
+		final int tags = 2000;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t * 37;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						// every thread interns every tag, in its own order
+						for (int i = 0; i < tags; i++) {
+							String name = "tag" + (i + offset) % tags;
+							int id = dictionary.intern(name);
+							if (!name.equals(dictionary.get(id))) {
+								throw new AssertionError(name + " got " + id);
+							}
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure.get());
+		assertEquals(tags, dictionary.size());
+		for (int id = 0; id < tags; id++) {
+			assertEquals(id, dictionary.lookup(dictionary.get(id)));
+		}
+	}
+}
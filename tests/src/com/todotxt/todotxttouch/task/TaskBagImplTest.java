@@ -23,9 +23,10 @@
 package com.todotxt.todotxttouch.task;
 
 import java.io.File;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import android.preference.PreferenceManager;
 import android.test.AndroidTestCase;
@@ -35,7 +36,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 	class TestLocalTaskRepository implements LocalTaskRepository {
 
 		@Override
-		public boolean todoFileModifiedSince(Date date) {
+		public boolean todoFileChanged() {
 			return false;
 		}
 
@@ -43,6 +44,30 @@ public class TaskBagImplTest extends AndroidTestCase {
 		public void store(ArrayList<Task> tasks) {
 		}
 
+		@Override
+		public void storeAdded(Task task) {
+		}
+
+		@Override
+		public void storeUpdated(int index, String line, Task task) {
+		}
+
+		@Override
+		public void storeDeleted(int index, String line) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void flushInBackground() {
+		}
+
+		@Override
+		public void compact() {
+		}
+
 		@Override
 		public void purge() {
 		}
@@ -86,6 +111,11 @@ public class TaskBagImplTest extends AndroidTestCase {
 		prefs = new TaskBagImpl.Preferences(PreferenceManager.getDefaultSharedPreferences(getContext()));
 	}
 
+	protected TaskBagImpl newTaskBag(TaskBagImpl.Preferences prefs,
+			LocalTaskRepository repo) {
+		return new TaskBagImpl(prefs, repo, null);
+	}
+
 	public void testReload() {
 		LocalTaskRepository repo = new TestLocalTaskRepository() {
 			public ArrayList<Task> load() {
@@ -96,7 +126,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 		list1.add(task1);
 		list1.add(task2);
 
-		TaskBagImpl taskBag = new TaskBagImpl(null, repo, null);
+		TaskBagImpl taskBag = newTaskBag(null, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -113,7 +143,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 		LocalTaskRepository repo = new TestLocalTaskRepository() {
 			boolean first = true;
 
-			public boolean todoFileModifiedSince(Date date) {
+			public boolean todoFileChanged() {
 				return !first;
 			}
 
@@ -130,7 +160,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 		list1.add(task1);
 		list2.add(task2);
 
-		TaskBagImpl taskBag = new TaskBagImpl(null, repo, null);
+		TaskBagImpl taskBag = newTaskBag(null, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -156,7 +186,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 		list1.add(task1);
 		list1.add(task2);
 
-		TaskBagImpl taskBag = new TaskBagImpl(null, repo, null);
+		TaskBagImpl taskBag = newTaskBag(null, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -169,13 +199,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 
 		taskBag.reload();
 
-		try {
-			Field listField = TaskBagImpl.class.getDeclaredField("tasks");
-			listField.setAccessible(true);
-			assertEquals(list1, listField.get(taskBag));
-		} catch (Exception e) {
-			fail(e.toString());
-		}
+		assertEquals(list1, taskBag.getTasks());
 	}
 
 	public void testAddAsTaskToNewList() {
@@ -185,7 +209,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 			}
 		};
 
-		TaskBagImpl taskBag = new TaskBagImpl(prefs, repo, null);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -206,7 +230,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 
 		list1.add(task1);
 		
-		TaskBagImpl taskBag = new TaskBagImpl(prefs, repo, null);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -230,7 +254,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 		list1.add(task1);
 		list1.add(task2);
 		
-		TaskBagImpl taskBag = new TaskBagImpl(prefs, repo, null);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -254,7 +278,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 
 		list1.add(task1);
 		
-		TaskBagImpl taskBag = new TaskBagImpl(prefs, repo, null);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -283,7 +307,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 		list1.add(task1);
 		list1.add(task2);
 		
-		TaskBagImpl taskBag = new TaskBagImpl(prefs, repo, null);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -304,7 +328,7 @@ public class TaskBagImplTest extends AndroidTestCase {
 
 		list1.add(task1);
 		
-		TaskBagImpl taskBag = new TaskBagImpl(prefs, repo, null);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
 
 		assertEquals(0, taskBag.size());
 
@@ -322,4 +346,215 @@ public class TaskBagImplTest extends AndroidTestCase {
 
 	}
 
+	public void testChangesAreStoredIncrementally() {
+		final ArrayList<String> changes = new ArrayList<String>();
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+
+			public void store(ArrayList<Task> tasks) {
+				changes.add("store");
+			}
+
+			public void storeAdded(Task task) {
+				changes.add("add " + task.inFileFormat());
+			}
+
+			public void storeUpdated(int index, String line, Task task) {
+				changes.add("update " + index + " " + line + " > "
+						+ task.inFileFormat());
+			}
+
+			public void storeDeleted(int index, String line) {
+				changes.add("delete " + index + " " + line);
+			}
+
+			public void flushInBackground() {
+				changes.add("flush");
+			}
+		};
+
+		list1.add(task1);
+		list1.add(task2);
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.addAsTask("third");
+		task2.update("second");
+		taskBag.update(task2);
+		taskBag.delete(task1);
+		taskBag.flush();
+
+		assertEquals(Arrays.asList("add third", "update 1 " + input2
+				+ " > second", "delete 0 " + input1, "flush"), changes);
+	}
+
+	public void testUnchangedTaskIsNotStored() {
+		final ArrayList<String> changes = new ArrayList<String>();
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+
+			public void storeUpdated(int index, String line, Task task) {
+				changes.add("update " + index + " " + task.inFileFormat());
+			}
+		};
+
+		list1.add(task1);
+		list1.add(task2);
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.reload();
+		Task task = taskBag.getTasks().get(1);
+		task.markIncomplete();
+		taskBag.update(task);
+		assertEquals(0, changes.size());
+
+		task.update("changed");
+		taskBag.update(task);
+		taskBag.update(task);
+		assertEquals(Arrays.asList("update 1 changed"), changes);
+	}
+
+	public void testFacets() {
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+		};
+
+		list1.add(new Task(1, "(B) call @phone +family"));
+		list1.add(new Task(2, "(A) write @computer +blog"));
+		list1.add(new Task(3, "buy milk @errands @phone"));
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.reload();
+
+		assertEquals(Arrays.asList(Priority.NONE, Priority.A, Priority.B),
+				taskBag.getPriorities());
+		assertEquals(Arrays.asList("-", "computer", "errands", "phone"),
+				taskBag.getContexts(true));
+		assertEquals(Arrays.asList("blog", "family"),
+				taskBag.getProjects(false));
+		assertEquals("[0, 1, 1, 2]", Arrays.toString(taskBag
+				.countContexts(taskBag.getContexts(true))));
+
+		taskBag.addAsTask("(A) email @computer @work");
+		Task write = taskBag.getTasks(null, Sort.TEXT_ASC.getComparator())
+				.get(3);
+		write.update("write more +blog");
+		taskBag.update(write);
+		taskBag.delete(new Task(1, "(B) call @phone +family"));
+
+		assertEquals(Arrays.asList(Priority.NONE, Priority.A),
+				taskBag.getPriorities());
+		assertEquals(Arrays.asList("-", "computer", "errands", "phone",
+				"work"), taskBag.getContexts(true));
+		assertEquals("[1, 1, 1, 1, 1]", Arrays.toString(taskBag
+				.countContexts(taskBag.getContexts(true))));
+		assertEquals("[2, 1, 0]", Arrays.toString(taskBag
+				.countProjects(Arrays.asList("-", "blog", "family"))));
+		assertEquals("[2, 1, 0]", Arrays.toString(taskBag
+				.countPriorities(Arrays.asList(Priority.NONE, Priority.A,
+						Priority.B))));
+	}
+
+	public void testSearch() {
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+		};
+
+		list1.add(task1);
+		list1.add(task2);
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.reload();
+
+		SearchSession session = new SearchSession();
+		List<Priority> priorities = new ArrayList<Priority>();
+		List<String> none = new ArrayList<String>();
+		session.setQuery(priorities, none, none, "curve");
+		assertEquals(2, taskBag.search(session, null).size());
+
+		taskBag.addAsTask("Curveball");
+		session.setQuery(priorities, none, none, "curveb");
+		assertEquals(1, taskBag.search(session, null).size());
+		session.setQuery(priorities, none, none, "curve balls");
+		assertEquals(2, taskBag.search(session, null).size());
+	}
+
+	public void testBulkChanges() {
+		final ArrayList<String> changes = new ArrayList<String>();
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				changes.add("load");
+				return list1;
+			}
+
+			public void storeAdded(Task task) {
+				changes.add("add " + task.inFileFormat());
+			}
+
+			public void storeUpdated(int index, String line, Task task) {
+				changes.add("update " + index + " " + task.inFileFormat());
+			}
+
+			public void storeDeleted(int index, String line) {
+				changes.add("delete " + index);
+			}
+		};
+
+		list1.add(task1);
+		list1.add(task2);
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.addAll(Arrays.asList("third", "fourth"));
+		assertEquals(4, taskBag.size());
+
+		List<Task> tasks = taskBag.getTasks();
+		List<Task> first = new ArrayList<Task>();
+		for (Task task : tasks) {
+			if (task.getText().equals("third") || task.getText().equals(input1)) {
+				first.add(task);
+			}
+		}
+		taskBag.completeAll(first);
+		for (Task task : taskBag.getTasks()) {
+			assertEquals(task.getText().equals("third")
+					|| task.getText().equals(input1), task.isCompleted());
+		}
+
+		taskBag.deleteAll(taskBag.getTasks());
+		assertEquals(0, taskBag.size());
+
+		assertEquals("load", changes.get(0));
+		assertEquals("add third", changes.get(1));
+		assertEquals("add fourth", changes.get(2));
+		assertTrue(changes.get(3).startsWith("update 0 x "));
+		assertTrue(changes.get(4).startsWith("update 2 x "));
+		assertEquals(
+				Arrays.asList("delete 3", "delete 2", "delete 1", "delete 0"),
+				changes.subList(5, changes.size()));
+	}
+
+	public void testBulkChanges_missingTask() {
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+		};
+		list1.add(task1);
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.reload();
+		try {
+			taskBag.deleteAll(Arrays.asList(task2, taskBag.getTasks().get(0)));
+			fail("expected TaskPersistException");
+		} catch (TaskPersistException e) {
+			// expected
+		}
+		assertEquals(0, taskBag.size());
+	}
 }
@@ -0,0 +1,131 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+public class TaskIndexTest extends TestCase {
+	private ArrayList<Task> tasks;
+	private TaskIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		tasks = new ArrayList<Task>();
+		tasks.add(new Task(0, "(A) first"));
+		tasks.add(new Task(1, "same"));
+		tasks.add(new Task(2, "second @home"));
+		tasks.add(new Task(4, "same"));
+		tasks.add(new Task(5, "third"));
+		index = new TaskIndex();
+		index.reset(tasks);
+	}
+
+	public void testFind_identity() {
+		for (int i = 0; i < tasks.size(); i++) {
+			assertEquals(i, index.find(tasks.get(i)));
+		}
+	}
+
+	public void testFind_copy() {
+		assertEquals(0, index.find(new Task(0, "(A) first")));
+		assertEquals(2, index.find(new Task(7, "second @home")));
+		assertEquals(-1, index.find(new Task(0, "(B) first")));
+		assertEquals(-1, index.find(new Task(0, "unknown")));
+	}
+
+	public void testFind_copyUsesOriginalText() {
+		Task copy = new Task(2, "second @home");
+		copy.update("second @work");
+		assertEquals(2, index.find(copy));
+	}
+
+	public void testFind_duplicates() {
+		assertEquals(1, index.find(new Task(1, "same")));
+		assertEquals(3, index.find(new Task(4, "same")));
+		// no id matches, so the first one
+		assertEquals(1, index.find(new Task(9, "same")));
+	}
+
+	public void testRemoved() {
+		assertEquals(4, index.find(tasks.get(4)));
+		index.removed(1, tasks.remove(1));
+		index.removed(0, tasks.remove(0));
+		assertEquals(2, index.find(tasks.get(2)));
+		assertEquals(1, index.find(new Task(4, "same")));
+		assertEquals(1, index.find(new Task(1, "same")));
+		assertEquals(-1, index.find(new Task(0, "(A) first")));
+		for (int i = 0; i < tasks.size(); i++) {
+			assertEquals(i, index.find(tasks.get(i)));
+		}
+	}
+
+	public void testAdded() {
+		index.find(tasks.get(0));
+		index.removed(2, tasks.remove(2));
+		Task added = new Task(6, "fourth");
+		tasks.add(added);
+		index.added(added);
+		assertEquals(4, index.find(added));
+		assertEquals(4, index.find(new Task(6, "fourth")));
+		assertEquals(3, index.find(tasks.get(3)));
+	}
+
+	public void testAdded_beforeFirstLookup() {
+		Task added = new Task(6, "fourth");
+		tasks.add(added);
+		index.added(added);
+		assertEquals(5, index.find(new Task(6, "fourth")));
+	}
+
+	public void testChanged() {
+		Task task = tasks.get(4);
+		index.find(task);
+		task.update("(C) third changed");
+		index.changed(task);
+		assertEquals(-1, index.find(new Task(5, "third")));
+		assertEquals(4, index.find(new Task(5, "(C) third changed")));
+		assertEquals(4, index.find(task));
+	}
+
+	public void testChanged_inPlaceBeforeUpdate() {
+		Task task = tasks.get(0);
+		index.find(task);
+		// as the list does when completing a task it was handed
+		task.markComplete(new Date());
+		index.changed(task);
+		assertEquals(0, index.find(task));
+		assertEquals(-1, index.find(new Task(0, "(A) first")));
+	}
+
+	public void testReset() {
+		index.find(tasks.get(0));
+		ArrayList<Task> other = new ArrayList<Task>();
+		other.add(new Task(0, "other"));
+		index.reset(other);
+		assertEquals(0, index.find(new Task(3, "other")));
+		assertEquals(-1, index.find(tasks.get(0)));
+	}
+}
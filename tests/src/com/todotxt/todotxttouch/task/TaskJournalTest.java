@@ -0,0 +1,304 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.todotxt.todotxttouch.util.FileVersion;
+import com.todotxt.todotxttouch.util.TaskIo;
+import com.todotxt.todotxttouch.util.TaskWriter;
+
+public class TaskJournalTest extends TestCase {
+	private File dir;
+	private File todo;
+	private File journalFile;
+	private TaskJournal journal;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("journal", "");
+		dir.delete();
+		dir.mkdirs();
+		todo = new File(dir, "todo.txt");
+		journalFile = new File(dir, "todo.txt.journal");
+		write(todo, "(A) first\nsecond @home\n\nthird +project\n");
+		journal = new TaskJournal(todo, journalFile, TaskWriter.Sync.NONE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private static void write(File file, String text) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+	}
+
+	private static List<String> lines(List<Task> tasks) {
+		List<String> lines = new ArrayList<String>();
+		for (Task task : tasks) {
+			lines.add(task.inFileFormat());
+		}
+		return lines;
+	}
+
+	private ArrayList<Task> replayed() throws IOException {
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		journal.replay(tasks);
+		return tasks;
+	}
+
+	public void testReplay_noJournal() throws IOException {
+		assertFalse(journal.exists());
+		assertEquals(TaskIo.loadTasksFromFile(todo), replayed());
+	}
+
+	public void testReplay_appliesChanges() throws IOException {
+		ArrayList<Task> expected = TaskIo.loadTasksFromFile(todo);
+
+		Task added = new Task(expected.size(), "fourth");
+		expected.add(added);
+		journal.added(added);
+
+		Task updated = new Task(expected.get(1).getId(), "(B) second @work");
+		expected.set(1, updated);
+		journal.updated(1, "second @home", updated);
+
+		expected.remove(0);
+		journal.deleted(0, "(A) first");
+
+		assertTrue(journal.exists());
+		ArrayList<Task> tasks = replayed();
+		assertEquals(lines(expected), lines(tasks));
+		assertEquals(expected, tasks);
+	}
+
+	public void testReplay_touchedFileStillMatches() throws IOException {
+		journal.deleted(0, "(A) first");
+		todo.setLastModified(todo.lastModified() + 2000);
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertTrue(journal.replay(tasks));
+		assertEquals("second @home", tasks.get(0).inFileFormat());
+	}
+
+	public void testReplay_mergesJournalOfChangedFile() throws IOException {
+		journal.added(new Task(3, "fourth"));
+		journal.updated(1, "second @home", new Task(1, "(B) second @work"));
+		journal.deleted(2, "third +project");
+		write(todo, "on top\n(A) first\nsecond @home\n\nthird +project\n");
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertFalse(journal.replay(tasks));
+		assertEquals(Arrays.asList("on top", "(A) first", "(B) second @work",
+				"fourth"), lines(tasks));
+		assertTrue(journal.exists());
+	}
+
+	public void testReplay_foldedJournalChangesNothing() throws IOException {
+		journal.added(new Task(3, "fourth"));
+		journal.updated(0, "(A) first", new Task(0, "(C) first"));
+		journal.deleted(2, "third +project");
+		ArrayList<Task> folded = replayed();
+		new TaskWriter(false, TaskWriter.Sync.NONE).write(folded, todo, null,
+				journal);
+		assertTrue(journal.exists());
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertTrue(journal.replay(tasks));
+		assertEquals(Arrays.asList("(C) first", "second @home", "fourth"),
+				lines(tasks));
+
+		Patch patch = new Patch();
+		assertTrue(journal.replay(patch, FileVersion.of(todo)));
+		assertEquals(0, patch.records);
+	}
+
+	public void testReplay_foldMarkWithoutNewFile() throws IOException {
+		journal.deleted(0, "(A) first");
+		// the app died before the todo file was replaced
+		journal.committing(17, 0x1234);
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertTrue(journal.replay(tasks));
+		assertEquals(Arrays.asList("second @home", "third +project"),
+				lines(tasks));
+	}
+
+	public void testReplay_staleFoldMark() throws IOException {
+		journal.deleted(0, "(A) first");
+		write(todo, "second @home\nthird +project\n");
+		journal.committing(todo.length(), FileVersion.of(todo).checksum());
+		journal.added(new Task(2, "fourth"));
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertFalse(journal.replay(tasks));
+		assertEquals(Arrays.asList("second @home", "third +project",
+				"fourth"), lines(tasks));
+	}
+
+	public void testCommitting_withoutJournal() throws IOException {
+		journal.committing(17, 0x1234);
+		assertFalse(journal.exists());
+	}
+
+	public void testReplay_mergeKeepsDuplicates() throws IOException {
+		journal.added(new Task(3, "second @home"));
+		journal.added(new Task(4, "second @home"));
+		write(todo, "(A) first\nsecond @home\nthird +project\nfourth\n");
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertFalse(journal.replay(tasks));
+		assertEquals(Arrays.asList("(A) first", "second @home",
+				"third +project", "fourth", "second @home", "second @home"),
+				lines(tasks));
+	}
+
+	public void testReplay_mergeFindsTheRightDuplicate() throws IOException {
+		write(todo, "same\nother\nsame\nlast\n");
+		journal.setBase(FileVersion.of(todo));
+		journal.updated(2, "same", new Task(2, "(A) same"));
+		journal.deleted(3, "last");
+		write(todo, "on top\nsame\nother\nsame\nlast\n");
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertFalse(journal.replay(tasks));
+		assertEquals(Arrays.asList("on top", "same", "other", "(A) same"),
+				lines(tasks));
+	}
+
+	public void testReplay_keepsBothSidesOfConflict() throws IOException {
+		journal.updated(1, "second @home", new Task(1, "second @work"));
+		write(todo, "(A) first\nsecond @office\nthird +project\n");
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertFalse(journal.replay(tasks));
+		assertEquals(Arrays.asList("(A) first", "second @office",
+				"third +project", "second @work"), lines(tasks));
+	}
+
+	public void testReplay_ignoresTornRecord() throws IOException {
+		journal.added(new Task(3, "fourth"));
+		FileOutputStream out = new FileOutputStream(journalFile, true);
+		out.write("a fif".getBytes());
+		out.close();
+
+		assertEquals("fourth", replayed().get(3).getText());
+		assertEquals(4, replayed().size());
+	}
+
+	public void testReplay_stopsAtBadIndex() throws IOException {
+		journal.deleted(17, "nowhere");
+		journal.added(new Task(3, "fourth"));
+		assertEquals(3, replayed().size());
+	}
+
+	public void testReplay_lineBreaksInText() throws IOException {
+		Task task = new Task(3, "one\\two\nthree\rfour");
+		journal.added(task);
+		assertEquals(task.getText(), replayed().get(3).getText());
+	}
+
+	public void testBatch_writtenOnFlush() throws IOException {
+		journal.begin();
+		journal.added(new Task(3, "fourth"));
+		journal.updated(0, "(A) first", new Task(0, "(C) first"));
+		assertTrue(journal.hasPending());
+		assertFalse(journal.exists());
+
+		journal.flush();
+		assertFalse(journal.hasPending());
+		assertTrue(journal.exists());
+		ArrayList<Task> tasks = replayed();
+		assertEquals("(C) first", tasks.get(0).inFileFormat());
+		assertEquals("fourth", tasks.get(3).inFileFormat());
+
+		// without a batch, records are written right away
+		long length = journal.length();
+		journal.deleted(0, "(C) first");
+		assertTrue(journal.length() > length);
+	}
+
+	public void testBatch_belongsToFileAtBegin() throws IOException {
+		journal.begin();
+		journal.added(new Task(3, "fourth"));
+		write(todo, "rewritten elsewhere\n");
+		todo.setLastModified(todo.lastModified() + 2000);
+		journal.flush();
+
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo);
+		assertFalse(journal.replay(tasks));
+		assertEquals(Arrays.asList("rewritten elsewhere", "fourth"),
+				lines(tasks));
+	}
+
+	public void testBatch_droppedByDelete() throws IOException {
+		journal.begin();
+		journal.added(new Task(3, "fourth"));
+		journal.delete();
+		assertFalse(journal.hasPending());
+		journal.flush();
+		assertFalse(journal.exists());
+	}
+
+	public void testEscape_roundTrip() {
+		String[] lines = { "", "plain", "back\\slash", "\n", "a\r\nb",
+				"\\n literally", "tab\tand \\t" };
+		for (String line : lines) {
+			String escaped = TaskJournal.escape(line);
+			assertTrue(escaped.indexOf('\n') < 0);
+			assertEquals(line, TaskJournal.unescape(escaped));
+		}
+	}
+
+	private static class Patch implements TaskJournal.Target {
+		int records;
+
+		@Override
+		public void add(String line) {
+			records++;
+		}
+
+		@Override
+		public void replace(int index, String old, String line) {
+			records++;
+		}
+
+		@Override
+		public void remove(int index, String old) {
+			records++;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class TaskLineScannerTest extends TestCase {
+	private static final String[] LINES = { "", "x", "x ", "X done",
+			", odd completion mark", "x 2011-01-02 test 123",
+			"x 2011-01-02 2011-01-01 test 123", "x 2011-01-02\n2011-01-01 a",
+			"(A) test", "(a) lower case", "(A)2011-01-02 test",
+			"(B) 2011-01-02 test @home +proj", "2011-01-02 (A) test",
+			"Call Mom 2011-03-02", "@home at the start", "+proj at the start",
+			"test @ctx1 @ctx2", "test@notacontext @a@b @. @-x",
+			"+\u0001trimmed project", "multi\nline @ctx\r\n+proj",
+			"mail me@example.com and x.y+z@a-b.c.d",
+			"a@b@c.com d@.e f@g.", "http://a.b http://c",
+			"see https://www.todotxt.com/path?a=b&c=d, then http://x.y.",
+			"http://user@host.com/x", "phone 555-1234 and 2011-01-02" };
+
+	public void testScan_null() {
+		TaskLineScanner.ScanResult result = TaskLineScanner.getInstance()
+				.scan(null);
+		assertEquals(Priority.NONE, result.priority);
+		assertEquals("", result.getText());
+		assertEquals("", result.getPrependedDate());
+		assertEquals("", result.getCompletionDate());
+		assertFalse(result.completed);
+		assertEquals(Collections.<String> emptyList(), result.getContexts());
+	}
+
+	public void testScan_offsets() {
+		String line = "(A) 2011-01-02 call @home +proj";
+		TaskLineScanner.ScanResult result = TaskLineScanner.getInstance()
+				.scan(line);
+		assertEquals(Priority.A, result.priority);
+		assertEquals(4, result.prependedDateStart);
+		assertEquals(15, result.textStart);
+		assertEquals(line.length(), result.textEnd);
+		assertEquals(1, result.contexts.size());
+		assertEquals(21, result.contexts.start(0));
+		assertEquals(25, result.contexts.end(0));
+		assertEquals(1, result.projects.size());
+		assertEquals(27, result.projects.start(0));
+		assertEquals(31, result.projects.end(0));
+	}
+
+	public void testScan_completedWithPrependedDate() {
+		TaskLineScanner.ScanResult result = TaskLineScanner.getInstance()
+				.scan("x 2011-01-02 2011-01-01 test 123");
+		assertTrue(result.completed);
+		assertEquals("2011-01-02", result.getCompletionDate());
+		assertEquals("2011-01-01", result.getPrependedDate());
+		assertEquals("test 123", result.getText());
+	}
+
+	public void testScan_nestedTokens() {
+		TaskLineScanner.ScanResult result = TaskLineScanner.getInstance()
+				.scan("mail http://a.com/?to=user@host.com @a@b.com");
+		assertEquals(Arrays.asList("a@b.com"), result.getContexts());
+		assertEquals(Arrays.asList("user@host.com", "a@b.com"),
+				result.getMailAddresses());
+		assertEquals(1, result.getLinks().size());
+		assertEquals("http://a.com/?to=user@host.com", result.getLinks()
+				.get(0).toString());
+	}
+
+	public void testScan_matchesRegexParsers() {
+		for (String line : LINES) {
+			TextSplitter.SplitResult split = TextSplitter.getInstance().split(
+					line);
+			TaskLineScanner.ScanResult scan = TaskLineScanner.getInstance()
+					.scan(line);
+			assertEquals(line, split.priority, scan.priority);
+			assertEquals(line, split.text, scan.getText());
+			assertEquals(line, split.prependedDate, scan.getPrependedDate());
+			assertEquals(line, split.completed, scan.completed);
+			assertEquals(line, split.completedDate, scan.getCompletionDate());
+			assertEquals(line, ContextParser.getInstance().parse(split.text),
+					scan.getContexts());
+			assertEquals(line, ProjectParser.getInstance().parse(split.text),
+					scan.getProjects());
+			assertEquals(line,
+					MailAddressParser.getInstance().parse(split.text),
+					scan.getMailAddresses());
+			assertEquals(line, LinkParser.getInstance().parse(split.text)
+					.toString(), scan.getLinks().toString());
+		}
+	}
+}
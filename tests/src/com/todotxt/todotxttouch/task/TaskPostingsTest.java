@@ -0,0 +1,238 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TaskPostingsTest extends TestCase {
+	private ArrayList<Task> tasks;
+	private TaskPostings postings;
+
+	@Override
+	protected void setUp() throws Exception {
+		tasks = new ArrayList<Task>();
+		tasks.add(new Task(0, "(A) call mom @phone +family"));
+		tasks.add(new Task(1, "buy milk @errands"));
+		tasks.add(new Task(2, "(B) plan trip +family +travel"));
+		tasks.add(new Task(3, "read book"));
+		tasks.add(new Task(4, "(A) pay bills @home @phone"));
+		postings = new TaskPostings();
+		postings.reset(tasks);
+	}
+
+	public void testSelect_context() {
+		assertSelected(filter(null, list("phone"), null, null), 0, 4);
+		assertSelected(filter(null, list("phone", "errands"), null, null),
+				0, 1, 4);
+		assertSelected(filter(null, list("-"), null, null), 2, 3);
+		assertSelected(filter(null, list("nowhere"), null, null));
+	}
+
+	public void testSelect_projectAndPriority() {
+		assertSelected(filter(null, null, list("family"), null), 0, 2);
+		assertSelected(
+				filter(Arrays.asList(Priority.A), list("phone"), list("-"),
+						null), 4);
+		assertSelected(filter(Arrays.asList(Priority.NONE), null, null, null),
+				1, 3);
+	}
+
+	public void testSelect_text() {
+		assertSelected(filter(null, list("phone"), null, "bills"), 4);
+		assertSelected(filter(null, null, null, "bills"), 4);
+		assertSelected(filter(null, null, null, "Mom CALL"), 0);
+		assertSelected(filter(null, null, null, "call mo x"));
+		assertSelected(filter(null, list("phone"), null, "a"), 0, 4);
+		assertNull(postings.select(filter(null, null, null, "a")));
+		assertNull(postings.select(filter(null, null, null, null)));
+		assertNull(postings.select(new ByTextFilter("bills", true)));
+	}
+
+	public void testSelect_or() {
+		OrFilter or = new OrFilter();
+		or.addFilter(new ByContextFilter(list("errands")));
+		or.addFilter(new ByProjectFilter(list("travel")));
+		assertSelected(or, 1, 2);
+		or.addFilter(new ByTextFilter("book", false));
+		assertSelected(or, 1, 2, 3);
+		or.addFilter(new ByTextFilter("bills", true));
+		assertNull(postings.select(or));
+	}
+
+	public void testSelect_textChanges() {
+		assertSelected(filter(null, null, null, "milk"), 1);
+		change(1, "buy bread @errands");
+		tasks.remove(0);
+		postings.removed(0);
+		assertSelected(filter(null, null, null, "milk"));
+		assertSelected(filter(null, null, null, "bread"), 0);
+		assertSelected(filter(null, null, null, "bills"), 3);
+	}
+
+	public void testSelect_matchesApply() {
+		List<String> contexts = list("phone", "-");
+		Filter<Task> filter = and(null, contexts, list("family"), null);
+		assertSelected((PostingFilter) filter, matching(filter));
+	}
+
+	public void testAdded() {
+		assertSelected(filter(null, list("phone"), null, null), 0, 4);
+		Task task = new Task(5, "text joe @phone");
+		tasks.add(task);
+		postings.added(task);
+		assertSelected(filter(null, list("phone"), null, null), 0, 4, 5);
+		assertSelected(filter(null, null, list("-"), null), 1, 3, 4, 5);
+	}
+
+	public void testChanged() {
+		assertSelected(filter(null, list("phone"), null, null), 0, 4);
+		change(0, "(C) call mom @home");
+		assertSelected(filter(null, list("phone"), null, null), 4);
+		assertSelected(filter(null, list("home"), null, null), 0, 4);
+		assertSelected(filter(Arrays.asList(Priority.C), null, null, null), 0);
+		assertSelected(filter(null, null, list("-"), null), 0, 1, 3, 4);
+	}
+
+	public void testRemoved() {
+		assertSelected(filter(null, list("phone"), null, null), 0, 4);
+		tasks.remove(1);
+		postings.removed(1);
+		tasks.remove(0);
+		postings.removed(0);
+		assertSelected(filter(null, list("phone"), null, null), 2);
+		assertSelected(filter(null, list("-"), null, null), 0, 1);
+		assertSelected(filter(null, list("errands"), null, null));
+		assertSelected(filter(Arrays.asList(Priority.A, Priority.B), null,
+				null, null), 0, 2);
+	}
+
+	public void testRemoved_batchBetweenChanges() {
+		assertSelected(filter(null, list("phone"), null, null), 0, 4);
+		tasks.remove(3);
+		postings.removed(3);
+		tasks.remove(0);
+		postings.removed(0);
+		change(0, "buy milk @phone");
+		tasks.remove(1);
+		postings.removed(1);
+		Task task = new Task(5, "walk dog @errands");
+		tasks.add(task);
+		postings.added(task);
+		assertSelected(filter(null, list("phone"), null, null), 0, 1);
+		assertSelected(filter(null, list("errands"), null, null), 2);
+		assertSelected(filter(null, null, list("-"), null), 0, 1, 2);
+		assertEquals(list("errands", "home", "phone"), postings.getContexts());
+		assertEquals(Collections.<String> emptyList(), postings.getProjects());
+		Filter<Task> filter = and(null, null, null, "milk");
+		assertSelected((PostingFilter) filter, matching(filter));
+	}
+
+	public void testFacets() {
+		assertEquals(list("errands", "home", "phone"), postings.getContexts());
+		assertEquals(list("family", "travel"), postings.getProjects());
+		assertEquals(2, postings.countContext("phone"));
+		assertEquals(2, postings.countContext("-"));
+		assertEquals(0, postings.countContext("nowhere"));
+		assertEquals(3, postings.countProject("-"));
+
+		change(1, "buy milk @shop +family");
+		tasks.remove(2);
+		postings.removed(2);
+
+		assertEquals(list("home", "phone", "shop"), postings.getContexts());
+		assertEquals(list("family"), postings.getProjects());
+		assertEquals(2, postings.countProject("family"));
+		assertEquals(0, postings.countContext("errands"));
+		assertEquals(Arrays.asList(Priority.NONE, Priority.A),
+				postings.getPriorities());
+		assertEquals(2, postings.countPriority(Priority.A));
+		assertEquals(0, postings.countPriority(Priority.B));
+	}
+
+	public void testUnionAndIntersect() {
+		int[] a = { 1, 3, 5, 7 };
+		int[] b = { 2, 3, 7, 8 };
+		assertTrue(Arrays.equals(new int[] { 1, 2, 3, 5, 7, 8 },
+				TaskPostings.union(a, a.length, b, b.length)));
+		assertTrue(Arrays.equals(new int[] { 3, 7 },
+				TaskPostings.intersect(a, b)));
+		assertTrue(Arrays.equals(new int[0],
+				TaskPostings.intersect(a, new int[0])));
+	}
+
+	private static List<String> list(String... tags) {
+		return Arrays.asList(tags);
+	}
+
+	private static PostingFilter filter(List<Priority> priorities,
+			List<String> contexts, List<String> projects, String text) {
+		return (PostingFilter) and(priorities, contexts, projects, text);
+	}
+
+	private static Filter<Task> and(List<Priority> priorities,
+			List<String> contexts, List<String> projects, String text) {
+		return FilterFactory.generateAndFilter(
+				priorities == null ? Collections.<Priority> emptyList()
+						: priorities,
+				contexts == null ? Collections.<String> emptyList() : contexts,
+				projects == null ? Collections.<String> emptyList() : projects,
+				text, false);
+	}
+
+	/**
+	 * Changes the task in place and tells the postings, the way a store does
+	 */
+	private void change(int position, String text) {
+		Task task = tasks.get(position);
+		int[] contextIds = task.getContextIds();
+		int[] projectIds = task.getProjectIds();
+		Priority priority = task.getPriority();
+		task.update(text);
+		postings.changed(position, contextIds, projectIds, priority, task);
+	}
+
+	private int[] matching(Filter<Task> filter) {
+		ArrayList<Integer> positions = new ArrayList<Integer>();
+		for (int i = 0; i < tasks.size(); i++) {
+			if (filter.apply(tasks.get(i))) {
+				positions.add(i);
+			}
+		}
+		int[] result = new int[positions.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = positions.get(i);
+		}
+		return result;
+	}
+
+	private void assertSelected(PostingFilter filter, int... expected) {
+		int[] selected = postings.select(filter);
+		assertNotNull(selected);
+		assertEquals(Arrays.toString(expected), Arrays.toString(selected));
+	}
+}
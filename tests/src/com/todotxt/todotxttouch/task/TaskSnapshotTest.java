@@ -0,0 +1,190 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import com.todotxt.todotxttouch.util.FileVersion;
+import com.todotxt.todotxttouch.util.LineIndex;
+import com.todotxt.todotxttouch.util.TaskIo;
+
+public class TaskSnapshotTest extends TestCase {
+	private File dir;
+	private File todo;
+	private File snapshotFile;
+	private TaskSnapshot snapshot;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("snapshot", "");
+		dir.delete();
+		dir.mkdirs();
+		todo = new File(dir, "todo.txt");
+		snapshotFile = new File(dir, "todo.txt.snapshot");
+		write(todo, "(A) 2013-01-02 first @home +garden\n"
+				+ "x 2013-02-03 2013-01-01 second @home\n\n"
+				+ "third +project \u00e9t\u00e9 @work @phone\n");
+		snapshot = new TaskSnapshot(snapshotFile);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private ArrayList<Task> take(LineIndex index) throws IOException {
+		FileVersion version = FileVersion.of(todo);
+		ArrayList<Task> tasks = TaskIo.loadTasksFromFile(todo, index);
+		snapshot.write(version, tasks, index);
+		return tasks;
+	}
+
+	public void testRead() throws Exception {
+		LineIndex parsed = new LineIndex();
+		ArrayList<Task> tasks = take(parsed);
+
+		LineIndex index = new LineIndex();
+		TaskSnapshot other = new TaskSnapshot(snapshotFile);
+		ArrayList<Task> read = other.read(todo, index);
+		assertEquals(tasks, read);
+		assertNotNull(other.getVersion());
+		for (int i = 0; i < tasks.size(); i++) {
+			Task task = read.get(i);
+			assertEquals(tasks.get(i).getContexts(), task.getContexts());
+			assertEquals(tasks.get(i).getProjects(), task.getProjects());
+			assertEquals(tasks.get(i).getPrependedDay(),
+					task.getPrependedDay());
+			assertEquals(tasks.get(i).getCompletionDay(),
+					task.getCompletionDay());
+			assertEquals(tasks.get(i).inFileFormat(), task.inFileFormat());
+			assertFalse(task.isDirty());
+		}
+		assertEquals(parsed.size(), index.size());
+		for (int i = 0; i < parsed.size(); i++) {
+			assertEquals(parsed.start(i), index.start(i));
+			assertEquals(parsed.end(i), index.end(i));
+		}
+		assertTrue(index.matches(todo));
+	}
+
+	public void testWrite_onlyTagsInUse() throws Exception {
+		for (int i = 0; i < 200; i++) {
+			TagDictionary.getInstance().intern("unused" + i);
+		}
+		take(new LineIndex());
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+		try {
+			// right after the header: home, garden, work, phone, project
+			file.seek(32);
+			assertEquals(5, file.read());
+			assertEquals("home".length() + 1, file.read());
+		} finally {
+			file.close();
+		}
+	}
+
+	public void testRead_missing() throws Exception {
+		LineIndex index = new LineIndex();
+		assertNull(snapshot.read(todo, index));
+		assertNull(snapshot.getVersion());
+	}
+
+	public void testRead_todoFileChanged() throws Exception {
+		take(new LineIndex());
+		write(todo, "(A) first\n");
+		LineIndex index = new LineIndex();
+		assertNull(new TaskSnapshot(snapshotFile).read(todo, index));
+		assertEquals(0, index.size());
+	}
+
+	public void testRead_todoFileEditedWithinTimeStep() throws Exception {
+		take(new LineIndex());
+		long lastModified = todo.lastModified();
+		// the same size and time, as on FAT within two seconds
+		write(todo, "(B) 2013-01-02 first @home +garden\n"
+				+ "x 2013-02-03 2013-01-01 second @home\n\n"
+				+ "third +project \u00e9t\u00e9 @work @phone\n");
+		assertTrue(todo.setLastModified(lastModified));
+		LineIndex index = new LineIndex();
+		assertNull(new TaskSnapshot(snapshotFile).read(todo, index));
+		assertEquals(0, index.size());
+	}
+
+	public void testRead_todoFileTouched() throws Exception {
+		take(new LineIndex());
+		todo.setLastModified(todo.lastModified() - 10000);
+		LineIndex index = new LineIndex();
+		ArrayList<Task> read = new TaskSnapshot(snapshotFile).read(todo,
+				index);
+		assertNotNull(read);
+		assertEquals(3, read.size());
+		assertTrue(index.matches(todo));
+		assertEquals(FileVersion.of(todo).checksum(), index.version()
+				.checksum());
+	}
+
+	public void testRead_corrupt() throws Exception {
+		take(new LineIndex());
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			file.seek(file.length() - 20);
+			file.write(0x7f);
+		} finally {
+			file.close();
+		}
+		LineIndex index = new LineIndex();
+		assertNull(new TaskSnapshot(snapshotFile).read(todo, index));
+		assertEquals(0, index.size());
+		assertFalse(snapshotFile.exists());
+	}
+
+	public void testRead_truncated() throws Exception {
+		take(new LineIndex());
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			file.setLength(file.length() / 2);
+		} finally {
+			file.close();
+		}
+		assertNull(new TaskSnapshot(snapshotFile).read(todo, new LineIndex()));
+		assertFalse(snapshotFile.exists());
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the bag tests again with the tasks kept in a {@link TaskTableStore}
+ */
+public class TaskTableStoreTest extends TaskBagImplTest {
+
+	@Override
+	protected TaskBagImpl newTaskBag(TaskBagImpl.Preferences prefs,
+			LocalTaskRepository repo) {
+		return new TaskBagImpl(prefs, repo, null, new TaskTableStore());
+	}
+
+	public void testHandsOutSameTasksAgain() {
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+		};
+		list1.add(new Task(1, "A Simple test with no curve balls"));
+		list1.add(new Task(2, "Another test with no curve balls"));
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.reload();
+
+		Task task = taskBag.getTasks().get(1);
+		assertSame(task, taskBag.getTasks().get(1));
+	}
+
+	public void testUpdateHandedOutTask() {
+		LocalTaskRepository repo = new TestLocalTaskRepository() {
+			public ArrayList<Task> load() {
+				return list1;
+			}
+		};
+
+		list1.add(new Task(1, "A Simple test with no curve balls"));
+		list1.add(new Task(2, "Another test with no curve balls"));
+
+		TaskBagImpl taskBag = newTaskBag(prefs, repo);
+		taskBag.reload();
+
+		Task task = taskBag.getTasks().get(1);
+		task.update("first edit");
+		taskBag.update(task);
+		// same instance again, its original text is gone from the table
+		task.update("second edit");
+		taskBag.update(task);
+
+		assertEquals(2, taskBag.size());
+		assertEquals("second edit", taskBag.getTasks().get(1).getText());
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TaskTableTest extends TestCase {
+	private static final String[] LINES = { "(A) call mom @phone +family",
+			"x 2012-11-05 2012-10-01 file taxes +taxes",
+			"2012-09-30 buy milk @errands", "(C) 2012-08-01 write @computer",
+			"Zebra crossing", "apple pie +baking", "(A) call dad @phone",
+			"x 2012-12-24 wrap presents", "", "(b) lower case priority",
+			"\u00c4PFEL kaufen @errands", "\u00e4pfel sch\u00e4len" };
+
+	private ArrayList<Task> tasks() {
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		for (int i = 0; i < LINES.length; i++) {
+			tasks.add(new Task(i % 5, LINES[i]));
+		}
+		return tasks;
+	}
+
+	private TaskTable table(List<Task> tasks) {
+		TaskTable table = new TaskTable();
+		table.addAll(tasks);
+		return table;
+	}
+
+	private List<Task> select(TaskTable table, Filter<Task> filter,
+			Comparator<Task> comparator) {
+		int[] rows = table.select(filter);
+		table.sort(rows, comparator);
+		List<Task> result = new ArrayList<Task>();
+		for (int row : rows) {
+			result.add(table.getTask(row));
+		}
+		return result;
+	}
+
+	private List<Task> expected(List<Task> tasks, Filter<Task> filter,
+			Comparator<Task> comparator) {
+		List<Task> result = new ArrayList<Task>();
+		for (Task task : tasks) {
+			if (filter == null || filter.apply(task)) {
+				result.add(task);
+			}
+		}
+		Collections.sort(result, comparator);
+		return result;
+	}
+
+	public void testGetTask_roundTrip() {
+		ArrayList<Task> tasks = tasks();
+		TaskTable table = table(tasks);
+		assertEquals(tasks.size(), table.size());
+		for (int row = 0; row < tasks.size(); row++) {
+			Task task = tasks.get(row);
+			assertEquals(task, table.getTask(row));
+			assertEquals(task.getPriority(), table.getPriority(row));
+			assertEquals(task.isCompleted(), table.isCompleted(row));
+			assertEquals(task.isDeleted(), table.isDeleted(row));
+			assertEquals(task.getPrependedDay(), table.getPrependedDay(row));
+			assertEquals(task.getCompletionDay(), table.getCompletionDay(row));
+			assertEquals(task.getText(), table.getText(row));
+			assertEquals(task.inFileFormat(), table.getTask(row)
+					.inFileFormat());
+			assertEquals(task.getContexts(), table.getTask(row).getContexts());
+			assertEquals(task.getProjects(), table.getTask(row).getProjects());
+		}
+	}
+
+	public void testGetTask_irregularDate() {
+		// no such day, so it does not format back from its epoch day
+		Task task = new Task(0, "x 2012-02-30 2012-13-01 odd dates");
+		TaskTable table = table(Arrays.asList(task));
+		assertEquals(task.inFileFormat(), table.getTask(0).inFileFormat());
+		assertEquals(task.getCompletionDate(), table.getTask(0)
+				.getCompletionDate());
+	}
+
+	public void testSort_matchesComparators() {
+		ArrayList<Task> tasks = tasks();
+		TaskTable table = table(tasks);
+		for (Sort sort : Sort.values()) {
+			assertEquals(sort.name(), expected(tasks, null,
+					sort.getComparator()), select(table, null,
+					sort.getComparator()));
+		}
+	}
+
+	public void testSort_customComparator() {
+		ArrayList<Task> tasks = tasks();
+		TaskTable table = table(tasks);
+		Comparator<Task> byLength = new Comparator<Task>() {
+			@Override
+			public int compare(Task t1, Task t2) {
+				return t1.getText().length() - t2.getText().length();
+			}
+		};
+		assertEquals(expected(tasks, null, byLength), select(table, null,
+				byLength));
+	}
+
+	public void testSort_largeRandom() {
+		Random random = new Random(7);
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		for (int i = 0; i < 500; i++) {
+			tasks.add(new Task(random.nextInt(50),
+					LINES[random.nextInt(LINES.length)]));
+		}
+		TaskTable table = table(tasks);
+		for (Sort sort : Sort.values()) {
+			assertEquals(sort.name(), expected(tasks, null,
+					sort.getComparator()), select(table, null,
+					sort.getComparator()));
+		}
+	}
+
+	public void testSelect_matchesFilters() {
+		ArrayList<Task> tasks = tasks();
+		TaskTable table = table(tasks);
+		List<Filter<Task>> filters = new ArrayList<Filter<Task>>();
+		filters.add(FilterFactory.generateAndFilter(
+				Arrays.asList(Priority.A), Collections.<String> emptyList(),
+				Collections.<String> emptyList(), null, false));
+		filters.add(FilterFactory.generateAndFilter(
+				Collections.<Priority> emptyList(), Arrays.asList("phone",
+						"errands"), Collections.<String> emptyList(), null,
+				false));
+		filters.add(FilterFactory.generateAndFilter(
+				Collections.<Priority> emptyList(), Arrays.asList("-"),
+				Arrays.asList("taxes"), null, false));
+		filters.add(FilterFactory.generateAndFilter(
+				Collections.<Priority> emptyList(),
+				Collections.<String> emptyList(),
+				Collections.<String> emptyList(), "\u00e4pfel", false));
+		filters.add(FilterFactory.generateAndFilter(
+				Collections.<Priority> emptyList(),
+				Collections.<String> emptyList(),
+				Collections.<String> emptyList(), "call", true));
+		OrFilter or = new OrFilter();
+		or.addFilter(new ByPriorityFilter(Arrays.asList(Priority.C)));
+		or.addFilter(new Filter<Task>() {
+			@Override
+			public boolean apply(Task input) {
+				return input.isCompleted();
+			}
+		});
+		filters.add(or);
+		for (Filter<Task> filter : filters) {
+			assertEquals(expected(tasks, filter, Sort.ID_ASC.getComparator()),
+					select(table, filter, Sort.ID_ASC.getComparator()));
+		}
+	}
+
+	public void testSetAndRemove() {
+		TaskTable table = table(tasks());
+		int key = table.getKey(3);
+		table.set(3, new Task(42, "(D) replaced @home"));
+		assertEquals(key, table.getKey(3));
+		assertEquals(new Task(42, "(D) replaced @home"), table.getTask(3));
+
+		table.remove(1);
+		assertEquals(LINES.length - 1, table.size());
+		assertEquals(2, table.rowOfKey(key));
+		assertEquals("buy milk @errands", table.getText(1));
+	}
+
+	public void testRowOfKey_removed() {
+		TaskTable table = table(tasks());
+		int key = table.getKey(0);
+		table.remove(0);
+		assertEquals(-1, table.rowOfKey(key));
+	}
+
+	public void testFind() {
+		TaskTable table = table(tasks());
+		assertEquals(6, table.find("call dad @phone", Priority.A));
+		assertEquals(-1, table.find("call dad @phone", Priority.B));
+		assertEquals(-1, table.find("call dad", Priority.A));
+	}
+
+	public void testFind_duplicates() {
+		TaskTable table = new TaskTable();
+		table.add(new Task(0, "same"));
+		table.add(new Task(1, "other"));
+		table.add(new Task(2, "same"));
+		assertEquals(0, table.find("same", Priority.NONE));
+		assertEquals(2, table.find("same", Priority.NONE, 2));
+		assertEquals(0, table.find("same", Priority.NONE, 7));
+		table.remove(0);
+		assertEquals(1, table.find("same", Priority.NONE, 0));
+		table.set(1, new Task(2, "changed"));
+		assertEquals(-1, table.find("same", Priority.NONE));
+		assertEquals(1, table.find("changed", Priority.NONE, 2));
+	}
+
+	public void testFind_matchesScan() {
+		Random random = new Random(3);
+		TaskTable table = new TaskTable();
+		List<String> texts = new ArrayList<String>();
+		for (int i = 0; i < 3000; i++) {
+			int op = random.nextInt(4);
+			String text = "task " + random.nextInt(200);
+			if (op < 2 || texts.isEmpty()) {
+				table.add(new Task(i, text));
+				texts.add(text);
+			} else if (op == 2) {
+				int row = random.nextInt(texts.size());
+				table.set(row, new Task(i, text));
+				texts.set(row, text);
+			} else {
+				int row = random.nextInt(texts.size());
+				table.remove(row);
+				texts.remove(row);
+			}
+		}
+		for (int i = 0; i < 200; i++) {
+			String text = "task " + i;
+			assertEquals(text, texts.indexOf(text),
+					table.find(text, Priority.NONE));
+		}
+	}
+
+	public void testCompaction_keepsRows() {
+		TaskTable table = table(tasks());
+		for (int i = 0; i < 2000; i++) {
+			table.set(i % table.size(), new Task(i, "rewrite number " + i));
+		}
+		for (int row = 0; row < table.size(); row++) {
+			int last = row;
+			while (last + table.size() < 2000) {
+				last += table.size();
+			}
+			assertEquals("rewrite number " + last, table.getText(row));
+			assertEquals(last, table.getId(row));
+		}
+	}
+}
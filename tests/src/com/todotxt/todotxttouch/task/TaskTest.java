@@ -22,6 +22,10 @@
  */
 package com.todotxt.todotxttouch.task;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
@@ -543,6 +547,31 @@ public class TaskTest extends TestCase {
 		assertEquals(task1.hashCode(), task2.hashCode());
 	}
 
+	public void testEqualsAndHashCode_derivedFieldsComputed() {
+		String input = "(D) mail me@example.com about http://www.link.com";
+		Task task1 = new Task(1, input);
+		Task task2 = new Task(1, input);
+		int hashCode = task1.hashCode();
+
+		assertEquals(1, task1.getLinks().size());
+		assertEquals(1, task1.getMailAddresses().size());
+		assertTrue(task1.equals(task2));
+		assertTrue(task2.equals(task1));
+		assertEquals(hashCode, task1.hashCode());
+		assertEquals(task1.hashCode(), task2.hashCode());
+	}
+
+	public void testUpdate_resetsDerivedFields() throws Exception {
+		Task task = new Task(1, "see http://www.link.com");
+		assertEquals(1, task.getLinks().size());
+
+		task.update("mail me@example.com");
+
+		assertEquals(Collections.<URL> emptyList(), task.getLinks());
+		assertEquals(1, task.getMailAddresses().size());
+		assertEquals("me@example.com", task.getMailAddresses().get(0));
+	}
+
 	public void testCopyInto() {
 		String input1 = "(D) 2011-12-01 A @complex test with @multiple projects and @contexts myproject";
 		String input2 = "A simple text input";
@@ -579,6 +608,65 @@ public class TaskTest extends TestCase {
 		assertEquals(task1.getCompletionDate(), task2.getCompletionDate());
 	}
 
+	public void testCopyInto_keepsSourceUntouched() {
+		Task source = new Task(1, "(A) source @home");
+		Task destination = new Task(2, "destination");
+		source.copyInto(destination);
+		destination.markComplete(new Date());
+
+		assertEquals("(A) source @home", source.inFileFormat());
+		assertFalse(source.isDirty());
+		assertTrue(destination.isDirty());
+		assertTrue(destination.inFileFormat().startsWith("x "));
+	}
+
+	public void testDirty() {
+		Task task = new Task(1, "(B) call mom");
+		assertFalse(task.isDirty());
+		String line = task.inFileFormat();
+		assertSame(line, task.inFileFormat());
+
+		task.setPriority(Priority.A);
+		assertTrue(task.isDirty());
+		assertEquals("(A) call mom", task.inFileFormat());
+
+		task.markClean();
+		task.markIncomplete();
+		assertFalse(task.isDirty());
+		task.markComplete(new Date());
+		assertTrue(task.isDirty());
+		task.markClean();
+		task.markComplete(new Date());
+		assertFalse(task.isDirty());
+		task.markIncomplete();
+		assertTrue(task.isDirty());
+		assertEquals("call mom", task.inFileFormat());
+
+		task.markClean();
+		task.update("(C) call dad");
+		assertTrue(task.isDirty());
+		assertEquals("(C) call dad", task.inFileFormat());
+
+		task.markClean();
+		task.delete();
+		assertTrue(task.isDirty());
+		assertEquals("", task.inFileFormat());
+	}
+
+	public void testStoredLine() {
+		Task task = new Task(1, "(B) call mom");
+		assertEquals("(B) call mom", task.getStoredLine());
+
+		task.setPriority(Priority.A);
+		task.update("call dad");
+		assertEquals("(B) call mom", task.getStoredLine());
+
+		task.markClean();
+		assertEquals("call dad", task.getStoredLine());
+		new Task(2, "(C) call mom").copyInto(task);
+		assertEquals("call dad", task.getStoredLine());
+	}
+
 	public void testMarkComplete() throws Exception {
 		String input = "(D) 2011-12-01 A @complex test +with @multiple projects and @contexts +myproject";
 		Task task = new Task(1, input);
@@ -1192,4 +1280,43 @@ public class TaskTest extends TestCase {
 		assertEquals(Collections.<String> emptyList(), task.getProjects());
 		assertEquals(Collections.<String> emptyList(), task.getContexts());
 	}
+
+	public void testSerialization_tagsRoundTrip() throws Exception {
+		Task task = new Task(1, "call mom @phone @home +family");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(task);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		Task copy = (Task) in.readObject();
+
+		assertEquals(task, copy);
+		assertEquals(task.getContexts(), copy.getContexts());
+		assertEquals(task.getProjects(), copy.getProjects());
+	}
+
+	public void testCompactLayout_sharedInstances() {
+		Task first = new Task(1, "2012-11-05 call mom @phone");
+		Task second = new Task(2, "2012-11-05 call dad @phone");
+
+		assertSame(first.getPrependedDate(), second.getPrependedDate());
+		assertSame(first.getContextIds(), second.getContextIds());
+		assertSame(first.getProjectIds(), second.getProjectIds());
+		assertSame(Collections.emptyList(), first.getMailAddresses());
+		assertSame(Collections.emptyList(), first.getLinks());
+	}
+
+	public void testFilterInit_copyOnWrite() {
+		Task other = new Task(1, "call mom @phone");
+		Task task = new Task(2, "call dad @phone");
+		ArrayList<String> contexts = new ArrayList<String>();
+		contexts.add("home");
+
+		task.initWithFilters(null, contexts, null);
+
+		assertEquals(Collections.singletonList("home"), task.getContexts());
+		assertEquals(Collections.singletonList("phone"), other.getContexts());
+	}
 }
@@ -0,0 +1,175 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TrigramIndexTest extends TestCase {
+	private TrigramIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		index = new TrigramIndex();
+		index.added("CALL MOM");
+		index.added("PLAN MEETING");
+		index.added("MEET BOB");
+		index.added("READ BOOK");
+	}
+
+	public void testCandidates() {
+		assertCandidates(new String[] { "MEET" }, 1, 2);
+		assertCandidates(new String[] { "MEETI" }, 1);
+		assertCandidates(new String[] { "MEET", "BOB" }, 2);
+		assertCandidates(new String[] { "BO" }, null);
+		assertCandidates(new String[] { "XYZ" });
+		// has the trigrams, but not the term, which is up to the caller
+		index.added("BOO OOK");
+		assertCandidates(new String[] { "BOOK" }, 3, 4);
+	}
+
+	public void testCandidates_nonAscii() {
+		index.added("\u00c9T\u00c9 \u00c0 PARIS");
+		assertCandidates(new String[] { "\u00c9T\u00c9" }, 4);
+		assertCandidates(new String[] { "\u00c0 P" }, 4);
+	}
+
+	public void testChanged() {
+		index.changed(0, "MEET MOM");
+		assertCandidates(new String[] { "MEET" }, 0, 1, 2);
+		assertCandidates(new String[] { "CALL" });
+	}
+
+	public void testRemoved() {
+		index.removed(1);
+		assertCandidates(new String[] { "MEET" }, 1);
+		assertCandidates(new String[] { "BOOK" }, 2);
+		index.added("MEET AGAIN");
+		assertCandidates(new String[] { "MEET" }, 1, 3);
+	}
+
+	public void testRemoved_batch() {
+		index.removed(3);
+		index.removed(0);
+		index.removed(1);
+		assertCandidates(new String[] { "MEET" }, 0);
+		assertCandidates(new String[] { "CALL" });
+		assertCandidates(new String[] { "BOOK" });
+	}
+
+	public void testEmptyListsAreDropped() {
+		int size = index.size();
+		// "LL ", "L M", " MO" and "MOM" are in no other text
+		index.changed(0, "CALL");
+		assertEquals(size - 4, index.size());
+		index.removed(0);
+		assertEquals(size - 6, index.size());
+		index.clear();
+		index.added("ABC");
+		index.removed(0);
+		assertEquals(0, index.size());
+	}
+
+	public void testMatchesRebuiltIndex() {
+		Random random = new Random(42);
+		ArrayList<String> texts = new ArrayList<String>();
+		index.clear();
+		for (int step = 0; step < 3000; step++) {
+			int op = random.nextInt(3);
+			if (op == 0 || texts.size() < 10) {
+				String text = text(random);
+				texts.add(text);
+				index.added(text);
+			} else if (op == 1) {
+				int position = random.nextInt(texts.size());
+				String text = text(random);
+				texts.set(position, text);
+				index.changed(position, text);
+			} else {
+				int position = random.nextInt(texts.size());
+				texts.remove(position);
+				index.removed(position);
+			}
+			if (step % 100 == 0) {
+				assertMatches(texts);
+			}
+		}
+		assertMatches(texts);
+	}
+
+	private static String text(Random random) {
+		char[] chars = new char[3 + random.nextInt(6)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) ('A' + random.nextInt(8));
+		}
+		return new String(chars);
+	}
+
+	private void assertMatches(ArrayList<String> texts) {
+		TrigramIndex rebuilt = new TrigramIndex();
+		Set<String> trigrams = new HashSet<String>();
+		for (String text : texts) {
+			rebuilt.added(text);
+			for (int i = 0; i + 3 <= text.length(); i++) {
+				trigrams.add(text.substring(i, i + 3));
+			}
+		}
+		assertEquals(rebuilt.size(), index.size());
+		for (String trigram : trigrams) {
+			String[] terms = { trigram };
+			assertEquals(Arrays.toString(rebuilt.candidates(terms)),
+					Arrays.toString(index.candidates(terms)));
+		}
+	}
+
+	public void testClear() {
+		index.clear();
+		assertCandidates(new String[] { "MEET" });
+		index.added("MEET");
+		assertCandidates(new String[] { "MEET" }, 0);
+	}
+
+	public void testGrows() {
+		index.clear();
+		for (int i = 0; i < 2000; i++) {
+			index.added("TASK " + i);
+		}
+		assertCandidates(new String[] { "1999" }, 1999);
+		assertEquals(2000, index.candidates(new String[] { "TASK" }).length);
+	}
+
+	private void assertCandidates(String[] terms, int... expected) {
+		int[] candidates = index.candidates(terms);
+		if (expected == null) {
+			assertNull(candidates);
+		} else {
+			assertEquals(Arrays.toString(expected),
+					Arrays.toString(candidates));
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.List;
 
 import com.todotxt.todotxttouch.task.Filter;
 import com.todotxt.todotxttouch.task.Priority;
+import com.todotxt.todotxttouch.task.SearchSession;
 import com.todotxt.todotxttouch.task.Task;
 import com.todotxt.todotxttouch.task.TaskBag;
 
@@ -41,6 +42,36 @@ public class TaskBagStub implements TaskBag {
 
 	}
 
+	@Override
+	public void addAll(List<String> inputs) {
+		// TODO Auto-generated method stub
+
+	}
+
+	@Override
+	public void updateAll(List<Task> tasks) {
+		// TODO Auto-generated method stub
+
+	}
+
+	@Override
+	public void deleteAll(List<Task> tasks) {
+		// TODO Auto-generated method stub
+
+	}
+
+	@Override
+	public void completeAll(List<Task> tasks) {
+		// TODO Auto-generated method stub
+
+	}
+
+	@Override
+	public void flush() {
+		// TODO Auto-generated method stub
+
+	}
+
 	@Override
 	public List<Task> getTasks() {
 		// TODO Auto-generated method stub
@@ -77,6 +108,31 @@ public class TaskBagStub implements TaskBag {
 		return null;
 	}
 
+	@Override
+	public List<Task> search(SearchSession session,
+			Comparator<Task> comparator) {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public int[] countProjects(List<String> projects) {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public int[] countContexts(List<String> contexts) {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public int[] countPriorities(List<Priority> priorities) {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
 	@Override
 	public void pushToRemote(boolean overwrite) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,88 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class DatesTest extends TestCase {
+	public void testParse_epoch() {
+		assertEquals(0, Dates.parse("1970-01-01"));
+		assertEquals(1, Dates.parse("1970-01-02"));
+		assertEquals(-1, Dates.parse("1969-12-31"));
+	}
+
+	public void testParse_offset() {
+		assertEquals(15033, Dates.parse("x 2011-02-28 test", 2));
+	}
+
+	public void testParse_invalid() {
+		assertEquals(Dates.NONE, Dates.parse(null));
+		assertEquals(Dates.NONE, Dates.parse(""));
+		assertEquals(Dates.NONE, Dates.parse("2011-2-28"));
+		assertEquals(Dates.NONE, Dates.parse("2011/02/28"));
+		assertEquals(Dates.NONE, Dates.parse("2011-02-2x"));
+		assertEquals(Dates.NONE, Dates.parse("2011-02-28", -1));
+		assertEquals(Dates.NONE, Dates.parse("2011-02-28", 1));
+	}
+
+	public void testParse_lenient() {
+		assertEquals(Dates.parse("2012-01-01"), Dates.parse("2011-13-01"));
+		assertEquals(Dates.parse("2011-03-01"), Dates.parse("2011-02-29"));
+		assertEquals(Dates.parse("2010-12-31"), Dates.parse("2011-01-00"));
+	}
+
+	public void testToYearMonthDay() {
+		assertEquals(19700101, Dates.toYearMonthDay(0));
+		assertEquals(20110228, Dates.toYearMonthDay(15033));
+	}
+
+	public void testFormat() {
+		assertEquals("1970-01-01", Dates.format(0));
+		assertEquals("2011-02-28", Dates.format(15033));
+		assertEquals("2012-02-29", Dates.format(Dates.parse("2012-02-29")));
+		assertEquals("", Dates.format(Dates.NONE));
+	}
+
+	public void testRoundTrip() throws Exception {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+		// 0000-01-01 to 9999-12-31
+		for (int day = -719528; day <= 2932896; day += 97) {
+			String formatted = Dates.format(day);
+			assertEquals(day, Dates.parse(formatted));
+			// SimpleDateFormat switches to the Julian calendar before 1582
+			if (day >= Dates.parse("1583-01-01")) {
+				assertEquals(sdf.format(new Date(day * 86400000L)), formatted);
+			}
+		}
+	}
+
+	public void testToEpochDay_date() throws Exception {
+		Date date = new SimpleDateFormat("yyyyMMdd").parse("20110228");
+		assertEquals(15033, Dates.toEpochDay(date));
+	}
+}
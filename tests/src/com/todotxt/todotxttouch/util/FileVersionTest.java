@@ -0,0 +1,112 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class FileVersionTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("todo", ".txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private void write(String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	public void testOf() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		assertEquals(7, version.length());
+		assertEquals(file.lastModified(), version.lastModified());
+	}
+
+	public void testOf_missingFile() throws Exception {
+		file.delete();
+		assertNull(FileVersion.of(file));
+	}
+
+	public void testCheck_unchanged() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		assertSame(version, version.check(file));
+	}
+
+	public void testCheck_touched() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		file.setLastModified(version.lastModified() - 10000);
+		FileVersion checked = version.check(file);
+		assertNotNull(checked);
+		assertEquals(file.lastModified(), checked.lastModified());
+		assertSame(checked, checked.check(file));
+	}
+
+	public void testCheck_sameSizeDifferentContent() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		write("b task\n");
+		file.setLastModified(version.lastModified() - 10000);
+		assertNull(version.check(file));
+	}
+
+	public void testCheck_sameSizeAndTimeDifferentContent() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		// rewritten within the same FAT time step
+		write("b task\n");
+		file.setLastModified(version.lastModified());
+		assertEquals(version.lastModified(), file.lastModified());
+		assertNull(version.check(file));
+	}
+
+	public void testCheck_resized() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		write("a task\nanother\n");
+		assertNull(version.check(file));
+	}
+
+	public void testCheck_deleted() throws Exception {
+		write("a task\n");
+		FileVersion version = FileVersion.of(file);
+		file.delete();
+		assertNull(version.check(file));
+	}
+}
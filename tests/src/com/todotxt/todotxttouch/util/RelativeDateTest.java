@@ -0,0 +1,91 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.util.TimeZone;
+
+import android.test.AndroidTestCase;
+
+import com.todotxt.todotxttouch.R;
+
+public class RelativeDateTest extends AndroidTestCase {
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	private long now;
+	private RelativeDate relativeDate;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		now = noon(Dates.parse("2013-03-15"));
+		relativeDate = new RelativeDate(getContext(), new RelativeDate.Clock() {
+			@Override
+			public long currentTimeMillis() {
+				return now;
+			}
+		});
+	}
+
+	private static long noon(int epochDay) {
+		long local = epochDay * MILLIS_PER_DAY + MILLIS_PER_DAY / 2;
+		return local - TimeZone.getDefault().getOffset(local);
+	}
+
+	public void testToday() {
+		assertEquals(getContext().getString(R.string.dates_today),
+				relativeDate.getRelativeDate(Dates.parse("2013-03-15")));
+	}
+
+	public void testOneDayAgo() {
+		assertEquals(getContext().getString(R.string.dates_one_day_ago),
+				relativeDate.getRelativeDate(Dates.parse("2013-03-14")));
+	}
+
+	public void testDaysAgo() {
+		assertEquals(getContext().getString(R.string.dates_days_ago, 5),
+				relativeDate.getRelativeDate(Dates.parse("2013-03-10")));
+	}
+
+	public void testMonthsAgo() {
+		assertEquals(getContext().getString(R.string.dates_one_month_ago),
+				relativeDate.getRelativeDate(Dates.parse("2013-02-20")));
+		assertEquals(getContext().getString(R.string.dates_months_ago, 2),
+				relativeDate.getRelativeDate(Dates.parse("2013-01-10")));
+	}
+
+	public void testOldDate() {
+		assertEquals("2010-01-02",
+				relativeDate.getRelativeDate(Dates.parse("2010-01-02")));
+	}
+
+	public void testDayBoundary() {
+		int day = Dates.parse("2013-03-15");
+		assertEquals(getContext().getString(R.string.dates_today),
+				relativeDate.getRelativeDate(day));
+
+		now += MILLIS_PER_DAY;
+
+		assertEquals(getContext().getString(R.string.dates_one_day_ago),
+				relativeDate.getRelativeDate(day));
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import com.todotxt.todotxttouch.task.Task;
+
+public class TaskIoTest extends TestCase {
+
+	private static InputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes());
+	}
+
+	private static String corpus(int lines) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			if (i % 7 == 3) {
+				sb.append("   \n");
+			} else {
+				sb.append("(").append((char) ('A' + i % 3)).append(") task ")
+						.append(i).append(" @ctx").append(i % 5)
+						.append(" +prj").append(i % 11).append("\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	public void testLoadTasksFromStream_lineNumbers() throws IOException {
+		ArrayList<Task> tasks = TaskIo.loadTasksFromStream(stream("first\n"
+				+ "\n  second  \r\n\nthird"));
+		assertEquals(3, tasks.size());
+		assertEquals(0, tasks.get(0).getId());
+		assertEquals("second", tasks.get(1).getText());
+		assertEquals(2, tasks.get(1).getId());
+		assertEquals(4, tasks.get(2).getId());
+	}
+
+	public void testLoadTasksFromStream_parallelMatchesSequential()
+			throws IOException {
+		String text = corpus(TaskIo.PARALLEL_THRESHOLD * 4 + 13);
+		ArrayList<Task> sequential = TaskIo.loadTasksFromStream(stream(text),
+				false);
+		ArrayList<Task> parallel = TaskIo.loadTasksFromStream(stream(text),
+				true);
+		assertEquals(sequential.size(), parallel.size());
+		assertEquals(sequential, parallel);
+		for (int i = 1; i < parallel.size(); i++) {
+			assertTrue(parallel.get(i - 1).getId() < parallel.get(i).getId());
+		}
+	}
+
+	public void testLoadTasksFromStream_belowThreshold() throws IOException {
+		String text = corpus(TaskIo.PARALLEL_THRESHOLD - 1);
+		assertEquals(TaskIo.loadTasksFromStream(stream(text), false),
+				TaskIo.loadTasksFromStream(stream(text), true));
+	}
+
+	public void testReadTasks_earlyTermination() throws IOException {
+		final ArrayList<Task> seen = new ArrayList<Task>();
+		TaskIo.readTasks(stream(corpus(100)), new TaskReader.Handler() {
+			@Override
+			public boolean handle(Task task) {
+				seen.add(task);
+				return seen.size() < 5;
+			}
+		});
+		assertEquals(5, seen.size());
+		assertEquals(TaskIo.loadTasksFromStream(stream(corpus(100)))
+				.subList(0, 5), seen);
+	}
+
+	public void testTaskReader_unboundedInput() throws IOException {
+		// an endless input, only what is read is ever held
+		Reader endless = new Reader() {
+			private final char[] line = "(A) again @home\n".toCharArray();
+			private int position;
+
+			@Override
+			public int read(char[] buffer, int offset, int length) {
+				for (int i = 0; i < length; i++) {
+					buffer[offset + i] = line[position++ % line.length];
+				}
+				return length;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		TaskReader reader = new TaskReader(endless);
+		Task task = null;
+		for (int i = 0; i < 100000; i++) {
+			task = reader.read();
+		}
+		reader.close();
+		assertEquals(99999, task.getId());
+		assertEquals("again @home", task.getText());
+	}
+
+	public void testTaskReader_lineNumbers() throws IOException {
+		TaskReader reader = new TaskReader(new StringReader("\n a \n\nb\n"));
+		assertEquals("a", reader.readLine());
+		assertEquals(1, reader.getLineNumber());
+		assertEquals(3, reader.read().getId());
+		assertNull(reader.read());
+		reader.close();
+	}
+
+	public void testLoadTasksFromFile_index() throws IOException {
+		String text = "\n" + corpus(TaskIo.PARALLEL_THRESHOLD * 2 + 5)
+				+ "\n\n";
+		byte[] bytes = text.getBytes("UTF-8");
+		File file = File.createTempFile("todo", ".txt");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(bytes);
+			out.close();
+			LineIndex index = new LineIndex();
+			ArrayList<Task> tasks = TaskIo.loadTasksFromFile(file, index);
+			assertEquals(tasks.size(), index.size());
+			assertTrue(index.matches(file));
+			assertEquals(1, index.start(0));
+			assertEquals(bytes.length - 2, index.trailerStart());
+			for (int i = 0; i < tasks.size(); i++) {
+				String line = new String(bytes, (int) index.start(i),
+						(int) (index.end(i) - index.start(i)), "UTF-8");
+				assertEquals(tasks.get(i).inFileFormat() + "\n", line);
+			}
+			assertEquals(file.length(), index.version().length());
+			assertEquals(FileVersion.of(file).checksum(), index.version()
+					.checksum());
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testLoadTasksFromFile_checksumOfMappedFile()
+			throws IOException {
+		// past the size from which files are memory-mapped
+		String text = corpus(12000);
+		assertTrue(text.length() > 256 * 1024);
+		File file = File.createTempFile("todo", ".txt");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(text.getBytes("UTF-8"));
+			out.close();
+			LineIndex index = new LineIndex();
+			TaskIo.loadTasksFromFile(file, index);
+			assertEquals(file.length(), index.version().length());
+			assertEquals(FileVersion.of(file).checksum(), index.version()
+					.checksum());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import com.todotxt.todotxttouch.task.Task;
+
+public class TaskWriterTest extends TestCase {
+	private File dir;
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("todo", "");
+		dir.delete();
+		dir.mkdirs();
+		file = new File(dir, "todo.txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private static List<Task> tasks(String... lines) {
+		List<Task> tasks = new ArrayList<Task>();
+		for (int i = 0; i < lines.length; i++) {
+			tasks.add(new Task(i, lines[i]));
+		}
+		return tasks;
+	}
+
+	private static byte[] contents(File file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+		in.close();
+		return bytes.toByteArray();
+	}
+
+	public void testWrite_lineBreaks() throws IOException {
+		new TaskWriter(false, TaskWriter.Sync.NONE).write(
+				tasks("(A) one", "x 2013-01-01 two"), file);
+		assertTrue(Arrays.equals("(A) one\nx 2013-01-01 two\n".getBytes(),
+				contents(file)));
+
+		new TaskWriter(true, TaskWriter.Sync.FILE).write(tasks("three"), file);
+		assertTrue(Arrays.equals("three\r\n".getBytes(), contents(file)));
+	}
+
+	public void testWrite_utf8() throws IOException {
+		String text = "\u00e4pfel \u20ac \ud83d\ude00 broken \ud83d here \ude00";
+		new TaskWriter(false, TaskWriter.Sync.NONE).write(tasks(text), file);
+		assertTrue(Arrays.equals((text + "\n").getBytes("UTF-8"),
+				contents(file)));
+	}
+
+	public void testWrite_replacesAtomically() throws IOException {
+		File temp = new File(dir, "todo.txt.tmp");
+		FileOutputStream stale = new FileOutputStream(temp);
+		stale.write("left over from a crash".getBytes());
+		stale.close();
+
+		TaskWriter writer = new TaskWriter(false, TaskWriter.Sync.FILE);
+		writer.write(tasks("one", "two"), file);
+		writer.write(tasks("three"), file);
+
+		assertFalse(temp.exists());
+		assertTrue(Arrays.equals("three\n".getBytes(), contents(file)));
+		assertEquals(1, dir.list().length);
+	}
+
+	public void testWrite_reportsFailure() throws IOException {
+		File blocked = new File(dir, "blocked.txt");
+		// the temporary file cannot be created over a directory
+		new File(dir, "blocked.txt.tmp").mkdir();
+		try {
+			new TaskWriter(false, TaskWriter.Sync.FILE).write(tasks("one"),
+					blocked);
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(blocked.exists());
+	}
+
+	public void testAppend() throws IOException {
+		TaskWriter writer = new TaskWriter(false, TaskWriter.Sync.FILE);
+		writer.append(tasks("one"), file);
+		writer.append(tasks("two", "three"), file);
+		assertEquals(tasks("one", "two", "three").size(), TaskIo
+				.loadTasksFromFile(file).size());
+		assertTrue(Arrays.equals("one\ntwo\nthree\n".getBytes(),
+				contents(file)));
+	}
+
+	public void testWrite_roundTrip() throws IOException {
+		List<Task> tasks = tasks("(B) 2012-12-01 call @phone +family",
+				"x 2013-01-02 2012-12-30 done", "plain \u00fc");
+		new TaskWriter(true, TaskWriter.Sync.FILE).write(tasks, file);
+		assertEquals(tasks, TaskIo.loadTasksFromFile(file));
+	}
+
+	private void writeBytes(String text) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+	}
+
+	private LineIndex load() throws IOException {
+		LineIndex index = new LineIndex();
+		TaskIo.loadTasksFromFile(file, index);
+		return index;
+	}
+
+	private static int[] unchanged(int size) {
+		int[] origins = new int[size];
+		for (int i = 0; i < size; i++) {
+			origins[i] = i;
+		}
+		return origins;
+	}
+
+	public void testPatch_rewritesFromFirstChange() throws IOException {
+		writeBytes("(A) one\r\n\n  two  \n\nthree\n\n");
+		LineIndex index = load();
+		assertEquals(3, index.size());
+		assertEquals(10, index.start(1));
+		assertEquals(18, index.gapStart(2));
+		assertEquals(19, index.start(2));
+
+		FileVersion patched = new TaskWriter(false, TaskWriter.Sync.NONE)
+				.patch(file, index, FileVersion.of(file),
+						Arrays.asList(null, null, "four"), unchanged(3));
+		assertTrue(Arrays.equals("(A) one\r\n\n  two  \n\nfour\n\n"
+				.getBytes(), contents(file)));
+		assertEquals(FileVersion.of(file).checksum(), patched.checksum());
+		assertEquals(patched.checksum(), index.version().checksum());
+		assertEquals(file.length(), patched.length());
+		assertTrue(index.matches(file));
+		assertEquals(19, index.start(2));
+		assertEquals(24, index.end(2));
+	}
+
+	public void testPatch_appendsAfterMissingLineBreak() throws IOException {
+		writeBytes("one\ntwo");
+		LineIndex index = load();
+		int[] origins = { 0, 1, -1 };
+		new TaskWriter(true, TaskWriter.Sync.FILE).patch(file, index,
+				FileVersion.of(file), Arrays.asList(null, null, "three"),
+				origins);
+		assertTrue(Arrays.equals("one\ntwo\r\nthree\r\n".getBytes(),
+				contents(file)));
+		assertEquals(3, index.size());
+		assertEquals(9, index.start(2));
+	}
+
+	public void testPatch_removesAndMovesLines() throws IOException {
+		writeBytes("a\n\nb\nc");
+		LineIndex index = load();
+		TaskWriter writer = new TaskWriter(false, TaskWriter.Sync.NONE);
+		// c moves to the front and needs a line break of its own
+		int[] origins = { 2, 1 };
+		FileVersion patched = writer.patch(file, index, FileVersion.of(file),
+				Arrays.asList((String) null, null), origins);
+		assertEquals(FileVersion.of(file).checksum(), patched.checksum());
+		assertTrue(Arrays.equals("c\n\nb\n".getBytes(), contents(file)));
+		assertEquals(Arrays.asList(new Task(0, "c"), new Task(2, "b")),
+				TaskIo.loadTasksFromFile(file));
+
+		assertSame(patched, writer.patch(file, index, patched,
+				Arrays.asList((String) null, null), unchanged(2)));
+		assertEquals(1, dir.list().length);
+	}
+
+	public void testPatch_toldNewContentsFirst() throws IOException {
+		writeBytes("one\ntwo\n");
+		LineIndex index = load();
+		final long[] told = { -1, -1 };
+		FileVersion patched = new TaskWriter(false, TaskWriter.Sync.NONE)
+				.patch(file, index, FileVersion.of(file),
+						Arrays.asList(null, "three"), unchanged(2),
+						new TaskWriter.Commit() {
+							@Override
+							public void committing(long length, long checksum)
+									throws IOException {
+								assertEquals(8, file.length());
+								told[0] = length;
+								told[1] = checksum;
+							}
+						});
+		assertEquals(patched.length(), told[0]);
+		assertEquals(patched.checksum(), told[1]);
+		assertEquals(FileVersion.of(file).checksum(), told[1]);
+	}
+
+	public void testWrite_failedCommitLeavesFileAlone() throws IOException {
+		writeBytes("one\n");
+		try {
+			new TaskWriter(false, TaskWriter.Sync.NONE).write(tasks("two"),
+					file, null, new TaskWriter.Commit() {
+						@Override
+						public void committing(long length, long checksum)
+								throws IOException {
+							throw new IOException("disk full");
+						}
+					});
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		assertTrue(Arrays.equals("one\n".getBytes(), contents(file)));
+		assertEquals(1, dir.list().length);
+	}
+
+	public void testPatch_utf8() throws IOException {
+		writeBytes("\u00e4 one\n");
+		LineIndex index = load();
+		int[] origins = { 0, -1 };
+		new TaskWriter(false, TaskWriter.Sync.NONE).patch(file, index,
+				FileVersion.of(file), Arrays.asList(null, "\u20ac two"),
+				origins);
+		assertTrue(Arrays.equals(
+				"\u00e4 one\n\u20ac two\n".getBytes("UTF-8"), contents(file)));
+		assertEquals(7, index.end(0));
+		assertEquals(15, index.end(1));
+	}
+
+	public void testPatch_leavesChangedFileAlone() throws IOException {
+		writeBytes("one\ntwo\n");
+		LineIndex index = load();
+		FileVersion version = FileVersion.of(file);
+		long lastModified = file.lastModified();
+		// the same size and time, as another app might leave it
+		writeBytes("one\nTWO\n");
+		file.setLastModified(lastModified);
+		assertTrue(index.matches(file));
+
+		assertNull(new TaskWriter(false, TaskWriter.Sync.NONE).patch(file,
+				index, version, Arrays.asList(null, "three"), new int[] { 0,
+						-1 }));
+		assertTrue(Arrays.equals("one\nTWO\n".getBytes(), contents(file)));
+	}
+
+	private void writePatch(long offset, String text, boolean complete)
+			throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(
+				new File(dir, "todo.txt.patch")));
+		out.writeLong(offset);
+		out.writeInt(bytes.length);
+		out.write(bytes, 0, complete ? bytes.length : bytes.length - 1);
+		if (complete) {
+			out.writeLong(crc.getValue());
+		}
+		out.close();
+	}
+
+	public void testRecover() throws IOException {
+		TaskWriter writer = new TaskWriter(false, TaskWriter.Sync.FILE);
+		assertFalse(writer.recover(file));
+
+		writeBytes("one\ntwo\nthr");
+		writePatch(4, "2\n3\n", true);
+		assertTrue(writer.recover(file));
+		assertTrue(Arrays.equals("one\n2\n3\n".getBytes(), contents(file)));
+		assertFalse(new File(dir, "todo.txt.patch").exists());
+
+		writePatch(0, "lost\n", false);
+		assertFalse(writer.recover(file));
+		assertTrue(Arrays.equals("one\n2\n3\n".getBytes(), contents(file)));
+		assertFalse(new File(dir, "todo.txt.patch").exists());
+	}
+
+	public void testWrite_fillsIndex() throws IOException {
+		LineIndex index = new LineIndex();
+		new TaskWriter(true, TaskWriter.Sync.NONE).write(tasks("one", "two"),
+				file, index);
+		assertEquals(2, index.size());
+		assertEquals(5, index.end(0));
+		assertEquals(10, index.end(1));
+		assertTrue(index.matches(file));
+		assertEquals(file.length(), index.version().length());
+		assertEquals(FileVersion.of(file).checksum(), index.version()
+				.checksum());
+	}
+
+	public void testSync_fromName() {
+		assertEquals(TaskWriter.Sync.NONE, TaskWriter.Sync.fromName("none"));
+		// a mode that is no longer offered
+		assertEquals(TaskWriter.Sync.FILE,
+				TaskWriter.Sync.fromName("FILE_AND_DIRECTORY"));
+		assertEquals(TaskWriter.Sync.FILE, TaskWriter.Sync.fromName(null));
+		assertEquals(TaskWriter.Sync.FILE, TaskWriter.Sync.fromName("bogus"));
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * This file is part of Todo.txt Touch, an Android app for managing your todo.txt file (http://todotxt.com).
+ *
+ * Copyright (c) 2009-2013 Todo.txt contributors (http://todotxt.com)
+ *
+ * LICENSE:
+ *
+ * Todo.txt Touch is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * Todo.txt Touch is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with Todo.txt Touch.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * @author Todo.txt contributors <todotxt@yahoogroups.com>
+ * @license http://www.gnu.org/licenses/gpl.html
+ * @copyright 2009-2013 Todo.txt contributors (http://todotxt.com)
+ */
+package com.todotxt.todotxttouch.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class Utf8LineReaderTest extends TestCase {
+
+	private static List<String> expected(byte[] bytes) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(bytes), "UTF-8"));
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = in.readLine()) != null) {
+			lines.add(line.trim());
+		}
+		return lines;
+	}
+
+	private static List<String> read(Utf8LineReader reader) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines;
+	}
+
+	private static List<String> readStream(byte[] bytes) throws IOException {
+		return read(new Utf8LineReader(new ByteArrayInputStream(bytes)));
+	}
+
+	private static List<String> readFile(byte[] bytes) throws IOException {
+		File file = File.createTempFile("todo", ".txt");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(bytes);
+			out.close();
+			return read(new Utf8LineReader(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void assertReads(String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		assertEquals(expected(bytes), readStream(bytes));
+		assertEquals(expected(bytes), readFile(bytes));
+	}
+
+	public void testReadLine_lineBreaks() throws IOException {
+		assertReads("");
+		assertReads("\n");
+		assertReads("one");
+		assertReads("one\ntwo\n");
+		assertReads("one\r\ntwo\r\n\r\nthree");
+		assertReads("one\rtwo\r\rthree\r");
+		assertReads("one\n\r\ntwo\r\n\n");
+	}
+
+	public void testReadLine_trims() throws IOException {
+		assertReads("  (A) padded \t\n\t\n x 2013-01-01 done  \u000b\r\n");
+	}
+
+	public void testReadLine_utf8() throws IOException {
+		assertReads("\u00e4pfel @k\u00fcche\n\u00a0nbsp is kept\u00a0\n\u65e5\u672c\u8a9e +\u30d7\u30ed\u30b8\u30a7\u30af\u30c8\n"
+				+ "emoji \ud83d\ude00\n");
+	}
+
+	public void testReadLine_malformed() throws IOException {
+		byte[] bytes = { 'a', (byte) 0xc3, '\n', (byte) 0xff, 'b', ' ', '\n',
+				(byte) 0xe2, (byte) 0x82 };
+		assertEquals(expected(bytes), readStream(bytes));
+	}
+
+	public void testReadLine_longLines() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		sb.append("\r\nshort\n");
+		for (int i = 0; i < 100000; i++) {
+			sb.append('\u00fc');
+		}
+		assertReads(sb.toString());
+	}
+
+	public void testReadLine_random() throws IOException {
+		Random random = new Random(11);
+		String alphabet = "ab \t\r\n\u00e4\u20ac";
+		for (int round = 0; round < 20; round++) {
+			StringBuilder sb = new StringBuilder();
+			// large enough to be mapped and to cross stream buffer bounds
+			int length = 100000 + random.nextInt(300000);
+			for (int i = 0; i < length; i++) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			assertReads(sb.toString());
+		}
+	}
+
+	// where each line ends, line break included
+	private static List<Long> expectedOffsets(byte[] bytes) {
+		List<Long> offsets = new ArrayList<Long>();
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\r' && i + 1 < bytes.length
+					&& bytes[i + 1] == '\n') {
+				i++;
+			}
+			if (bytes[i] == '\n' || bytes[i] == '\r') {
+				offsets.add((long) i + 1);
+			} else if (i == bytes.length - 1) {
+				offsets.add((long) bytes.length);
+			}
+		}
+		return offsets;
+	}
+
+	private static List<Long> offsets(Utf8LineReader reader)
+			throws IOException {
+		List<Long> offsets = new ArrayList<Long>();
+		while (reader.readLine() != null) {
+			offsets.add(reader.getOffset());
+		}
+		reader.close();
+		return offsets;
+	}
+
+	public void testGetOffset() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		// "\r\n" split across the first refill of a stream buffer
+		for (int i = 0; i < 64 * 1024 - 1; i++) {
+			sb.append(i % 80 == 79 ? '\n' : 'x');
+		}
+		sb.append("\r\n\u00e4\r\rlast");
+		byte[] bytes = sb.toString().getBytes("UTF-8");
+		assertEquals(expectedOffsets(bytes), offsets(new Utf8LineReader(
+				new ByteArrayInputStream(bytes))));
+
+		Random random = new Random(5);
+		String alphabet = "a \r\n\u00e4";
+		for (int round = 0; round < 5; round++) {
+			sb.setLength(0);
+			int length = 100000 + random.nextInt(200000);
+			for (int i = 0; i < length; i++) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			bytes = sb.toString().getBytes("UTF-8");
+			File file = File.createTempFile("todo", ".txt");
+			try {
+				FileOutputStream out = new FileOutputStream(file);
+				out.write(bytes);
+				out.close();
+				assertEquals(expectedOffsets(bytes),
+						offsets(new Utf8LineReader(file)));
+			} finally {
+				file.delete();
+			}
+			assertEquals(expectedOffsets(bytes), offsets(new Utf8LineReader(
+					new ByteArrayInputStream(bytes))));
+		}
+	}
+}